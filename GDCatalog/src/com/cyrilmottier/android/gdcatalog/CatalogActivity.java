@@ -43,6 +43,8 @@ public class CatalogActivity extends GDListActivity {
         adapter.add(createTextItem(R.string.async_image_view_list_view_label, AsyncImageViewListActivity.class));
         adapter.add(createTextItem(R.string.map_pin_drawable_label, MapPinMapActivity.class));
         adapter.add(createTextItem(R.string.paged_view_label, PagedViewActivity.class));
+        adapter.add(createTextItem(R.string.image_load_test_label, ImageLoadTestActivity.class));
+        adapter.add(createTextItem(R.string.flat_item_view_test_label, FlatItemViewTestActivity.class));
 
         setListAdapter(adapter);
 
@@ -0,0 +1,257 @@
+/*
+ * Copyright (C) 2011 Cyril Mottier (http://www.cyrilmottier.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.cyrilmottier.android.gdcatalog;
+
+import greendroid.app.GDActivity;
+import greendroid.widget.ItemAdapter;
+import greendroid.widget.item.DescriptionItem;
+import greendroid.widget.item.DrawableItem;
+import greendroid.widget.item.Item;
+import greendroid.widget.item.SubtextItem;
+import greendroid.widget.item.SubtitleItem;
+import greendroid.widget.item.ThumbnailItem;
+import greendroid.widget.itemview.FlatItemViewFactory;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import android.content.Context;
+import android.graphics.Canvas;
+import android.os.Bundle;
+import android.os.Handler;
+import android.util.AttributeSet;
+import android.util.Log;
+import android.view.View;
+import android.widget.Button;
+import android.widget.ListView;
+import android.widget.TextView;
+
+/**
+ * Flings through a 1,000-row list of ItemViews, once with the default
+ * ItemViews and once with the ones created by a {@link FlatItemViewFactory}.
+ * For each run, the time the list spends laying out (creating and binding its
+ * rows) and drawing each frame is displayed on screen and logged. The button
+ * switches to the other kind of ItemViews and runs the list again.
+ */
+public class FlatItemViewTestActivity extends GDActivity {
+
+    private static final String LOG_TAG = FlatItemViewTestActivity.class.getSimpleName();
+
+    private static final int ROW_COUNT = 1000;
+
+    private static final int FRAME_DELAY = 16;
+    private static final int ROWS_PER_FRAME = 2;
+    private static final int START_DELAY = 1000;
+    private static final long SLOW_FRAME_TIME = 16 * 1000000L;
+
+    private static final String DESCRIPTION = "Lorem ipsum dolor sit amet, consectetur adipiscing elit. Sed tempus consequat leo, et tincidunt justo tristique in.";
+    private static final int[] DRAWABLES = {
+            R.drawable.class1, R.drawable.class2, R.drawable.class3, R.drawable.class4, R.drawable.class5
+    };
+
+    private final Handler mHandler = new Handler();
+    private FrameTimingListView mListView;
+    private TextView mReportView;
+    private Button mToggleButton;
+
+    private final String[] mReports = new String[2];
+    private boolean mFlat;
+    private boolean mRunning;
+    private int mPosition;
+
+    @Override
+    protected void onCreate(Bundle savedInstanceState) {
+        super.onCreate(savedInstanceState);
+        setActionBarContentView(R.layout.flat_item_view_test);
+
+        mReportView = (TextView) findViewById(R.id.report);
+        mToggleButton = (Button) findViewById(R.id.toggle);
+        mListView = (FrameTimingListView) findViewById(android.R.id.list);
+
+        startRun(false);
+    }
+
+    @Override
+    protected void onDestroy() {
+        super.onDestroy();
+        mHandler.removeCallbacks(mFlingRunnable);
+    }
+
+    public void onToggleClicked(View v) {
+        if (!mRunning) {
+            startRun(!mFlat);
+        }
+    }
+
+    private void startRun(boolean flat) {
+        mFlat = flat;
+        mRunning = true;
+        mPosition = 0;
+
+        final ItemAdapter adapter = new ItemAdapter(this, createItems());
+        if (flat) {
+            // Must be done before the adapter is given to the ListView
+            adapter.setItemViewFactory(new FlatItemViewFactory());
+        }
+        mListView.setAdapter(adapter);
+        mListView.resetFrameTimes();
+
+        mToggleButton.setEnabled(false);
+        mToggleButton.setText(flat ? "Use default ItemViews" : "Use flat ItemViews");
+        updateReport();
+
+        mHandler.postDelayed(mFlingRunnable, START_DELAY);
+    }
+
+    private List<Item> createItems() {
+        final List<Item> items = new ArrayList<Item>(ROW_COUNT);
+        for (int i = 0; i < ROW_COUNT; i++) {
+            final String text = "Row " + i;
+            final int drawableId = DRAWABLES[i % DRAWABLES.length];
+            switch (i % 5) {
+                case 0:
+                    items.add(new SubtitleItem(text, "Subtitle of the row"));
+                    break;
+                case 1:
+                    items.add(new ThumbnailItem(text, "Thumbnail of the row", drawableId));
+                    break;
+                case 2:
+                    items.add(new SubtextItem(text, DESCRIPTION));
+                    break;
+                case 3:
+                    items.add(new DrawableItem(text, drawableId));
+                    break;
+                default:
+                    items.add(new DescriptionItem(DESCRIPTION));
+                    break;
+            }
+        }
+        return items;
+    }
+
+    private final Runnable mFlingRunnable = new Runnable() {
+        public void run() {
+            if (mPosition == 0) {
+                // Frames drawn before the first scroll are not representative
+                mListView.resetFrameTimes();
+                mListView.setRecording(true);
+            }
+
+            mPosition = Math.min(ROW_COUNT - 1, mPosition + ROWS_PER_FRAME);
+            mListView.setSelection(mPosition);
+
+            if (mPosition < ROW_COUNT - 1) {
+                mHandler.postDelayed(this, FRAME_DELAY);
+            } else {
+                // Lets the last frame be drawn before reporting
+                mHandler.postDelayed(mEndRunnable, FRAME_DELAY);
+            }
+        }
+    };
+
+    private final Runnable mEndRunnable = new Runnable() {
+        public void run() {
+            mListView.setRecording(false);
+            mRunning = false;
+            mReports[mFlat ? 1 : 0] = mListView.createReport();
+            mToggleButton.setEnabled(true);
+
+            final String report = updateReport();
+            Log.i(LOG_TAG, report);
+
+            if (mReports[mFlat ? 0 : 1] == null) {
+                startRun(!mFlat);
+            }
+        }
+    };
+
+    private String updateReport() {
+        final StringBuilder builder = new StringBuilder();
+        builder.append(ROW_COUNT).append(" rows");
+        if (mRunning) {
+            builder.append(", running with ").append(mFlat ? "flat" : "default").append(" ItemViews");
+        }
+        builder.append("\nDefault: ").append(mReports[0] == null ? "-" : mReports[0]);
+        builder.append("\nFlat: ").append(mReports[1] == null ? "-" : mReports[1]);
+
+        final String report = builder.toString();
+        mReportView.setText(report);
+        return report;
+    }
+
+    /**
+     * A ListView measuring the time spent in each frame laying out its
+     * children, which includes creating and binding the rows, and drawing
+     * them.
+     */
+    public static class FrameTimingListView extends ListView {
+
+        private boolean mRecording;
+        private long mLayoutTime;
+
+        private int mFrameCount;
+        private int mSlowFrameCount;
+        private long mTotalFrameTime;
+        private long mMaxFrameTime;
+
+        public FrameTimingListView(Context context, AttributeSet attrs) {
+            super(context, attrs);
+        }
+
+        public void setRecording(boolean recording) {
+            mRecording = recording;
+        }
+
+        public void resetFrameTimes() {
+            mLayoutTime = 0;
+            mFrameCount = 0;
+            mSlowFrameCount = 0;
+            mTotalFrameTime = 0;
+            mMaxFrameTime = 0;
+        }
+
+        public String createReport() {
+            final float averageTime = (mFrameCount == 0) ? 0 : mTotalFrameTime / (mFrameCount * 1000000f);
+            final StringBuilder builder = new StringBuilder();
+            builder.append(mFrameCount).append(" frames, average ").append(averageTime).append("ms, worst ");
+            builder.append(mMaxFrameTime / 1000000f).append("ms, ").append(mSlowFrameCount).append(" over 16ms");
+            return builder.toString();
+        }
+
+        @Override
+        protected void layoutChildren() {
+            final long start = System.nanoTime();
+            super.layoutChildren();
+            mLayoutTime += System.nanoTime() - start;
+        }
+
+        @Override
+        protected void dispatchDraw(Canvas canvas) {
+            final long start = System.nanoTime();
+            super.dispatchDraw(canvas);
+            if (mRecording) {
+                final long frameTime = mLayoutTime + System.nanoTime() - start;
+                mFrameCount++;
+                mTotalFrameTime += frameTime;
+                mMaxFrameTime = Math.max(mMaxFrameTime, frameTime);
+                if (frameTime > SLOW_FRAME_TIME) {
+                    mSlowFrameCount++;
+                }
+            }
+            mLayoutTime = 0;
+        }
+    }
+}
@@ -0,0 +1,230 @@
+/*
+ * Copyright (C) 2011 Cyril Mottier (http://www.cyrilmottier.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.cyrilmottier.android.gdcatalog;
+
+import greendroid.app.GDActivity;
+import greendroid.image.ImageLoader;
+import greendroid.image.ImageMetrics;
+import greendroid.widget.AsyncImageView;
+import greendroid.widget.AsyncImageView.OnImageViewLoadListener;
+
+import java.io.IOException;
+
+import android.graphics.Bitmap;
+import android.os.Bundle;
+import android.os.Debug;
+import android.os.Handler;
+import android.os.SystemClock;
+import android.util.Log;
+import android.view.LayoutInflater;
+import android.view.View;
+import android.view.ViewGroup;
+import android.widget.BaseAdapter;
+import android.widget.ImageView.ScaleType;
+import android.widget.ListView;
+import android.widget.TextView;
+
+/**
+ * Flings through a 10,000-row list of AsyncImageViews whose images are served
+ * by a local {@link StubImageServer} injecting latency, throttling, errors and
+ * "304 Not Modified" responses. Only 500 distinct images are served: other
+ * rows point to byte-identical duplicates. Throughput, cache hit ratios and
+ * peak memory are displayed on screen and logged once the end of the list is
+ * reached.
+ */
+public class ImageLoadTestActivity extends GDActivity implements OnImageViewLoadListener {
+
+    private static final String LOG_TAG = ImageLoadTestActivity.class.getSimpleName();
+
+    private static final int ROW_COUNT = 10000;
+    private static final int IMAGE_COUNT = 500;
+    private static final int IMAGE_SIZE = 200;
+
+    private static final int FRAME_DELAY = 16;
+    private static final int FLING_FRAMES = 40;
+    private static final int ROWS_PER_FRAME = 2;
+    private static final int REST_DELAY = 1000;
+    private static final int REPORT_DELAY = 500;
+
+    private final Handler mHandler = new Handler();
+    private StubImageServer mServer;
+    private ListView mListView;
+    private TextView mReportView;
+
+    private long mStartTime;
+    private int mPosition;
+    private int mFrame;
+    private boolean mFinished;
+
+    private int mStartedCount;
+    private int mEndedCount;
+    private int mFailedCount;
+    private long mPeakMemory;
+
+    @Override
+    protected void onCreate(Bundle savedInstanceState) {
+        super.onCreate(savedInstanceState);
+        setActionBarContentView(R.layout.image_load_test);
+
+        mReportView = (TextView) findViewById(R.id.report);
+        mListView = (ListView) findViewById(android.R.id.list);
+
+        mServer = new StubImageServer(IMAGE_COUNT, IMAGE_SIZE);
+        mServer.setLatency(50, 300);
+        mServer.setBandwidth(256 * 1024);
+        mServer.setErrorRate(0.02f);
+        mServer.setNotModifiedRate(0.01f);
+        try {
+            mServer.start();
+        } catch (IOException e) {
+            mReportView.setText(e.toString());
+            return;
+        }
+
+        ImageLoader.getMetrics().reset();
+        mListView.setAdapter(new LoadTestAdapter());
+
+        mStartTime = SystemClock.uptimeMillis();
+        mHandler.postDelayed(mFlingRunnable, REST_DELAY);
+        mHandler.post(mReportRunnable);
+    }
+
+    @Override
+    protected void onDestroy() {
+        super.onDestroy();
+        mHandler.removeCallbacks(mFlingRunnable);
+        mHandler.removeCallbacks(mReportRunnable);
+        mServer.stop();
+    }
+
+    private final Runnable mFlingRunnable = new Runnable() {
+        public void run() {
+            if (mFrame == 0) {
+                // Like a well-behaved list, images are not loaded while flinging
+                setPaused(true);
+            }
+
+            mPosition = Math.min(ROW_COUNT - 1, mPosition + ROWS_PER_FRAME);
+            mListView.setSelection(mPosition);
+
+            if (mPosition == ROW_COUNT - 1) {
+                setPaused(false);
+                mFinished = true;
+            } else if (++mFrame < FLING_FRAMES) {
+                mHandler.postDelayed(this, FRAME_DELAY);
+            } else {
+                mFrame = 0;
+                setPaused(false);
+                mHandler.postDelayed(this, REST_DELAY);
+            }
+        }
+    };
+
+    private final Runnable mReportRunnable = new Runnable() {
+        public void run() {
+            final Runtime runtime = Runtime.getRuntime();
+            final long memory = runtime.totalMemory() - runtime.freeMemory() + Debug.getNativeHeapAllocatedSize();
+            mPeakMemory = Math.max(mPeakMemory, memory);
+
+            final String report = createReport();
+            mReportView.setText(report);
+
+            if (mFinished && mStartedCount == mEndedCount + mFailedCount) {
+                Log.i(LOG_TAG, report);
+            } else {
+                mHandler.postDelayed(this, REPORT_DELAY);
+            }
+        }
+    };
+
+    private void setPaused(boolean paused) {
+        final int childCount = mListView.getChildCount();
+        for (int i = 0; i < childCount; i++) {
+            final AsyncImageView imageView = (AsyncImageView) mListView.getChildAt(i).findViewById(R.id.async_image);
+            if (imageView != null) {
+                imageView.setPaused(paused);
+            }
+        }
+    }
+
+    private String createReport() {
+        final ImageMetrics metrics = ImageLoader.getMetrics();
+        final float seconds = (SystemClock.uptimeMillis() - mStartTime) / 1000f;
+        // Binds missing the cache while paused start no request: hits are
+        // counted by the AsyncImageViews themselves
+        final int lookupCount = metrics.getMemoryLookupCount();
+        final float memoryHitRatio = (lookupCount == 0) ? 0 : (float) metrics.getMemoryHitCount() / lookupCount;
+        final float diskHitRatio = (mStartedCount == 0) ? 0 : (float) metrics.getDiskHitCount() / mStartedCount;
+
+        final StringBuilder builder = new StringBuilder();
+        builder.append("Row ").append(mPosition).append('/').append(ROW_COUNT).append(" in ").append(seconds).append("s\n");
+        builder.append("Loaded: ").append(mEndedCount).append(", failed: ").append(mFailedCount);
+        builder.append(" (").append(mEndedCount / Math.max(1, seconds)).append(" images/s)\n");
+        builder.append("Memory hits: ").append((int) (memoryHitRatio * 100)).append("%, disk hits: ");
+        builder.append((int) (diskHitRatio * 100)).append("%\n");
+        builder.append("Server: ").append(mServer.getRequestCount()).append(" requests, ");
+        builder.append(mServer.getBytesSent() / 1024).append(" KB, ").append(mServer.getErrorCount()).append(" errors, ");
+        builder.append(mServer.getNotModifiedCount()).append(" 304s\n");
+        builder.append("Decoded: ").append(metrics.getDecodedBytes() / 1024).append(" KB, peak memory: ");
+        builder.append(mPeakMemory / (1024 * 1024)).append(" MB");
+        return builder.toString();
+    }
+
+    public void onLoadingStarted(AsyncImageView imageView) {
+        mStartedCount++;
+    }
+
+    public void onLoadingEnded(AsyncImageView imageView, Bitmap image) {
+        mEndedCount++;
+    }
+
+    public void onLoadingFailed(AsyncImageView imageView, Throwable throwable) {
+        mFailedCount++;
+    }
+
+    private class LoadTestAdapter extends BaseAdapter {
+
+        private final LayoutInflater mInflater = LayoutInflater.from(ImageLoadTestActivity.this);
+
+        public int getCount() {
+            return ROW_COUNT;
+        }
+
+        public Object getItem(int position) {
+            return null;
+        }
+
+        public long getItemId(int position) {
+            return position;
+        }
+
+        public View getView(int position, View convertView, ViewGroup parent) {
+            if (convertView == null) {
+                convertView = mInflater.inflate(R.layout.image_item_view, parent, false);
+                final AsyncImageView imageView = (AsyncImageView) convertView.findViewById(R.id.async_image);
+                imageView.setScaleType(ScaleType.CENTER_CROP);
+                imageView.setAutoSize(true);
+                imageView.setOnImageViewLoadListener(ImageLoadTestActivity.this);
+            }
+
+            final AsyncImageView imageView = (AsyncImageView) convertView.findViewById(R.id.async_image);
+            imageView.setUrl(mServer.getUrl(position));
+            ((TextView) convertView.findViewById(R.id.text)).setText("Row " + position);
+
+            return convertView;
+        }
+    }
+}
@@ -0,0 +1,365 @@
+/*
+ * Copyright (C) 2011 Cyril Mottier (http://www.cyrilmottier.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.cyrilmottier.android.gdcatalog;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.zip.CRC32;
+import java.util.zip.DeflaterOutputStream;
+
+/**
+ * <p>
+ * A minimal HTTP/1.0 server serving generated PNG images. It is used to
+ * load-test the image loading system without a real network. The server may
+ * inject latency, throttle the bandwidth, fail requests and answer with
+ * "304 Not Modified" responses. Image <em>n</em> is byte-identical to image
+ * <em>n + imageCount</em> so that duplicates can be served under different
+ * URLs.
+ * </p>
+ * <p>
+ * The server only depends on the Java platform. It may be run on a regular
+ * JVM using its main method:
+ * </p>
+ * 
+ * <pre>
+ * java com.cyrilmottier.android.gdcatalog.StubImageServer [port] [imageCount] [imageSize]
+ * </pre>
+ * 
+ * @author Cyril Mottier
+ */
+public class StubImageServer {
+
+    private static final int CHUNK_SIZE = 4 * 1024;
+
+    private final int mImageCount;
+    private final int mImageSize;
+    private final byte[][] mImages;
+
+    private final Random mRandom = new Random();
+    private ServerSocket mServerSocket;
+    private ExecutorService mExecutor;
+
+    private volatile int mMinLatency;
+    private volatile int mMaxLatency;
+    private volatile int mBandwidth;
+    private volatile float mErrorRate;
+    private volatile float mNotModifiedRate;
+
+    private int mRequestCount;
+    private int mErrorCount;
+    private int mNotModifiedCount;
+    private long mBytesSent;
+
+    /**
+     * @param imageCount The number of distinct images
+     * @param imageSize The width and height of the images
+     */
+    public StubImageServer(int imageCount, int imageSize) {
+        mImageCount = imageCount;
+        mImageSize = imageSize;
+        mImages = new byte[imageCount][];
+    }
+
+    /**
+     * Delay each response by a random duration between the given bounds.
+     */
+    public void setLatency(int minLatency, int maxLatency) {
+        mMinLatency = minLatency;
+        mMaxLatency = Math.max(minLatency, maxLatency);
+    }
+
+    /**
+     * Limit the bandwidth of each connection. Pass 0 for no limit.
+     */
+    public void setBandwidth(int bytesPerSecond) {
+        mBandwidth = bytesPerSecond;
+    }
+
+    /**
+     * Set the probability for a request to fail with a "500 Internal Server
+     * Error".
+     */
+    public void setErrorRate(float errorRate) {
+        mErrorRate = errorRate;
+    }
+
+    /**
+     * Set the probability for a request to be answered with a
+     * "304 Not Modified" and no content.
+     */
+    public void setNotModifiedRate(float notModifiedRate) {
+        mNotModifiedRate = notModifiedRate;
+    }
+
+    public synchronized int getRequestCount() {
+        return mRequestCount;
+    }
+
+    public synchronized int getErrorCount() {
+        return mErrorCount;
+    }
+
+    public synchronized int getNotModifiedCount() {
+        return mNotModifiedCount;
+    }
+
+    public synchronized long getBytesSent() {
+        return mBytesSent;
+    }
+
+    /**
+     * Start the server on the loopback interface using a free port.
+     */
+    public void start() throws IOException {
+        start(InetAddress.getByName("127.0.0.1"), 0);
+    }
+
+    public synchronized void start(InetAddress address, int port) throws IOException {
+        if (mServerSocket != null) {
+            return;
+        }
+
+        mServerSocket = new ServerSocket(port, 50, address);
+        mExecutor = Executors.newCachedThreadPool();
+
+        final ServerSocket serverSocket = mServerSocket;
+        mExecutor.execute(new Runnable() {
+            public void run() {
+                while (!serverSocket.isClosed()) {
+                    try {
+                        final Socket socket = serverSocket.accept();
+                        mExecutor.execute(new Runnable() {
+                            public void run() {
+                                handle(socket);
+                            }
+                        });
+                    } catch (IOException e) {
+                        // The server has been stopped
+                    }
+                }
+            }
+        });
+    }
+
+    public synchronized void stop() {
+        if (mServerSocket != null) {
+            try {
+                mServerSocket.close();
+            } catch (IOException e) {
+                // Nothing to do
+            }
+            mExecutor.shutdownNow();
+            mServerSocket = null;
+            mExecutor = null;
+        }
+    }
+
+    /**
+     * Return the URL of the image at the given index. Indexes larger than the
+     * number of images point to duplicated images.
+     */
+    public synchronized String getUrl(int index) {
+        return "http://127.0.0.1:" + mServerSocket.getLocalPort() + "/image/" + index + ".png";
+    }
+
+    private void handle(Socket socket) {
+        try {
+            final BufferedReader reader = new BufferedReader(new InputStreamReader(socket.getInputStream(), "US-ASCII"));
+            final String requestLine = reader.readLine();
+            String header;
+            do {
+                header = reader.readLine();
+            } while (header != null && header.length() > 0);
+
+            final int index = parseIndex(requestLine);
+
+            final float random;
+            final int latency;
+            synchronized (this) {
+                mRequestCount++;
+                random = mRandom.nextFloat();
+                latency = mMinLatency + ((mMaxLatency > mMinLatency) ? mRandom.nextInt(mMaxLatency - mMinLatency) : 0);
+            }
+
+            if (latency > 0) {
+                Thread.sleep(latency);
+            }
+
+            final OutputStream out = socket.getOutputStream();
+            if (index < 0) {
+                writeHeaders(out, "404 Not Found", null, 0);
+            } else if (random < mErrorRate) {
+                synchronized (this) {
+                    mErrorCount++;
+                }
+                writeHeaders(out, "500 Internal Server Error", null, 0);
+            } else if (random < mErrorRate + mNotModifiedRate) {
+                synchronized (this) {
+                    mNotModifiedCount++;
+                }
+                writeHeaders(out, "304 Not Modified", null, 0);
+            } else {
+                final byte[] image = getImage(index % mImageCount);
+                writeHeaders(out, "200 OK", "image/png", image.length);
+                writeThrottled(out, image);
+            }
+            out.flush();
+        } catch (IOException e) {
+            // The client closed the connection
+        } catch (InterruptedException e) {
+            // The server has been stopped
+        } finally {
+            try {
+                socket.close();
+            } catch (IOException e) {
+                // Nothing to do
+            }
+        }
+    }
+
+    private static int parseIndex(String requestLine) {
+        // GET /image/<index>.png HTTP/1.1
+        if (requestLine == null) {
+            return -1;
+        }
+        final int start = requestLine.indexOf("/image/");
+        final int end = requestLine.indexOf(".png", start);
+        if (start < 0 || end < 0) {
+            return -1;
+        }
+        try {
+            return Integer.parseInt(requestLine.substring(start + "/image/".length(), end));
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    private static void writeHeaders(OutputStream out, String status, String contentType, int contentLength) throws IOException {
+        final StringBuilder builder = new StringBuilder();
+        builder.append("HTTP/1.0 ").append(status).append("\r\n");
+        if (contentType != null) {
+            builder.append("Content-Type: ").append(contentType).append("\r\n");
+        }
+        builder.append("Content-Length: ").append(contentLength).append("\r\n");
+        builder.append("Connection: close\r\n\r\n");
+        out.write(builder.toString().getBytes("US-ASCII"));
+    }
+
+    private void writeThrottled(OutputStream out, byte[] data) throws IOException, InterruptedException {
+        for (int offset = 0; offset < data.length; offset += CHUNK_SIZE) {
+            final int count = Math.min(CHUNK_SIZE, data.length - offset);
+            out.write(data, offset, count);
+            synchronized (this) {
+                mBytesSent += count;
+            }
+            final int bandwidth = mBandwidth;
+            if (bandwidth > 0) {
+                Thread.sleep(count * 1000L / bandwidth);
+            }
+        }
+    }
+
+    private synchronized byte[] getImage(int index) throws IOException {
+        if (mImages[index] == null) {
+            mImages[index] = createPng(mImageSize, mImageSize, index);
+        }
+        return mImages[index];
+    }
+
+    /**
+     * Create an RGB PNG image filled with a gradient depending on the given
+     * seed.
+     */
+    static byte[] createPng(int width, int height, int seed) throws IOException {
+        final Random random = new Random(seed);
+        final int r = random.nextInt(256);
+        final int g = random.nextInt(256);
+        final int b = random.nextInt(256);
+
+        final ByteArrayOutputStream pixels = new ByteArrayOutputStream();
+        final DeflaterOutputStream deflater = new DeflaterOutputStream(pixels);
+        final byte[] row = new byte[1 + width * 3];
+        for (int y = 0; y < height; y++) {
+            // Each row starts with its filter type (none)
+            row[0] = 0;
+            for (int x = 0; x < width; x++) {
+                row[1 + x * 3] = (byte) (r + x);
+                row[2 + x * 3] = (byte) (g + y);
+                row[3 + x * 3] = (byte) (b + x + y);
+            }
+            deflater.write(row);
+        }
+        deflater.close();
+
+        final ByteArrayOutputStream header = new ByteArrayOutputStream();
+        final DataOutputStream headerData = new DataOutputStream(header);
+        headerData.writeInt(width);
+        headerData.writeInt(height);
+        headerData.writeByte(8); // Bit depth
+        headerData.writeByte(2); // Color type (RGB)
+        headerData.writeByte(0); // Compression method
+        headerData.writeByte(0); // Filter method
+        headerData.writeByte(0); // Interlace method
+
+        final ByteArrayOutputStream png = new ByteArrayOutputStream();
+        final DataOutputStream out = new DataOutputStream(png);
+        out.write(new byte[] {
+                (byte) 137, 'P', 'N', 'G', '\r', '\n', 26, '\n'
+        });
+        writeChunk(out, "IHDR", header.toByteArray());
+        writeChunk(out, "IDAT", pixels.toByteArray());
+        writeChunk(out, "IEND", new byte[0]);
+        return png.toByteArray();
+    }
+
+    private static void writeChunk(DataOutputStream out, String type, byte[] data) throws IOException {
+        final byte[] typeBytes = type.getBytes("US-ASCII");
+        final CRC32 crc = new CRC32();
+        crc.update(typeBytes);
+        crc.update(data);
+
+        out.writeInt(data.length);
+        out.write(typeBytes);
+        out.write(data);
+        out.writeInt((int) crc.getValue());
+    }
+
+    public static void main(String[] args) throws Exception {
+        final int port = (args.length > 0) ? Integer.parseInt(args[0]) : 8080;
+        final int imageCount = (args.length > 1) ? Integer.parseInt(args[1]) : 500;
+        final int imageSize = (args.length > 2) ? Integer.parseInt(args[2]) : 200;
+
+        final StubImageServer server = new StubImageServer(imageCount, imageSize);
+        server.setLatency(50, 300);
+        server.setBandwidth(256 * 1024);
+        server.setErrorRate(0.02f);
+        server.setNotModifiedRate(0.01f);
+        server.start(InetAddress.getByName("0.0.0.0"), port);
+
+        System.out.println("Serving " + imageCount + " images on port " + port + " (http://<host>:" + port + "/image/<n>.png)");
+        Thread.sleep(Long.MAX_VALUE);
+    }
+}
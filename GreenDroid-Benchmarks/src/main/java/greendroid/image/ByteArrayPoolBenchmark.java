@@ -0,0 +1,70 @@
+/*
+ * Copyright (C) 2011 Cyril Mottier (http://www.cyrilmottier.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package greendroid.image;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Measures the ByteArrayPool used by the ImageLoader to read encoded images.
+ * Each operation takes an array of a random size from the pool and gives it
+ * back.
+ * 
+ * @author Cyril Mottier
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class ByteArrayPoolBenchmark {
+
+    private static final int POOL_SIZE = 2 * 1024 * 1024;
+    private static final int SIZE_COUNT = 1024;
+
+    private ByteArrayPool mPool;
+    private int[] mSizes;
+    private int mIndex;
+
+    @Setup
+    public void setUp() {
+        mPool = new ByteArrayPool(POOL_SIZE);
+        mSizes = new int[SIZE_COUNT];
+        final Random random = new Random(42);
+        for (int i = 0; i < SIZE_COUNT; i++) {
+            // From 1kB to 64kB, the usual size of an encoded thumbnail
+            mSizes[i] = 1024 + random.nextInt(63 * 1024);
+        }
+        // Fills the pool as a running application would
+        for (int i = 0; i < SIZE_COUNT; i++) {
+            mPool.put(new byte[mSizes[i]]);
+        }
+    }
+
+    @Benchmark
+    public byte[] getAndPut() {
+        mIndex = (mIndex + 1) & (SIZE_COUNT - 1);
+        final byte[] array = mPool.get(mSizes[mIndex]);
+        mPool.put(array);
+        return array;
+    }
+}
@@ -0,0 +1,74 @@
+/*
+ * Copyright (C) 2011 Cyril Mottier (http://www.cyrilmottier.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package greendroid.image;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import android.graphics.Bitmap;
+
+/**
+ * Measures ChainImageProcessor pipelines of PixelImageProcessors on stubbed
+ * Bitmaps. Unlike PixelKernelBenchmark, copying the pixels out of each
+ * intermediate Bitmap and creating the next one are measured.
+ * 
+ * @author Cyril Mottier
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class ChainImageProcessorBenchmark {
+
+    @Param( {
+            "96", "320"
+    })
+    public int size;
+
+    private Bitmap mSource;
+
+    private final ImageProcessor mSingle = new PixelImageProcessor(new BlurPixelKernel(4));
+    private final ImageProcessor mChain = new ChainImageProcessor(new PixelImageProcessor(new BlurPixelKernel(4)),
+            new PixelImageProcessor(new DesaturatePixelKernel()), new PixelImageProcessor(new TintPixelKernel(0xff3366cc, 0.3f)));
+
+    @Setup
+    public void setUp() {
+        final int[] pixels = new int[size * size];
+        final Random random = new Random(42);
+        for (int i = 0; i < pixels.length; i++) {
+            pixels[i] = 0xff000000 | random.nextInt(0x1000000);
+        }
+        mSource = Bitmap.createBitmap(pixels, size, size, Bitmap.Config.ARGB_8888);
+    }
+
+    @Benchmark
+    public Bitmap single() {
+        return mSingle.processImage(mSource);
+    }
+
+    @Benchmark
+    public Bitmap chain() {
+        return mChain.processImage(mSource);
+    }
+}
@@ -0,0 +1,104 @@
+/*
+ * Copyright (C) 2011 Cyril Mottier (http://www.cyrilmottier.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package greendroid.image;
+
+import greendroid.app.GDApplication;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import android.graphics.Bitmap;
+
+/**
+ * Measures the ImageCache lookups and insertions done while binding rows of
+ * AsyncImageViews. The cache holds thumbnails (stubbed Bitmaps) and its
+ * inactive tier is only large enough for half of them so that insertions
+ * evict the least recently used entries.
+ * 
+ * @author Cyril Mottier
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class ImageCacheBenchmark {
+
+    private static final int KEY_COUNT = 1024;
+    private static final int THUMBNAIL_SIZE = 64;
+
+    private ImageCache mCache;
+    private String[] mKeys;
+    private Bitmap[] mBitmaps;
+    private int mIndex;
+
+    @Setup
+    public void setUp() {
+        mCache = new ImageCache(new GDApplication());
+        mKeys = new String[KEY_COUNT * 2];
+        mBitmaps = new Bitmap[KEY_COUNT];
+        for (int i = 0; i < mKeys.length; i++) {
+            mKeys[i] = "http://www.example.com/thumbnails/" + i + ".jpg";
+        }
+        for (int i = 0; i < KEY_COUNT; i++) {
+            mBitmaps[i] = Bitmap.createBitmap(THUMBNAIL_SIZE, THUMBNAIL_SIZE, Bitmap.Config.RGB_565);
+        }
+
+        final int bytes = mBitmaps[0].getRowBytes() * THUMBNAIL_SIZE;
+        mCache.setMaxSize(bytes * KEY_COUNT / 2);
+        for (int i = 0; i < KEY_COUNT; i++) {
+            mCache.put(mKeys[i], mBitmaps[i]);
+        }
+    }
+
+    private int nextIndex() {
+        mIndex = (mIndex + 1) & (KEY_COUNT - 1);
+        return mIndex;
+    }
+
+    /**
+     * The second half of the inserted keys: they are still in the cache. The
+     * Bitmap moves to the active tier and back.
+     */
+    @Benchmark
+    public BitmapRef acquireAndReleaseHit() {
+        final BitmapRef ref = mCache.acquire(mKeys[KEY_COUNT / 2 + (nextIndex() & (KEY_COUNT / 2 - 1))]);
+        ref.release();
+        return ref;
+    }
+
+    /**
+     * Keys that have never been inserted.
+     */
+    @Benchmark
+    public BitmapRef acquireMiss() {
+        return mCache.acquire(mKeys[KEY_COUNT + nextIndex()]);
+    }
+
+    /**
+     * Every insertion evicts the least recently used Bitmap.
+     */
+    @Benchmark
+    public void putWithEviction() {
+        final int index = nextIndex();
+        mCache.put(mKeys[(index * 7) & (2 * KEY_COUNT - 1)], mBitmaps[index]);
+    }
+}
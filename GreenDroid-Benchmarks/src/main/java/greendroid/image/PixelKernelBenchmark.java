@@ -0,0 +1,101 @@
+/*
+ * Copyright (C) 2011 Cyril Mottier (http://www.cyrilmottier.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package greendroid.image;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Measures the {@link PixelKernel}s as executed by a PixelImageProcessor. The
+ * <em>chain</em> benchmark applies several kernels in a row just like a
+ * ChainImageProcessor made of PixelImageProcessors does. Getting the pixels
+ * out of a Bitmap and creating the resulting Bitmap are not measured.
+ * 
+ * @author Cyril Mottier
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class PixelKernelBenchmark {
+
+    @Param( {
+            "96", "320"
+    })
+    public int size;
+
+    private int[] mSource;
+    private int[] mPixels;
+
+    private final PixelKernel mBlur = new BlurPixelKernel(4);
+    private final PixelKernel mDesaturate = new DesaturatePixelKernel();
+    private final PixelKernel mSharpen = new SharpenPixelKernel(0.5f);
+    private final PixelKernel mTint = new TintPixelKernel(0xff3366cc, 0.3f);
+
+    @Setup
+    public void setUp() {
+        mSource = new int[size * size];
+        mPixels = new int[size * size];
+        final Random random = new Random(42);
+        for (int i = 0; i < mSource.length; i++) {
+            mSource[i] = 0xff000000 | random.nextInt(0x1000000);
+        }
+    }
+
+    /**
+     * Kernels may use the given array as an output buffer: each run starts
+     * from a fresh copy of the image.
+     */
+    private int[] pixels() {
+        System.arraycopy(mSource, 0, mPixels, 0, mSource.length);
+        return mPixels;
+    }
+
+    @Benchmark
+    public int[] blur() {
+        return PixelKernelExecutor.execute(mBlur, pixels(), size, size);
+    }
+
+    @Benchmark
+    public int[] desaturate() {
+        return PixelKernelExecutor.execute(mDesaturate, pixels(), size, size);
+    }
+
+    @Benchmark
+    public int[] sharpen() {
+        return PixelKernelExecutor.execute(mSharpen, pixels(), size, size);
+    }
+
+    @Benchmark
+    public int[] tint() {
+        return PixelKernelExecutor.execute(mTint, pixels(), size, size);
+    }
+
+    @Benchmark
+    public int[] chain() {
+        int[] result = PixelKernelExecutor.execute(mBlur, pixels(), size, size);
+        result = PixelKernelExecutor.execute(mDesaturate, result, size, size);
+        return PixelKernelExecutor.execute(mTint, result, size, size);
+    }
+}
@@ -0,0 +1,57 @@
+/*
+ * Copyright (C) 2011 Cyril Mottier (http://www.cyrilmottier.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package greendroid.util;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Measures the hashing of image urls into the file names of the
+ * DiskImageCache.
+ * 
+ * @author Cyril Mottier
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class Md5UtilBenchmark {
+
+    private static final int URL_COUNT = 1024;
+
+    private String[] mUrls;
+    private int mIndex;
+
+    @Setup
+    public void setUp() {
+        mUrls = new String[URL_COUNT];
+        for (int i = 0; i < URL_COUNT; i++) {
+            mUrls[i] = "http://images.example.com/thumbnails/" + i + "/picture.jpg|scale:96x96:CENTER_CROP";
+        }
+    }
+
+    @Benchmark
+    public String md5() {
+        mIndex = (mIndex + 1) & (URL_COUNT - 1);
+        return Md5Util.md5(mUrls[mIndex]);
+    }
+}
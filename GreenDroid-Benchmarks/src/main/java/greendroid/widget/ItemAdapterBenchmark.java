@@ -0,0 +1,108 @@
+/*
+ * Copyright (C) 2011 Cyril Mottier (http://www.cyrilmottier.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package greendroid.widget;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Measures the bookkeeping done by an ItemAdapter: the view type lookup of
+ * getItemViewType() (when the view type cached on the Item can't be used) and
+ * the section index updates done by each insertion and removal in a
+ * 10,000-row list with a section every 25 rows.
+ * 
+ * @author Cyril Mottier
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class ItemAdapterBenchmark {
+
+    private static final int ROW_COUNT = 10000;
+    private static final int SECTION_LENGTH = 25;
+    private static final int INDEX_COUNT = 1024;
+
+    private static final Class<?>[] ITEM_CLASSES = {
+            Object.class, String.class, Integer.class, Long.class, Float.class, Double.class, StringBuilder.class, Thread.class
+    };
+
+    private final ViewTypeRegistry mTypes = new ViewTypeRegistry();
+    private final SectionIndex mSections = new SectionIndex(new SectionIndex.Callback() {
+        public boolean isSectionStart(int position) {
+            return position % SECTION_LENGTH == 0;
+        }
+    });
+
+    private int[] mIndices;
+    private int mIndex;
+
+    @Setup
+    public void setUp() {
+        for (Class<?> klass : ITEM_CLASSES) {
+            mTypes.getViewType(klass);
+        }
+        mSections.ensure(ROW_COUNT);
+
+        // Rows that don't start a section
+        mIndices = new int[INDEX_COUNT];
+        final Random random = new Random(42);
+        for (int i = 0; i < INDEX_COUNT; i++) {
+            mIndices[i] = 1 + random.nextInt(SECTION_LENGTH - 1) + SECTION_LENGTH * random.nextInt(ROW_COUNT / SECTION_LENGTH);
+        }
+    }
+
+    private int nextIndex() {
+        mIndex = (mIndex + 1) & (INDEX_COUNT - 1);
+        return mIndices[mIndex];
+    }
+
+    @Benchmark
+    public int viewTypeLookup() {
+        mIndex = (mIndex + 1) & (INDEX_COUNT - 1);
+        return mTypes.getViewType(ITEM_CLASSES[mIndex & (ITEM_CLASSES.length - 1)]);
+    }
+
+    @Benchmark
+    public int insertAndRemove() {
+        final int index = nextIndex();
+        mSections.onItemsInserted(index, 1);
+        mSections.onItemsRemoved(index, 1);
+        return mSections.getCount();
+    }
+
+    @Benchmark
+    public int sectionForPosition() {
+        return mSections.getSectionForPosition(nextIndex());
+    }
+
+    /**
+     * What sort() and the modifications made by subclasses cost.
+     */
+    @Benchmark
+    public int rebuild() {
+        mSections.invalidate();
+        mSections.ensure(ROW_COUNT);
+        return mSections.getCount();
+    }
+}
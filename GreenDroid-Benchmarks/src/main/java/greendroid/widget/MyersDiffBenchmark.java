@@ -0,0 +1,81 @@
+/*
+ * Copyright (C) 2011 Cyril Mottier (http://www.cyrilmottier.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package greendroid.widget;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Measures the {@link MyersDiff} behind ItemDiff on a 5,000-row refresh
+ * where the given number of rows changed. When all rows change, the
+ * computation is aborted after ItemDiff.MAX_EDIT_DISTANCE.
+ * 
+ * @author Cyril Mottier
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class MyersDiffBenchmark {
+
+    private static final int ROW_COUNT = 5000;
+    private static final int MAX_EDIT_DISTANCE = 2000;
+
+    @Param( {
+            "10", "100", "5000"
+    })
+    public int changedCount;
+
+    private int[] mOldIds;
+    private int[] mNewIds;
+    private int[] mOldMatches;
+    private boolean[] mNewMatched;
+
+    private final MyersDiff.Callback mCallback = new MyersDiff.Callback() {
+        public boolean areItemsTheSame(int oldPosition, int newPosition) {
+            return mOldIds[oldPosition] == mNewIds[newPosition];
+        }
+    };
+
+    @Setup
+    public void setUp() {
+        mOldIds = new int[ROW_COUNT];
+        for (int i = 0; i < ROW_COUNT; i++) {
+            mOldIds[i] = i;
+        }
+        mNewIds = mOldIds.clone();
+        final Random random = new Random(42);
+        for (int i = 0; i < changedCount; i++) {
+            final int position = (changedCount == ROW_COUNT) ? i : random.nextInt(ROW_COUNT);
+            mNewIds[position] = -1 - i;
+        }
+        mOldMatches = new int[ROW_COUNT];
+        mNewMatched = new boolean[ROW_COUNT];
+    }
+
+    @Benchmark
+    public boolean match() {
+        return MyersDiff.match(ROW_COUNT, ROW_COUNT, mCallback, MAX_EDIT_DISTANCE, mOldMatches, mNewMatched);
+    }
+}
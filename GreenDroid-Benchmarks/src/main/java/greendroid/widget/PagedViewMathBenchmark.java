@@ -0,0 +1,57 @@
+/*
+ * Copyright (C) 2011 Cyril Mottier (http://www.cyrilmottier.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package greendroid.widget;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Measures the page math done by a {@link PagedView} on every scroll step:
+ * a drag is simulated through all pages, computing the visible pages at each
+ * offset and the direction in which the PagedView settles.
+ * 
+ * @author Cyril Mottier
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class PagedViewMathBenchmark {
+
+    private static final int PAGE_COUNT = 20;
+    private static final int PAGE_WIDTH = 480;
+    private static final int STEP = 7;
+
+    private int mVelocity = 1200;
+
+    @Benchmark
+    public int drag() {
+        final int minOffset = PagedViewMath.getOffsetForPage(PAGE_COUNT - 1, PAGE_WIDTH);
+        int result = 0;
+        for (int offset = 0; offset >= minOffset; offset -= STEP) {
+            final int startPage = PagedViewMath.getPageForOffset(offset, PAGE_WIDTH);
+            final int endPage = PagedViewMath.getLastPageForOffset(offset, PAGE_WIDTH);
+            final int direction = PagedViewMath.getSettleDirection(offset % PAGE_WIDTH, PAGE_WIDTH / 2, mVelocity, 500);
+            result += PagedViewMath.clampPage(startPage + direction, PAGE_COUNT) + endPage;
+        }
+        return result;
+    }
+}
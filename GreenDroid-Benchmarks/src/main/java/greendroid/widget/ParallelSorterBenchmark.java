@@ -0,0 +1,90 @@
+/*
+ * Copyright (C) 2011 Cyril Mottier (http://www.cyrilmottier.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package greendroid.widget;
+
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+/**
+ * Compares the {@link ParallelSorter} used by ItemAdapter.sortAsync() to
+ * Arrays.sort(). The executor has the size of the GreenDroid executor.
+ * 
+ * @author Cyril Mottier
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class ParallelSorterBenchmark {
+
+    private static final int EXECUTOR_SIZE = 5;
+
+    private static final Comparator<String> COMPARATOR = new Comparator<String>() {
+        public int compare(String s1, String s2) {
+            return s1.compareTo(s2);
+        }
+    };
+
+    @Param( {
+            "1000", "10000", "100000"
+    })
+    public int size;
+
+    private String[] mItems;
+    private ExecutorService mExecutor;
+
+    @Setup
+    public void setUp() {
+        mItems = new String[size];
+        final Random random = new Random(42);
+        for (int i = 0; i < size; i++) {
+            mItems[i] = "Item " + random.nextInt(size);
+        }
+        mExecutor = Executors.newFixedThreadPool(EXECUTOR_SIZE);
+    }
+
+    @TearDown
+    public void tearDown() {
+        mExecutor.shutdown();
+    }
+
+    @Benchmark
+    public String[] parallelSort() {
+        final String[] items = mItems.clone();
+        ParallelSorter.sort(items, COMPARATOR, mExecutor);
+        return items;
+    }
+
+    @Benchmark
+    public String[] arraysSort() {
+        final String[] items = mItems.clone();
+        Arrays.sort(items, COMPARATOR);
+        return items;
+    }
+}
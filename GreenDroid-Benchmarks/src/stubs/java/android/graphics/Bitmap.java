@@ -0,0 +1,109 @@
+/*
+ * Copyright (C) 2011 Cyril Mottier (http://www.cyrilmottier.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package android.graphics;
+
+import java.util.Arrays;
+
+/**
+ * A stand-in for the Android Bitmap so that the image classes of GreenDroid
+ * run on a regular JVM. Pixels are always stored as ARGB ints. Only the
+ * methods used by the benchmarked classes exist.
+ * 
+ * @author Cyril Mottier
+ */
+public final class Bitmap {
+
+    public enum Config {
+        ALPHA_8, RGB_565, ARGB_4444, ARGB_8888
+    }
+
+    private final int mWidth;
+    private final int mHeight;
+    private final Config mConfig;
+    private final boolean mMutable;
+    private int[] mPixels;
+
+    private Bitmap(int width, int height, Config config, int[] pixels, boolean mutable) {
+        mWidth = width;
+        mHeight = height;
+        mConfig = config;
+        mPixels = pixels;
+        mMutable = mutable;
+    }
+
+    public static Bitmap createBitmap(int width, int height, Config config) {
+        return new Bitmap(width, height, config, new int[width * height], true);
+    }
+
+    public static Bitmap createBitmap(int[] colors, int width, int height, Config config) {
+        final int[] pixels = new int[width * height];
+        System.arraycopy(colors, 0, pixels, 0, pixels.length);
+        return new Bitmap(width, height, config, pixels, false);
+    }
+
+    public int getWidth() {
+        return mWidth;
+    }
+
+    public int getHeight() {
+        return mHeight;
+    }
+
+    public Config getConfig() {
+        return mConfig;
+    }
+
+    public int getRowBytes() {
+        switch (mConfig) {
+            case ALPHA_8:
+                return mWidth;
+            case ARGB_8888:
+                return mWidth * 4;
+            default:
+                return mWidth * 2;
+        }
+    }
+
+    public boolean isMutable() {
+        return mMutable;
+    }
+
+    public boolean isRecycled() {
+        return mPixels == null;
+    }
+
+    public void recycle() {
+        mPixels = null;
+    }
+
+    public void eraseColor(int color) {
+        checkRecycled();
+        Arrays.fill(mPixels, color);
+    }
+
+    public void getPixels(int[] pixels, int offset, int stride, int x, int y, int width, int height) {
+        checkRecycled();
+        for (int row = 0; row < height; row++) {
+            System.arraycopy(mPixels, (y + row) * mWidth + x, pixels, offset + row * stride, width);
+        }
+    }
+
+    private void checkRecycled() {
+        if (mPixels == null) {
+            throw new IllegalStateException("Can't use a recycled bitmap");
+        }
+    }
+}
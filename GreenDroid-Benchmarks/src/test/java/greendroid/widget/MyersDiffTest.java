@@ -0,0 +1,164 @@
+/*
+ * Copyright (C) 2011 Cyril Mottier (http://www.cyrilmottier.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package greendroid.widget;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Random;
+
+import org.junit.Test;
+
+/**
+ * @author Cyril Mottier
+ */
+public class MyersDiffTest {
+
+    private static final int ROW_COUNT = 5000;
+
+    private static class ArrayCallback implements MyersDiff.Callback {
+
+        private final int[] mOldIds;
+        private final int[] mNewIds;
+
+        ArrayCallback(int[] oldIds, int[] newIds) {
+            mOldIds = oldIds;
+            mNewIds = newIds;
+        }
+
+        public boolean areItemsTheSame(int oldPosition, int newPosition) {
+            return mOldIds[oldPosition] == mNewIds[newPosition];
+        }
+    }
+
+    @Test
+    public void matchesLongestCommonSubsequence() {
+        final Random random = new Random(42);
+        for (int i = 0; i < 20000; i++) {
+            final int[] oldIds = randomIds(random, random.nextInt(16), 1 + random.nextInt(6));
+            final int[] newIds = randomIds(random, random.nextInt(16), 1 + random.nextInt(6));
+
+            final int[] oldMatches = new int[oldIds.length];
+            final boolean[] newMatched = new boolean[newIds.length];
+            assertTrue(MyersDiff.match(oldIds.length, newIds.length, new ArrayCallback(oldIds, newIds), Integer.MAX_VALUE,
+                    oldMatches, newMatched));
+
+            assertEquals(lcs(oldIds, newIds), checkMatches(oldIds, newIds, oldMatches, newMatched));
+        }
+    }
+
+    @Test
+    public void completesWhenAllRowsChange() {
+        // The worst case: a refresh where every identifier changes. The whole
+        // computation must fit in the small heap of the tests.
+        final int[] oldIds = new int[ROW_COUNT];
+        final int[] newIds = new int[ROW_COUNT];
+        for (int i = 0; i < ROW_COUNT; i++) {
+            oldIds[i] = i;
+            newIds[i] = ROW_COUNT + i;
+        }
+
+        final int[] oldMatches = new int[ROW_COUNT];
+        final boolean[] newMatched = new boolean[ROW_COUNT];
+        assertTrue(MyersDiff.match(ROW_COUNT, ROW_COUNT, new ArrayCallback(oldIds, newIds), Integer.MAX_VALUE, oldMatches,
+                newMatched));
+        assertEquals(0, checkMatches(oldIds, newIds, oldMatches, newMatched));
+    }
+
+    @Test
+    public void abortsWhenAllRowsChangeBeyondMaxEditDistance() {
+        final int[] oldIds = new int[ROW_COUNT];
+        final int[] newIds = new int[ROW_COUNT];
+        for (int i = 0; i < ROW_COUNT; i++) {
+            oldIds[i] = i;
+            newIds[i] = ROW_COUNT + i;
+        }
+
+        assertFalse(MyersDiff.match(ROW_COUNT, ROW_COUNT, new ArrayCallback(oldIds, newIds), 2000, new int[ROW_COUNT],
+                new boolean[ROW_COUNT]));
+    }
+
+    @Test
+    public void matchesSimilarLists() {
+        final Random random = new Random(42);
+        final int[] oldIds = new int[ROW_COUNT];
+        for (int i = 0; i < ROW_COUNT; i++) {
+            oldIds[i] = i;
+        }
+        final int[] newIds = oldIds.clone();
+        for (int i = 0; i < 100; i++) {
+            newIds[random.nextInt(ROW_COUNT)] = -1 - i;
+        }
+
+        int unchangedCount = 0;
+        for (int i = 0; i < ROW_COUNT; i++) {
+            if (oldIds[i] == newIds[i]) {
+                unchangedCount++;
+            }
+        }
+
+        final int[] oldMatches = new int[ROW_COUNT];
+        final boolean[] newMatched = new boolean[ROW_COUNT];
+        assertTrue(MyersDiff.match(ROW_COUNT, ROW_COUNT, new ArrayCallback(oldIds, newIds), 2000, oldMatches, newMatched));
+        assertEquals(unchangedCount, checkMatches(oldIds, newIds, oldMatches, newMatched));
+    }
+
+    private static int[] randomIds(Random random, int count, int idCount) {
+        final int[] ids = new int[count];
+        for (int i = 0; i < count; i++) {
+            ids[i] = random.nextInt(idCount);
+        }
+        return ids;
+    }
+
+    /**
+     * Check the matches are valid and return their count.
+     */
+    private static int checkMatches(int[] oldIds, int[] newIds, int[] oldMatches, boolean[] newMatched) {
+        int count = 0;
+        int previous = -1;
+        for (int i = 0; i < oldIds.length; i++) {
+            final int match = oldMatches[i];
+            if (match >= 0) {
+                assertTrue("Matches must be increasing", match > previous);
+                assertEquals(oldIds[i], newIds[match]);
+                assertTrue(newMatched[match]);
+                previous = match;
+                count++;
+            }
+        }
+
+        int matchedCount = 0;
+        for (boolean matched : newMatched) {
+            if (matched) {
+                matchedCount++;
+            }
+        }
+        assertEquals(count, matchedCount);
+        return count;
+    }
+
+    private static int lcs(int[] a, int[] b) {
+        final int[][] lengths = new int[a.length + 1][b.length + 1];
+        for (int i = a.length - 1; i >= 0; i--) {
+            for (int j = b.length - 1; j >= 0; j--) {
+                lengths[i][j] = (a[i] == b[j]) ? lengths[i + 1][j + 1] + 1 : Math.max(lengths[i + 1][j], lengths[i][j + 1]);
+            }
+        }
+        return lengths[0][0];
+    }
+}
@@ -0,0 +1,109 @@
+/*
+ * Copyright (C) 2011 Cyril Mottier (http://www.cyrilmottier.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package greendroid.widget;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.junit.After;
+import org.junit.Test;
+
+/**
+ * @author Cyril Mottier
+ */
+public class ParallelSorterTest {
+
+    private static class Element {
+        final int key;
+
+        Element(int key) {
+            this.key = key;
+        }
+    }
+
+    private static final Comparator<Element> KEY_COMPARATOR = new Comparator<Element>() {
+        public int compare(Element e1, Element e2) {
+            return (e1.key < e2.key) ? -1 : ((e1.key == e2.key) ? 0 : 1);
+        }
+    };
+
+    private final ExecutorService mExecutor = Executors.newFixedThreadPool(3);
+
+    @After
+    public void tearDown() {
+        mExecutor.shutdownNow();
+    }
+
+    @Test
+    public void matchesArraysSortForAnyChunkCount() {
+        final Random random = new Random(42);
+        for (int chunkCount = 1; chunkCount <= 7; chunkCount++) {
+            // Chunks of uneven sizes
+            final int length = chunkCount * ParallelSorter.MIN_CHUNK_SIZE + random.nextInt(ParallelSorter.MIN_CHUNK_SIZE);
+            // Few distinct keys: lots of ties checking the sort is stable
+            checkSort(randomElements(random, length, 50), chunkCount);
+            checkSort(randomElements(random, length, Integer.MAX_VALUE), chunkCount);
+        }
+    }
+
+    @Test
+    public void sortsSortedAndReversedArrays() {
+        final int length = 5 * ParallelSorter.MIN_CHUNK_SIZE + 1;
+        final Element[] sorted = new Element[length];
+        final Element[] reversed = new Element[length];
+        for (int i = 0; i < length; i++) {
+            sorted[i] = new Element(i / 3);
+            reversed[i] = new Element((length - i) / 3);
+        }
+        checkSort(sorted, 5);
+        checkSort(reversed, 5);
+    }
+
+    @Test
+    public void sortsSmallArrays() {
+        final Random random = new Random(7);
+        for (int length = 0; length < 20; length++) {
+            checkSort(randomElements(random, length, 5), 4);
+        }
+    }
+
+    private void checkSort(Element[] elements, int chunkCount) {
+        final Element[] expected = elements.clone();
+        Arrays.sort(expected, KEY_COMPARATOR);
+
+        ParallelSorter.sort(elements, KEY_COMPARATOR, mExecutor, chunkCount);
+
+        assertEquals(expected.length, elements.length);
+        for (int i = 0; i < expected.length; i++) {
+            // Same instances in the same order: the sort is stable
+            assertSame("Element " + i + " with " + chunkCount + " chunks", expected[i], elements[i]);
+        }
+    }
+
+    private static Element[] randomElements(Random random, int length, int keyCount) {
+        final Element[] elements = new Element[length];
+        for (int i = 0; i < length; i++) {
+            elements[i] = new Element(random.nextInt(keyCount));
+        }
+        return elements;
+    }
+}
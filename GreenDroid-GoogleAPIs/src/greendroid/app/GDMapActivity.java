@@ -17,6 +17,7 @@ package greendroid.app;
 
 import greendroid.app.ActionBarActivity;
 import greendroid.app.GDApplication;
+import greendroid.image.ImageLoader;
 import greendroid.util.Config;
 import greendroid.widget.ActionBar;
 import greendroid.widget.ActionBar.OnActionBarListener;
@@ -88,6 +89,13 @@ public abstract class GDMapActivity extends MapActivity implements ActionBarActi
         ensureLayout();
     }
 
+    @Override
+    protected void onPause() {
+        super.onPause();
+        // Lets the next launch preload the images currently displayed
+        ImageLoader.saveWorkingSet(this);
+    }
+
     public ActionBar.Type getActionBarType() {
         return mActionBarType;
     }
@@ -17,6 +17,7 @@ package greendroid.app;
 
 import com.cyrilmottier.android.greendroid.R;
 
+import greendroid.image.ImageLoader;
 import greendroid.util.Config;
 import greendroid.widget.ActionBar;
 import greendroid.widget.ActionBarHost;
@@ -156,6 +157,13 @@ public class GDActivity extends Activity implements ActionBarActivity {
         ensureLayout();
     }
 
+    @Override
+    protected void onPause() {
+        super.onPause();
+        // Lets the next launch preload the images currently displayed
+        ImageLoader.saveWorkingSet(this);
+    }
+
     /**
      * The current {@link ActionBar.Type} of the hosted {@link ActionBar}
      * 
@@ -15,6 +15,7 @@
  */
 package greendroid.app;
 
+import greendroid.image.ImageLoader;
 import greendroid.util.Config;
 import greendroid.widget.ActionBar;
 import greendroid.widget.ActionBar.OnActionBarListener;
@@ -52,6 +53,13 @@ public class GDTabActivity extends TabActivity implements ActionBarActivity {
         setContentView(createLayout());
     }
 
+    @Override
+    protected void onPause() {
+        super.onPause();
+        // Lets the next launch preload the images currently displayed
+        ImageLoader.saveWorkingSet(this);
+    }
+
     public int createLayout() {
         return R.layout.gd_tab_content;
     }
@@ -0,0 +1,131 @@
+/*
+ * Copyright (C) 2011 Cyril Mottier (http://www.cyrilmottier.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package greendroid.image;
+
+import java.util.LinkedList;
+
+import android.graphics.Bitmap;
+import android.graphics.Color;
+
+/**
+ * <p>
+ * A {@link BitmapPool} keeps a bounded set of mutable Bitmaps that are no
+ * longer used so that they can be reused rather than allocated again. This is
+ * particularly useful for {@link ImageProcessor}s producing lots of Bitmaps of
+ * the same size (thumbnails for instance).
+ * </p>
+ * <p>
+ * <em><strong>Note:</strong> A Bitmap must be given back to the pool only once
+ * it is guaranteed nobody will use it anymore.</em>
+ * </p>
+ * 
+ * @author Cyril Mottier
+ */
+public class BitmapPool {
+
+    private final LinkedList<Bitmap> mBitmaps = new LinkedList<Bitmap>();
+    private final int mMaxBytes;
+    private int mBytes;
+
+    /**
+     * Create a new BitmapPool.
+     * 
+     * @param maxBytes The maximum amount of memory, in bytes, used by the
+     *            Bitmaps kept in the pool
+     */
+    public BitmapPool(int maxBytes) {
+        mMaxBytes = maxBytes;
+    }
+
+    /**
+     * Return a mutable and fully transparent Bitmap with the given dimensions
+     * and configuration. The Bitmap is taken from the pool when possible or
+     * allocated otherwise.
+     * 
+     * @param width The width of the Bitmap
+     * @param height The height of the Bitmap
+     * @param config The configuration of the Bitmap
+     * @return A mutable Bitmap
+     */
+    public Bitmap get(int width, int height, Bitmap.Config config) {
+        Bitmap bitmap = null;
+
+        synchronized (this) {
+            for (int i = mBitmaps.size() - 1; i >= 0; i--) {
+                final Bitmap candidate = mBitmaps.get(i);
+                if (candidate.getWidth() == width && candidate.getHeight() == height && candidate.getConfig() == config) {
+                    mBitmaps.remove(i);
+                    mBytes -= getByteCount(candidate);
+                    bitmap = candidate;
+                    break;
+                }
+            }
+        }
+
+        if (bitmap == null) {
+            return Bitmap.createBitmap(width, height, config);
+        }
+
+        bitmap.eraseColor(Color.TRANSPARENT);
+        return bitmap;
+    }
+
+    /**
+     * Give a Bitmap back to the pool. Bitmaps that are not mutable or that
+     * doesn't fit in the pool are recycled.
+     * 
+     * @param bitmap The Bitmap that is no longer used
+     */
+    public void put(Bitmap bitmap) {
+        if (bitmap == null || bitmap.isRecycled()) {
+            return;
+        }
+
+        final int bytes = getByteCount(bitmap);
+        if (!bitmap.isMutable() || bytes > mMaxBytes) {
+            bitmap.recycle();
+            return;
+        }
+
+        synchronized (this) {
+            if (mBitmaps.contains(bitmap)) {
+                return;
+            }
+            while (mBytes + bytes > mMaxBytes) {
+                final Bitmap eldest = mBitmaps.removeFirst();
+                mBytes -= getByteCount(eldest);
+                eldest.recycle();
+            }
+            mBitmaps.addLast(bitmap);
+            mBytes += bytes;
+        }
+    }
+
+    /**
+     * Recycle all Bitmaps currently in the pool.
+     */
+    public synchronized void clear() {
+        for (Bitmap bitmap : mBitmaps) {
+            bitmap.recycle();
+        }
+        mBitmaps.clear();
+        mBytes = 0;
+    }
+
+    static int getByteCount(Bitmap bitmap) {
+        return bitmap.getRowBytes() * bitmap.getHeight();
+    }
+}
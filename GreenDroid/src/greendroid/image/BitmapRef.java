@@ -0,0 +1,94 @@
+/*
+ * Copyright (C) 2011 Cyril Mottier (http://www.cyrilmottier.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package greendroid.image;
+
+import android.graphics.Bitmap;
+
+/**
+ * <p>
+ * A reference-counted handle on a Bitmap stored in the {@link ImageCache}.
+ * Handles are obtained with {@link ImageCache#acquire(String)} and must be
+ * given back using {@link #release()} once the Bitmap is no longer displayed.
+ * </p>
+ * <p>
+ * While at least one handle is held, the Bitmap belongs to the "active" tier
+ * of the cache and is never evicted. Once the last handle has been released,
+ * the Bitmap moves to the size-bounded "inactive" tier. When evicted from this
+ * tier, the Bitmap is given back to the {@link BitmapPool} of the cache that
+ * either reuses or recycles it.
+ * </p>
+ * 
+ * @author Cyril Mottier
+ */
+public final class BitmapRef {
+
+    private final ImageCache mCache;
+    private final String mKey;
+    private final Bitmap mBitmap;
+
+    // All fields below are guarded by the ImageCache lock
+    int mRefCount;
+    boolean mManaged;
+    boolean mPinned;
+
+    BitmapRef(ImageCache cache, String key, Bitmap bitmap) {
+        mCache = cache;
+        mKey = key;
+        mBitmap = bitmap;
+    }
+
+    /**
+     * Return the key of this Bitmap in the {@link ImageCache}.
+     * 
+     * @return The key of the Bitmap
+     */
+    public String getKey() {
+        return mKey;
+    }
+
+    /**
+     * Return the Bitmap referenced by this handle. The returned Bitmap must
+     * not be used once this handle has been released.
+     * 
+     * @return The Bitmap referenced by this handle
+     */
+    public Bitmap getBitmap() {
+        return mBitmap;
+    }
+
+    /**
+     * Release this handle. Each call to {@link ImageCache#acquire(String)}
+     * must be balanced with a call to this method.
+     */
+    public void release() {
+        mCache.release(this);
+    }
+
+    /**
+     * Give the Bitmap back to the pool if nobody may still be using it.
+     * Bitmaps that have never been acquired or that have been returned by
+     * {@link ImageCache#get(String)} are left to the garbage collector.
+     */
+    void discard(BitmapPool pool) {
+        if (mManaged && !mPinned && mRefCount == 0) {
+            pool.put(mBitmap);
+        }
+    }
+
+    int getByteCount() {
+        return BitmapPool.getByteCount(mBitmap);
+    }
+}
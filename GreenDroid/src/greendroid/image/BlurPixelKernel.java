@@ -0,0 +1,142 @@
+/*
+ * Copyright (C) 2011 Cyril Mottier (http://www.cyrilmottier.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package greendroid.image;
+
+/**
+ * A {@link PixelKernel} blurring images using a box blur. The blur is
+ * separable and therefore executed in two passes: a horizontal one followed by
+ * a vertical one.
+ * 
+ * @author Cyril Mottier
+ */
+public class BlurPixelKernel implements PixelKernel {
+
+    /**
+     * The maximum radius supported by this kernel.
+     */
+    public static final int MAX_RADIUS = 63;
+
+    private static final int PASS_HORIZONTAL = 0;
+
+    private final int mRadius;
+
+    /**
+     * Create a new BlurPixelKernel.
+     * 
+     * @param radius The radius of the blur in pixels (clamped to
+     *            {@value #MAX_RADIUS})
+     */
+    public BlurPixelKernel(int radius) {
+        mRadius = Math.max(0, Math.min(MAX_RADIUS, radius));
+    }
+
+    public int getPassCount() {
+        return 2;
+    }
+
+    public int getScratchSize(int width, int height) {
+        // The vertical pass stores the sums of the 4 channels of each column
+        return 4 * width;
+    }
+
+    public void processRows(int pass, int[] src, int[] dst, int width, int height, int top, int bottom, int[] scratch) {
+        if (pass == PASS_HORIZONTAL) {
+            blurHorizontally(src, dst, width, top, bottom);
+        } else {
+            blurVertically(src, dst, width, height, top, bottom, scratch);
+        }
+    }
+
+    private void blurHorizontally(int[] src, int[] dst, int width, int top, int bottom) {
+        final int radius = mRadius;
+        final int divider = (1 << 16) / (2 * radius + 1);
+        final int lastX = width - 1;
+
+        for (int y = top; y < bottom; y++) {
+            final int row = y * width;
+
+            int sa = 0, sr = 0, sg = 0, sb = 0;
+            for (int i = -radius; i <= radius; i++) {
+                final int color = src[row + Math.max(0, Math.min(lastX, i))];
+                sa += color >>> 24;
+                sr += (color >> 16) & 0xFF;
+                sg += (color >> 8) & 0xFF;
+                sb += color & 0xFF;
+            }
+
+            for (int x = 0; x < width; x++) {
+                dst[row + x] = average(sa, divider) << 24 | average(sr, divider) << 16 | average(sg, divider) << 8 | average(sb, divider);
+
+                final int out = src[row + Math.max(0, x - radius)];
+                final int in = src[row + Math.min(lastX, x + radius + 1)];
+                sa += (in >>> 24) - (out >>> 24);
+                sr += ((in >> 16) & 0xFF) - ((out >> 16) & 0xFF);
+                sg += ((in >> 8) & 0xFF) - ((out >> 8) & 0xFF);
+                sb += (in & 0xFF) - (out & 0xFF);
+            }
+        }
+    }
+
+    private void blurVertically(int[] src, int[] dst, int width, int height, int top, int bottom, int[] sums) {
+        final int radius = mRadius;
+        final int divider = (1 << 16) / (2 * radius + 1);
+        final int lastY = height - 1;
+
+        for (int x = 0; x < width; x++) {
+            int sa = 0, sr = 0, sg = 0, sb = 0;
+            for (int i = top - radius; i <= top + radius; i++) {
+                final int color = src[Math.max(0, Math.min(lastY, i)) * width + x];
+                sa += color >>> 24;
+                sr += (color >> 16) & 0xFF;
+                sg += (color >> 8) & 0xFF;
+                sb += color & 0xFF;
+            }
+            final int offset = x << 2;
+            sums[offset] = sa;
+            sums[offset + 1] = sr;
+            sums[offset + 2] = sg;
+            sums[offset + 3] = sb;
+        }
+
+        for (int y = top; y < bottom; y++) {
+            final int row = y * width;
+            final int outRow = Math.max(0, y - radius) * width;
+            final int inRow = Math.min(lastY, y + radius + 1) * width;
+
+            for (int x = 0; x < width; x++) {
+                final int offset = x << 2;
+                final int sa = sums[offset];
+                final int sr = sums[offset + 1];
+                final int sg = sums[offset + 2];
+                final int sb = sums[offset + 3];
+
+                dst[row + x] = average(sa, divider) << 24 | average(sr, divider) << 16 | average(sg, divider) << 8 | average(sb, divider);
+
+                final int out = src[outRow + x];
+                final int in = src[inRow + x];
+                sums[offset] = sa + (in >>> 24) - (out >>> 24);
+                sums[offset + 1] = sr + ((in >> 16) & 0xFF) - ((out >> 16) & 0xFF);
+                sums[offset + 2] = sg + ((in >> 8) & 0xFF) - ((out >> 8) & 0xFF);
+                sums[offset + 3] = sb + (in & 0xFF) - (out & 0xFF);
+            }
+        }
+    }
+
+    private static int average(int sum, int divider) {
+        // Fixed point 16.16 with rounding
+        return (sum * divider + 0x8000) >> 16;
+    }
+}
@@ -0,0 +1,106 @@
+/*
+ * Copyright (C) 2011 Cyril Mottier (http://www.cyrilmottier.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package greendroid.image;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedList;
+
+/**
+ * <p>
+ * A bounded pool of byte arrays. Arrays are used by the {@link ImageLoader} to
+ * read encoded images and as temporary storage while decoding. Reusing them
+ * prevents the loader from producing a steady stream of garbage while the user
+ * scrolls through a list of images.
+ * </p>
+ * <p>
+ * When the pool is full, the least recently returned arrays are discarded.
+ * </p>
+ * 
+ * @author Cyril Mottier
+ */
+final class ByteArrayPool {
+
+    private static final Comparator<byte[]> SIZE_COMPARATOR = new Comparator<byte[]>() {
+        public int compare(byte[] b1, byte[] b2) {
+            return b1.length - b2.length;
+        }
+    };
+
+    /**
+     * Arrays in the order they have been returned to the pool
+     */
+    private final LinkedList<byte[]> mArraysByLastUse = new LinkedList<byte[]>();
+
+    /**
+     * Arrays sorted by size
+     */
+    private final ArrayList<byte[]> mArraysBySize = new ArrayList<byte[]>(64);
+
+    private final int mMaxBytes;
+    private int mBytes;
+
+    ByteArrayPool(int maxBytes) {
+        mMaxBytes = maxBytes;
+    }
+
+    /**
+     * Return an array of at least the given size. The array is taken from the
+     * pool when possible or allocated otherwise. Its content is undefined.
+     * 
+     * @param size The minimum size of the array
+     * @return A byte array
+     */
+    synchronized byte[] get(int size) {
+        for (int i = 0; i < mArraysBySize.size(); i++) {
+            final byte[] array = mArraysBySize.get(i);
+            if (array.length >= size) {
+                mBytes -= array.length;
+                mArraysBySize.remove(i);
+                mArraysByLastUse.remove(array);
+                return array;
+            }
+        }
+        return new byte[size];
+    }
+
+    /**
+     * Give an array back to the pool. The array must not be used anymore by
+     * the caller.
+     * 
+     * @param array The array to return
+     */
+    synchronized void put(byte[] array) {
+        if (array == null || array.length > mMaxBytes) {
+            return;
+        }
+
+        mArraysByLastUse.add(array);
+        int position = Collections.binarySearch(mArraysBySize, array, SIZE_COMPARATOR);
+        if (position < 0) {
+            position = -position - 1;
+        }
+        mArraysBySize.add(position, array);
+        mBytes += array.length;
+
+        while (mBytes > mMaxBytes) {
+            final byte[] eldest = mArraysByLastUse.removeFirst();
+            mArraysBySize.remove(eldest);
+            mBytes -= eldest.length;
+        }
+    }
+}
@@ -23,7 +23,7 @@ import android.graphics.Bitmap;
  * @author Cyril Mottier
  * @author kennydude
  */
-public class ChainImageProcessor implements ImageProcessor {
+public class ChainImageProcessor implements KeyedImageProcessor {
 
     ImageProcessor[] mProcessors;
 
@@ -37,11 +37,66 @@ public class ChainImageProcessor implements ImageProcessor {
         mProcessors = processors;
     }
 
+    /**
+     * Return the concatenation of the keys of the chained processors or null
+     * if at least one of the processors can't be identified.
+     */
+    public String getCacheKey() {
+        final StringBuilder builder = new StringBuilder();
+        for (ImageProcessor processor : mProcessors) {
+            final String key = (processor instanceof KeyedImageProcessor) ? ((KeyedImageProcessor) processor).getCacheKey() : null;
+            if (key == null) {
+                return null;
+            }
+            if (builder.length() > 0) {
+                builder.append('>');
+            }
+            builder.append(key);
+        }
+        return builder.toString();
+    }
+
+    /**
+     * Apply the processors in order. Intermediate Bitmaps are recycled as soon
+     * as they have been processed, but only when they have been created by
+     * one of the processors of the library. Other processors may return
+     * Bitmaps they still use (a shared placeholder for instance).
+     */
     public Bitmap processImage(Bitmap bitmap) {
+        final Bitmap input = bitmap;
+        boolean owned = false;
         for (ImageProcessor processor : mProcessors) {
+            final Bitmap intermediate = bitmap;
             bitmap = processor.processImage(bitmap);
+            // Intermediate Bitmaps created by the library are only known by
+            // this processor. Their memory can be released right away.
+            if (owned && intermediate != input && intermediate != bitmap && intermediate != null) {
+                intermediate.recycle();
+            }
+            owned = createsNewBitmaps(processor);
         }
         return bitmap;
     }
 
+    /**
+     * Return true if the given processor always returns a newly created Bitmap
+     * that nobody else references.
+     */
+    private static boolean createsNewBitmaps(ImageProcessor processor) {
+        // Subclasses of the processors of the library may return any Bitmap
+        if (processor instanceof NewBitmapImageProcessor && processor.getClass().getSuperclass() == Object.class) {
+            return true;
+        }
+        if (processor.getClass() == ChainImageProcessor.class) {
+            final ImageProcessor[] processors = ((ChainImageProcessor) processor).mProcessors;
+            for (ImageProcessor chained : processors) {
+                if (!createsNewBitmaps(chained)) {
+                    return false;
+                }
+            }
+            return processors.length > 0;
+        }
+        return false;
+    }
+
 }
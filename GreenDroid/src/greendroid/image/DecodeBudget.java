@@ -0,0 +1,148 @@
+/*
+ * Copyright (C) 2011 Cyril Mottier (http://www.cyrilmottier.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package greendroid.image;
+
+import greendroid.app.GDApplication.OnLowMemoryListener;
+import android.graphics.BitmapFactory;
+import android.os.SystemClock;
+
+/**
+ * <p>
+ * A {@link DecodeBudget} limits the number of pixels being decoded at the same
+ * time by the {@link ImageLoader}. Prior decoding an image, the
+ * {@link ImageLoader} estimates the size of the resulting Bitmap and asks the
+ * {@link DecodeBudget} for admission. Images that doesn't fit in the remaining
+ * budget are delayed until enough pixels have been released. Images that would
+ * never fit in the budget are down-sampled.
+ * </p>
+ * <p>
+ * The budget is automatically halved when the system is running low on memory
+ * and gets back to its original value after a while.
+ * </p>
+ * 
+ * @author Cyril Mottier
+ */
+public class DecodeBudget implements OnLowMemoryListener {
+
+    private static final long RECOVERY_DELAY = 30 * 1000;
+    private static final int MIN_PIXELS = 256 * 256;
+
+    private int mMaxPixels;
+    private int mCurrentMaxPixels;
+    private long mInFlightPixels;
+    private long mLowMemoryTime;
+
+    DecodeBudget() {
+        // By default, the decoded Bitmaps may use up to a quarter of the
+        // heap (assuming 4 bytes per pixel)
+        setMaxPixels((int) Math.min(Integer.MAX_VALUE, Runtime.getRuntime().maxMemory() / 16));
+    }
+
+    /**
+     * Set the maximum number of pixels that may be decoded simultaneously.
+     * 
+     * @param maxPixels The maximum number of in-flight pixels
+     */
+    public synchronized void setMaxPixels(int maxPixels) {
+        mMaxPixels = Math.max(MIN_PIXELS, maxPixels);
+        mCurrentMaxPixels = mMaxPixels;
+        notifyAll();
+    }
+
+    /**
+     * Return the maximum number of pixels that may be decoded simultaneously.
+     * This value may be lower than the value given to
+     * {@link #setMaxPixels(int)} when the system is low on memory.
+     * 
+     * @return The current maximum number of in-flight pixels
+     */
+    public synchronized int getMaxPixels() {
+        recoverIfNeeded();
+        return mCurrentMaxPixels;
+    }
+
+    /**
+     * Wait for the image described by the given options to fit in the budget.
+     * The options must contain the bounds of the image (outWidth and
+     * outHeight). The inSampleSize field may be increased in order for the
+     * image to fit in the budget.
+     * 
+     * @param options The options that will be used to decode the image
+     * @return The number of pixels that has been reserved. This value must be
+     *         given back to {@link #release(long)} once the decoding is done.
+     * @throws InterruptedException
+     */
+    synchronized long acquire(BitmapFactory.Options options) throws InterruptedException {
+        recoverIfNeeded();
+
+        int sampleSize = Math.max(1, options.inSampleSize);
+        long pixels = estimatePixels(options, sampleSize);
+        while (pixels > mCurrentMaxPixels) {
+            sampleSize <<= 1;
+            pixels = estimatePixels(options, sampleSize);
+        }
+        if (sampleSize != Math.max(1, options.inSampleSize)) {
+            options.inSampleSize = sampleSize;
+            ImageLoader.getMetrics().onBitmapDownsampled();
+        }
+
+        // Waiting is useless when nothing is being decoded. This also
+        // prevents any dead-lock when the budget shrinks while waiting.
+        while (mInFlightPixels > 0 && mInFlightPixels + pixels > mCurrentMaxPixels) {
+            wait();
+        }
+
+        mInFlightPixels += pixels;
+        return pixels;
+    }
+
+    /**
+     * Release pixels previously reserved using
+     * {@link #acquire(BitmapFactory.Options)}.
+     * 
+     * @param pixels The number of pixels to release
+     */
+    synchronized void release(long pixels) {
+        mInFlightPixels = Math.max(0, mInFlightPixels - pixels);
+        notifyAll();
+    }
+
+    public synchronized void onLowMemoryReceived() {
+        mCurrentMaxPixels = Math.max(MIN_PIXELS, mCurrentMaxPixels / 2);
+        mLowMemoryTime = SystemClock.uptimeMillis();
+    }
+
+    private void recoverIfNeeded() {
+        if (mCurrentMaxPixels < mMaxPixels && SystemClock.uptimeMillis() - mLowMemoryTime > RECOVERY_DELAY) {
+            mCurrentMaxPixels = mMaxPixels;
+            notifyAll();
+        }
+    }
+
+    private static long estimatePixels(BitmapFactory.Options options, int sampleSize) {
+        // Skia rounds down the dimensions when sub-sampling
+        long width = Math.max(1, options.outWidth / sampleSize);
+        long height = Math.max(1, options.outHeight / sampleSize);
+
+        if (options.inScaled && options.inDensity != 0 && options.inTargetDensity != 0) {
+            final float scale = (float) options.inTargetDensity / options.inDensity;
+            width = (long) (width * scale + 0.5f);
+            height = (long) (height * scale + 0.5f);
+        }
+
+        return width * height;
+    }
+}
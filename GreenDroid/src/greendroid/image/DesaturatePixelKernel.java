@@ -0,0 +1,70 @@
+/*
+ * Copyright (C) 2011 Cyril Mottier (http://www.cyrilmottier.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package greendroid.image;
+
+/**
+ * A {@link PixelKernel} converting colors to grayscale. The amount of
+ * desaturation may be specified in order to partially desaturate images.
+ * 
+ * @author Cyril Mottier
+ */
+public class DesaturatePixelKernel implements PixelKernel {
+
+    private final int mAmount;
+
+    /**
+     * Create a new DesaturatePixelKernel that fully desaturates images.
+     */
+    public DesaturatePixelKernel() {
+        this(1.0f);
+    }
+
+    /**
+     * Create a new DesaturatePixelKernel.
+     * 
+     * @param amount The amount of desaturation from 0 (original image) to 1
+     *            (grayscale image)
+     */
+    public DesaturatePixelKernel(float amount) {
+        mAmount = (int) (Math.max(0, Math.min(1, amount)) * 256);
+    }
+
+    public int getPassCount() {
+        return 1;
+    }
+
+    public int getScratchSize(int width, int height) {
+        return 0;
+    }
+
+    public void processRows(int pass, int[] src, int[] dst, int width, int height, int top, int bottom, int[] scratch) {
+        final int amount = mAmount;
+        final int end = bottom * width;
+
+        for (int i = top * width; i < end; i++) {
+            final int color = src[i];
+            final int r = (color >> 16) & 0xFF;
+            final int g = (color >> 8) & 0xFF;
+            final int b = color & 0xFF;
+
+            // Luminance according to ITU-R BT.601 (fixed point 8.8)
+            final int lum = (r * 77 + g * 150 + b * 29) >> 8;
+
+            dst[i] = (color & 0xFF000000) | ((r + (((lum - r) * amount) >> 8)) << 16) | ((g + (((lum - g) * amount) >> 8)) << 8)
+                    | (b + (((lum - b) * amount) >> 8));
+        }
+    }
+}
@@ -0,0 +1,379 @@
+/*
+ * Copyright (C) 2011 Cyril Mottier (http://www.cyrilmottier.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package greendroid.image;
+
+import greendroid.util.Config;
+import greendroid.util.Md5Util;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.util.Log;
+
+/**
+ * <p>
+ * A size-bounded cache storing encoded images in a directory. Each entry is
+ * stored in its own file whose name is the MD5 hash of its key. When the cache
+ * exceeds its maximum size, the least recently used entries are deleted.
+ * </p>
+ * <p>
+ * By default, images with an alpha channel are encoded as PNG while opaque
+ * images are encoded as JPEG. A specific format may be forced using
+ * {@link #setCompressFormat(Bitmap.CompressFormat)}. Already encoded images
+ * (as downloaded from the network for instance) may be stored as is using
+ * {@link #put(String, byte[], int, int)}.
+ * </p>
+ * 
+ * @author Cyril Mottier
+ */
+public class DiskImageCache {
+
+    private static final String LOG_TAG = DiskImageCache.class.getSimpleName();
+
+    private static final String TEMP_SUFFIX = ".tmp";
+    private static final int DEFAULT_QUALITY = 85;
+    private static final int BUFFER_SIZE = 8 * 1024;
+
+    private final File mDirectory;
+    private final long mMaxBytes;
+
+    private Bitmap.CompressFormat mCompressFormat;
+    private int mQuality = DEFAULT_QUALITY;
+
+    /**
+     * File names (in access order) associated to the size of the files
+     */
+    private LinkedHashMap<String, Long> mEntries;
+    private long mBytes;
+
+    /**
+     * Create a new DiskImageCache.
+     * 
+     * @param directory The directory in which images are stored. This
+     *            directory must be dedicated to this cache.
+     * @param maxBytes The maximum size, in bytes, of the cache
+     */
+    public DiskImageCache(File directory, long maxBytes) {
+        mDirectory = directory;
+        mMaxBytes = maxBytes;
+    }
+
+    /**
+     * Force the format used to encode images. Pass null to let the cache
+     * choose the format according to the presence of an alpha channel.
+     * 
+     * @param format The format used to encode images
+     */
+    public void setCompressFormat(Bitmap.CompressFormat format) {
+        mCompressFormat = format;
+    }
+
+    /**
+     * Set the quality used when encoding images with a lossy format.
+     * 
+     * @param quality The quality from 0 to 100
+     */
+    public void setQuality(int quality) {
+        mQuality = Math.max(0, Math.min(100, quality));
+    }
+
+    /**
+     * Return the Bitmap associated to the given key.
+     * 
+     * @param key The key of the image
+     * @param options The options used to decode the image. May be null.
+     * @return The decoded Bitmap or null if the cache doesn't contain the
+     *         requested image
+     */
+    public Bitmap get(String key, BitmapFactory.Options options) {
+        final String name = Md5Util.md5(key);
+        synchronized (this) {
+            if (!getEntries().containsKey(name)) {
+                return null;
+            }
+            // Accessing the entry moves it to the end of the LRU list
+            getEntries().get(name);
+        }
+
+        final File file = new File(mDirectory, name);
+        final Bitmap bitmap = BitmapFactory.decodeFile(file.getAbsolutePath(), options);
+        if (bitmap == null) {
+            // The file has been deleted or is corrupted
+            remove(key);
+        } else {
+            // Keeps the LRU order across application launches
+            file.setLastModified(System.currentTimeMillis());
+        }
+        return bitmap;
+    }
+
+    /**
+     * Open the encoded image associated to the given key.
+     * 
+     * @param key The key of the image
+     * @return An InputStream that must be closed by the caller or null if the
+     *         cache doesn't contain the requested image
+     */
+    public InputStream openInputStream(String key) {
+        final String name = Md5Util.md5(key);
+        synchronized (this) {
+            if (getEntries().get(name) == null) {
+                return null;
+            }
+        }
+
+        final File file = new File(mDirectory, name);
+        try {
+            final InputStream inputStream = new FileInputStream(file);
+            file.setLastModified(System.currentTimeMillis());
+            return inputStream;
+        } catch (FileNotFoundException e) {
+            remove(key);
+            return null;
+        }
+    }
+
+    /**
+     * Return true if the cache contains an entry for the given key.
+     * 
+     * @param key The key of the image
+     * @return true if the image is in the cache
+     */
+    public boolean contains(String key) {
+        final String name = Md5Util.md5(key);
+        synchronized (this) {
+            return getEntries().containsKey(name);
+        }
+    }
+
+    /**
+     * Encode the given Bitmap and store it in the cache.
+     * 
+     * @param key The key of the image
+     * @param bitmap The Bitmap to store
+     */
+    public void put(String key, Bitmap bitmap) {
+        Bitmap.CompressFormat format = mCompressFormat;
+        if (format == null) {
+            format = bitmap.hasAlpha() ? Bitmap.CompressFormat.PNG : Bitmap.CompressFormat.JPEG;
+        }
+
+        final String name = Md5Util.md5(key);
+
+        File tempFile = null;
+        boolean success = false;
+        OutputStream outputStream = null;
+        try {
+            tempFile = createTempFile(name);
+            outputStream = new BufferedOutputStream(new FileOutputStream(tempFile), BUFFER_SIZE);
+            success = bitmap.compress(format, mQuality, outputStream);
+            outputStream.close();
+            outputStream = null;
+        } catch (IOException e) {
+            if (Config.GD_ERROR_LOGS_ENABLED) {
+                Log.e(LOG_TAG, "Error while writing image " + key, e);
+            }
+            success = false;
+        } finally {
+            closeQuietly(outputStream);
+        }
+
+        commit(name, tempFile, success);
+    }
+
+    /**
+     * Store an already encoded image in the cache.
+     * 
+     * @param key The key of the image
+     * @param data The encoded image
+     * @param offset The offset of the image in data
+     * @param length The length of the encoded image
+     */
+    public void put(String key, byte[] data, int offset, int length) {
+        if (length > mMaxBytes) {
+            return;
+        }
+
+        final String name = Md5Util.md5(key);
+
+        File tempFile = null;
+        boolean success = false;
+        OutputStream outputStream = null;
+        try {
+            tempFile = createTempFile(name);
+            // The size of the data is known: it is written at once without
+            // any intermediate buffer
+            outputStream = new FileOutputStream(tempFile);
+            outputStream.write(data, offset, length);
+            outputStream.close();
+            outputStream = null;
+            success = true;
+        } catch (IOException e) {
+            if (Config.GD_ERROR_LOGS_ENABLED) {
+                Log.e(LOG_TAG, "Error while writing image " + key, e);
+            }
+            success = false;
+        } finally {
+            closeQuietly(outputStream);
+        }
+
+        commit(name, tempFile, success);
+    }
+
+    /**
+     * Remove the entry associated to the given key.
+     * 
+     * @param key The key of the image
+     */
+    public void remove(String key) {
+        final String name = Md5Util.md5(key);
+        synchronized (this) {
+            final Long size = getEntries().remove(name);
+            if (size != null) {
+                mBytes -= size;
+            }
+            new File(mDirectory, name).delete();
+        }
+    }
+
+    /**
+     * Remove all entries from the cache.
+     */
+    public synchronized void clear() {
+        for (String name : getEntries().keySet()) {
+            new File(mDirectory, name).delete();
+        }
+        mEntries.clear();
+        mBytes = 0;
+    }
+
+    /**
+     * Return the current size of the cache in bytes
+     * 
+     * @return The size of the cache
+     */
+    public synchronized long getSize() {
+        getEntries();
+        return mBytes;
+    }
+
+    /**
+     * Create the temporary file an image is written to. Each write uses its
+     * own file so that concurrent writers of the same key never write into
+     * the same file.
+     */
+    private File createTempFile(String name) throws IOException {
+        synchronized (this) {
+            // Makes sure the directory exists
+            getEntries();
+        }
+        return File.createTempFile(name, TEMP_SUFFIX, mDirectory);
+    }
+
+    /**
+     * Move a fully written temporary file to its final location and trim the
+     * cache if needed.
+     */
+    private void commit(String name, File tempFile, boolean success) {
+        if (tempFile == null) {
+            return;
+        }
+        synchronized (this) {
+            final File file = new File(mDirectory, name);
+            if (!success || !tempFile.renameTo(file)) {
+                tempFile.delete();
+                return;
+            }
+
+            final Long previousSize = getEntries().put(name, file.length());
+            if (previousSize != null) {
+                mBytes -= previousSize;
+            }
+            mBytes += file.length();
+            trimToSize();
+        }
+    }
+
+    private void trimToSize() {
+        final Iterator<Map.Entry<String, Long>> it = mEntries.entrySet().iterator();
+        while (mBytes > mMaxBytes && it.hasNext()) {
+            final Map.Entry<String, Long> entry = it.next();
+            new File(mDirectory, entry.getKey()).delete();
+            mBytes -= entry.getValue();
+            it.remove();
+        }
+    }
+
+    /**
+     * Lazily read the content of the cache directory. This is done on the
+     * first access as it requires disk I/O.
+     */
+    private LinkedHashMap<String, Long> getEntries() {
+        if (mEntries == null) {
+            mEntries = new LinkedHashMap<String, Long>(32, 0.75f, true);
+            mBytes = 0;
+
+            if (!mDirectory.exists()) {
+                mDirectory.mkdirs();
+            }
+
+            final File[] files = mDirectory.listFiles();
+            if (files != null) {
+                // Oldest files first so that they are the first to be evicted
+                Arrays.sort(files, new Comparator<File>() {
+                    public int compare(File f1, File f2) {
+                        final long m1 = f1.lastModified();
+                        final long m2 = f2.lastModified();
+                        return (m1 < m2) ? -1 : (m1 > m2) ? 1 : 0;
+                    }
+                });
+                for (File file : files) {
+                    if (file.getName().endsWith(TEMP_SUFFIX)) {
+                        file.delete();
+                    } else {
+                        mEntries.put(file.getName(), file.length());
+                        mBytes += file.length();
+                    }
+                }
+            }
+            trimToSize();
+        }
+        return mEntries;
+    }
+
+    private static void closeQuietly(OutputStream outputStream) {
+        if (outputStream != null) {
+            try {
+                outputStream.close();
+            } catch (IOException e) {
+                // Nothing to do
+            }
+        }
+    }
+}
@@ -0,0 +1,155 @@
+/*
+ * Copyright (C) 2011 Cyril Mottier (http://www.cyrilmottier.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package greendroid.image;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URL;
+import java.net.URLConnection;
+import java.util.concurrent.Callable;
+
+/**
+ * <p>
+ * The encoded content of an image read in an array taken from a
+ * {@link ByteArrayPool}. The array is given back to the pool using
+ * {@link #release()}.
+ * </p>
+ * <p>
+ * An {@link EncodedImage} is also a Callable downloading the image at the
+ * given url. When several downloads of the same image are issued, the ones
+ * that are not used anymore must be abandoned using {@link #abandon()}: their
+ * array will be released as soon as they are done.
+ * </p>
+ * 
+ * @author Cyril Mottier
+ */
+final class EncodedImage implements Callable<EncodedImage> {
+
+    private static final int BUFFER_SIZE = 16 * 1024;
+
+    private final String mUrl;
+    private final ByteArrayPool mPool;
+    private int mConnectTimeout;
+    private int mReadTimeout;
+
+    private byte[] mData;
+    private int mLength;
+
+    private boolean mDone;
+    private boolean mAbandoned;
+
+    EncodedImage(String url, ByteArrayPool pool) {
+        mUrl = url;
+        mPool = pool;
+    }
+
+    void setTimeouts(int connectTimeout, int readTimeout) {
+        mConnectTimeout = connectTimeout;
+        mReadTimeout = readTimeout;
+    }
+
+    byte[] getData() {
+        return mData;
+    }
+
+    int getLength() {
+        return mLength;
+    }
+
+    /**
+     * Download the image at the url of this {@link EncodedImage}.
+     */
+    public EncodedImage call() throws IOException {
+        boolean success = false;
+        try {
+            final URLConnection connection = new URL(mUrl).openConnection();
+            connection.setConnectTimeout(mConnectTimeout);
+            connection.setReadTimeout(mReadTimeout);
+            read(connection.getInputStream(), connection.getContentLength());
+            success = true;
+            return this;
+        } finally {
+            synchronized (this) {
+                mDone = true;
+                if (!success || mAbandoned) {
+                    release();
+                }
+            }
+        }
+    }
+
+    /**
+     * Mark this download as useless. Its array is released once the download
+     * is done.
+     */
+    synchronized void abandon() {
+        mAbandoned = true;
+        if (mDone) {
+            release();
+        }
+    }
+
+    /**
+     * Read the entire stream. The array is sized according to the expected
+     * length but the stream may actually be shorter or longer.
+     * 
+     * @param inputStream The stream to read. It is closed by this method.
+     * @param expectedLength The expected length of the stream or a negative
+     *            value if unknown
+     */
+    void read(InputStream inputStream, int expectedLength) throws IOException {
+        try {
+            byte[] data = mPool.get((expectedLength > 0) ? expectedLength : BUFFER_SIZE);
+            mData = data;
+            int length = 0;
+
+            while (true) {
+                if (length == data.length) {
+                    // Only grow the array when the stream isn't over
+                    final int b = inputStream.read();
+                    if (b == -1) {
+                        break;
+                    }
+                    final byte[] newData = mPool.get(data.length * 2);
+                    System.arraycopy(data, 0, newData, 0, length);
+                    mPool.put(data);
+                    data = newData;
+                    mData = data;
+                    data[length++] = (byte) b;
+                }
+
+                final int count = inputStream.read(data, length, data.length - length);
+                if (count == -1) {
+                    break;
+                }
+                length += count;
+            }
+
+            mLength = length;
+        } finally {
+            inputStream.close();
+        }
+    }
+
+    /**
+     * Give the array back to the pool.
+     */
+    synchronized void release() {
+        mPool.put(mData);
+        mData = null;
+        mLength = 0;
+    }
+}
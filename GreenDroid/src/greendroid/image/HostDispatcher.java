@@ -0,0 +1,196 @@
+/*
+ * Copyright (C) 2011 Cyril Mottier (http://www.cyrilmottier.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package greendroid.image;
+
+import java.util.HashMap;
+import java.util.LinkedList;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+
+/**
+ * <p>
+ * Dispatches image requests to an {@link Executor} while limiting the number
+ * of requests running simultaneously for a given host. Hosts are served in a
+ * round-robin fashion so that a slow host can't starve the others. Requests
+ * of a given host are executed in the order they have been submitted.
+ * </p>
+ * <p>
+ * Requests that are cancelled while waiting are simply dropped.
+ * </p>
+ * 
+ * @author Cyril Mottier
+ */
+final class HostDispatcher {
+
+    private static class HostQueue {
+        final String host;
+        final LinkedList<FutureTask<?>> pending = new LinkedList<FutureTask<?>>();
+        int running;
+
+        HostQueue(String host) {
+            this.host = host;
+        }
+    }
+
+    private final Executor mExecutor;
+    private final int mMaxRequests;
+    private int mMaxRequestsPerHost;
+    private int mRunningCount;
+
+    private final HashMap<String, HostQueue> mQueues = new HashMap<String, HostQueue>();
+
+    /**
+     * Hosts having pending requests in the order they will be served
+     */
+    private final LinkedList<HostQueue> mRotation = new LinkedList<HostQueue>();
+
+    /**
+     * @param executor The {@link Executor} running the requests
+     * @param maxRequests The maximum number of requests running at the same
+     *            time. This is usually the number of threads of the executor.
+     * @param maxRequestsPerHost The maximum number of requests running at the
+     *            same time for a given host.
+     */
+    HostDispatcher(Executor executor, int maxRequests, int maxRequestsPerHost) {
+        mExecutor = executor;
+        mMaxRequests = maxRequests;
+        mMaxRequestsPerHost = maxRequestsPerHost;
+    }
+
+    synchronized void setMaxRequestsPerHost(int maxRequestsPerHost) {
+        mMaxRequestsPerHost = maxRequestsPerHost;
+        dispatch();
+    }
+
+    /**
+     * Submit a request for execution.
+     * 
+     * @param host The host the request connects to. A null host means the
+     *            request doesn't use the network and is not limited.
+     * @param runnable The request
+     * @return A Future that may be used to cancel the request
+     */
+    Future<?> submit(String host, Runnable runnable) {
+        final FutureTask<Object> task = new FutureTask<Object>(runnable, null);
+        synchronized (this) {
+            HostQueue queue = mQueues.get(host);
+            if (queue == null) {
+                queue = new HostQueue(host);
+                mQueues.put(host, queue);
+            }
+            if (queue.pending.isEmpty()) {
+                mRotation.addLast(queue);
+            }
+            queue.pending.addLast(task);
+            dispatch();
+        }
+        return task;
+    }
+
+    /**
+     * Reserve a slot of the given host for a request running outside of this
+     * dispatcher (a hedged request for instance). The slot must be given back
+     * using {@link #releaseHostSlot(String)}.
+     * 
+     * @param host The host the request connects to
+     * @return true if the slot has been reserved, false if the host is at its
+     *         limit or has pending requests
+     */
+    synchronized boolean tryAcquireHostSlot(String host) {
+        HostQueue queue = mQueues.get(host);
+        if (queue == null) {
+            queue = new HostQueue(host);
+            mQueues.put(host, queue);
+        }
+        if (queue.running >= mMaxRequestsPerHost || !queue.pending.isEmpty()) {
+            removeIfIdle(queue);
+            return false;
+        }
+        queue.running++;
+        return true;
+    }
+
+    /**
+     * Give back a slot reserved with {@link #tryAcquireHostSlot(String)}.
+     * 
+     * @param host The host the request connected to
+     */
+    synchronized void releaseHostSlot(String host) {
+        final HostQueue queue = mQueues.get(host);
+        if (queue != null) {
+            queue.running--;
+            removeIfIdle(queue);
+            dispatch();
+        }
+    }
+
+    private void dispatch() {
+        while (mRunningCount < mMaxRequests) {
+            HostQueue next = null;
+            for (HostQueue queue : mRotation) {
+                if (queue.host == null || queue.running < mMaxRequestsPerHost) {
+                    next = queue;
+                    break;
+                }
+            }
+
+            if (next == null) {
+                // All hosts with pending requests are at their limit
+                return;
+            }
+
+            // The host goes to the back of the line
+            mRotation.remove(next);
+            final FutureTask<?> task = next.pending.removeFirst();
+            if (!next.pending.isEmpty()) {
+                mRotation.addLast(next);
+            }
+
+            if (task.isCancelled()) {
+                removeIfIdle(next);
+                continue;
+            }
+
+            next.running++;
+            mRunningCount++;
+
+            final HostQueue queue = next;
+            mExecutor.execute(new Runnable() {
+                public void run() {
+                    try {
+                        task.run();
+                    } finally {
+                        onRequestFinished(queue);
+                    }
+                }
+            });
+        }
+    }
+
+    private synchronized void onRequestFinished(HostQueue queue) {
+        queue.running--;
+        mRunningCount--;
+        removeIfIdle(queue);
+        dispatch();
+    }
+
+    private void removeIfIdle(HostQueue queue) {
+        if (queue.running == 0 && queue.pending.isEmpty()) {
+            mQueues.remove(queue.host);
+        }
+    }
+}
@@ -18,23 +18,61 @@ package greendroid.image;
 import greendroid.app.GDApplication.OnLowMemoryListener;
 import greendroid.util.GDUtils;
 
-import java.lang.ref.SoftReference;
 import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
 
 import android.content.Context;
 import android.graphics.Bitmap;
 
 /**
- * A very basing implementation of an Bitmap cache
+ * <p>
+ * An in-memory cache of Bitmaps made of two tiers:
+ * </p>
+ * <ul>
+ * <li>The "active" tier contains Bitmaps currently referenced by at least one
+ * {@link BitmapRef} (usually because they are displayed on screen). Those
+ * Bitmaps are never evicted.</li>
+ * <li>The "inactive" tier is a size-bounded LRU cache containing Bitmaps that
+ * are not referenced anymore. Evicted Bitmaps are given back to the
+ * {@link BitmapPool} of the cache.</li>
+ * </ul>
+ * <p>
+ * <em><strong>Note:</strong> Bitmaps returned by {@link #get(String)} may be
+ * kept indefinitely by the caller. As a result, they are never recycled by the
+ * cache. Prefer {@link #acquire(String)} whenever possible.</em>
+ * </p>
  * 
  * @author Cyril Mottier
  */
 public class ImageCache implements OnLowMemoryListener {
 
-    private final HashMap<String, SoftReference<Bitmap>> mSoftCache;
+    private static final int MAX_RECENT_KEYS = 48;
+
+    private final HashMap<String, BitmapRef> mActiveCache;
+    private final LinkedHashMap<String, BitmapRef> mInactiveCache;
+    private int mMaxInactiveBytes;
+    private int mInactiveBytes;
+    private BitmapPool mBitmapPool;
+
+    /**
+     * Keys of the most recently displayed Bitmaps (in access order)
+     */
+    private final LinkedHashMap<String, Boolean> mRecentKeys;
 
     public ImageCache(Context context) {
-        mSoftCache = new HashMap<String, SoftReference<Bitmap>>();
+        mActiveCache = new HashMap<String, BitmapRef>();
+        mInactiveCache = new LinkedHashMap<String, BitmapRef>(32, 0.75f, true);
+        mMaxInactiveBytes = (int) Math.min(Integer.MAX_VALUE, Runtime.getRuntime().maxMemory() / 8);
+        mRecentKeys = new LinkedHashMap<String, Boolean>(MAX_RECENT_KEYS, 0.75f, true) {
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Boolean> eldest) {
+                return size() > MAX_RECENT_KEYS;
+            }
+        };
         GDUtils.getGDApplication(context).registerOnLowMemoryListener(this);
     }
 
@@ -42,29 +80,188 @@ public class ImageCache implements OnLowMemoryListener {
         return GDUtils.getImageCache(context);
     }
 
-    public Bitmap get(String url) {
-        final SoftReference<Bitmap> ref = mSoftCache.get(url);
+    /**
+     * Set the maximum amount of memory, in bytes, used by the Bitmaps that are
+     * not currently referenced. Referenced Bitmaps are not taken into account.
+     * 
+     * @param maxBytes The maximum size of the inactive tier
+     */
+    public synchronized void setMaxSize(int maxBytes) {
+        mMaxInactiveBytes = maxBytes;
+        trimToSize();
+    }
+
+    /**
+     * Return the {@link BitmapPool} receiving the Bitmaps evicted from this
+     * cache. This pool may be given to {@link ImageProcessor}s so that they
+     * reuse evicted Bitmaps.
+     * 
+     * @return The {@link BitmapPool} of this cache
+     */
+    public synchronized BitmapPool getBitmapPool() {
+        if (mBitmapPool == null) {
+            mBitmapPool = new BitmapPool((int) Math.min(Integer.MAX_VALUE, Runtime.getRuntime().maxMemory() / 32));
+        }
+        return mBitmapPool;
+    }
+
+    /**
+     * Set the {@link BitmapPool} receiving the Bitmaps evicted from this
+     * cache.
+     * 
+     * @param pool The {@link BitmapPool} to use
+     */
+    public synchronized void setBitmapPool(BitmapPool pool) {
+        mBitmapPool = pool;
+    }
+
+    /**
+     * Return the Bitmap associated to the given key. The returned Bitmap will
+     * never be recycled by the cache.
+     * 
+     * @param url The key of the Bitmap
+     * @return The Bitmap or null if the cache doesn't contain it
+     * @see #acquire(String)
+     */
+    public synchronized Bitmap get(String url) {
+        final BitmapRef ref = lookup(url);
         if (ref == null) {
             return null;
         }
+        ref.mPinned = true;
+        return ref.getBitmap();
+    }
 
-        final Bitmap bitmap = ref.get();
-        if (bitmap == null) {
-            mSoftCache.remove(url);
+    /**
+     * Return a handle on the Bitmap associated to the given key. The Bitmap is
+     * guaranteed to stay valid until the handle is released.
+     * 
+     * @param url The key of the Bitmap
+     * @return A {@link BitmapRef} that must be released once the Bitmap is no
+     *         longer used or null if the cache doesn't contain the Bitmap.
+     */
+    public synchronized BitmapRef acquire(String url) {
+        final BitmapRef ref = lookup(url);
+        if (ref == null) {
+            return null;
         }
 
-        return bitmap;
+        if (ref.mRefCount == 0) {
+            mInactiveCache.remove(url);
+            mInactiveBytes -= ref.getByteCount();
+            mActiveCache.put(url, ref);
+        }
+        ref.mRefCount++;
+        ref.mManaged = true;
+        mRecentKeys.put(url, Boolean.TRUE);
+        return ref;
     }
 
-    public void put(String url, Bitmap bitmap) {
-        mSoftCache.put(url, new SoftReference<Bitmap>(bitmap));
+    /**
+     * Return true if the cache contains a Bitmap for the given key.
+     * 
+     * @param url The key of the Bitmap
+     * @return true if the Bitmap is in the cache
+     */
+    public synchronized boolean contains(String url) {
+        return lookup(url) != null;
     }
 
-    public void flush() {
-        mSoftCache.clear();
+    /**
+     * Return the keys of the most recently displayed Bitmaps, the most recent
+     * first. Those keys describe the working set of the application and may
+     * be used to preload the cache on the next launch.
+     * 
+     * @return The keys of the recently displayed Bitmaps
+     * @see ImageLoader#saveWorkingSet(Context)
+     */
+    public synchronized String[] getRecentKeys() {
+        final String[] keys = new String[mRecentKeys.size()];
+        int i = keys.length;
+        for (String key : mRecentKeys.keySet()) {
+            keys[--i] = key;
+        }
+        return keys;
+    }
+
+    public synchronized void put(String url, Bitmap bitmap) {
+        final BitmapRef activeRef = mActiveCache.get(url);
+        if (activeRef != null && activeRef.getBitmap() == bitmap) {
+            return;
+        }
+
+        final BitmapRef previousRef = mInactiveCache.remove(url);
+        if (previousRef != null) {
+            mInactiveBytes -= previousRef.getByteCount();
+            if (previousRef.getBitmap() != bitmap) {
+                previousRef.discard(getBitmapPool());
+            }
+        }
+
+        final BitmapRef ref = new BitmapRef(this, url, bitmap);
+        mInactiveCache.put(url, ref);
+        mInactiveBytes += ref.getByteCount();
+        trimToSize();
+    }
+
+    synchronized void release(BitmapRef ref) {
+        if (ref.mRefCount <= 0) {
+            throw new IllegalStateException("The BitmapRef " + ref.getKey() + " has already been released");
+        }
+
+        if (--ref.mRefCount > 0) {
+            return;
+        }
+
+        final String url = ref.getKey();
+        if (mActiveCache.get(url) == ref) {
+            mActiveCache.remove(url);
+        }
+
+        if (mInactiveCache.containsKey(url)) {
+            // A newer Bitmap has been put while this one was displayed
+            ref.discard(getBitmapPool());
+        } else {
+            mInactiveCache.put(url, ref);
+            mInactiveBytes += ref.getByteCount();
+            trimToSize();
+        }
+    }
+
+    /**
+     * Remove all Bitmaps that are not currently referenced from the cache.
+     */
+    public synchronized void flush() {
+        final BitmapPool pool = getBitmapPool();
+        for (BitmapRef ref : mInactiveCache.values()) {
+            ref.discard(pool);
+        }
+        mInactiveCache.clear();
+        mInactiveBytes = 0;
+        pool.clear();
     }
 
     public void onLowMemoryReceived() {
         flush();
     }
+
+    private BitmapRef lookup(String url) {
+        final BitmapRef ref = mActiveCache.get(url);
+        if (ref != null) {
+            return ref;
+        }
+        return mInactiveCache.get(url);
+    }
+
+    private void trimToSize() {
+        final BitmapPool pool = getBitmapPool();
+        final Iterator<Map.Entry<String, BitmapRef>> it = mInactiveCache.entrySet().iterator();
+        // The most recent entry is always kept even if it is too large
+        while (mInactiveBytes > mMaxInactiveBytes && mInactiveCache.size() > 1 && it.hasNext()) {
+            final BitmapRef ref = it.next().getValue();
+            it.remove();
+            mInactiveBytes -= ref.getByteCount();
+            ref.discard(pool);
+        }
+    }
 }
@@ -18,18 +18,38 @@ package greendroid.image;
 import greendroid.util.Config;
 import greendroid.util.GDUtils;
 
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
 import java.io.InputStream;
-import java.net.URL;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
 import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import android.content.Context;
 import android.content.res.AssetManager;
 import android.graphics.Bitmap;
 import android.graphics.BitmapFactory;
+import android.net.Uri;
 import android.os.Handler;
 import android.os.Message;
 import android.os.Process;
+import android.os.SystemClock;
 import android.text.TextUtils;
 import android.util.DisplayMetrics;
 import android.util.Log;
@@ -57,6 +77,11 @@ public class ImageLoader {
 
         void onImageLoadingStarted(ImageLoader loader);
 
+        /**
+         * Called once the image has been loaded. The Bitmap is owned by the
+         * {@link ImageCache}: clients that need to keep it must obtain a
+         * {@link BitmapRef} using {@link ImageCache#acquire(String)}.
+         */
         void onImageLoadingEnded(ImageLoader loader, Bitmap bitmap);
 
         void onImageLoadingFailed(ImageLoader loader, Throwable exception);
@@ -65,21 +90,49 @@ public class ImageLoader {
     private static final int ON_START = 0x100;
     private static final int ON_FAIL = 0x101;
     private static final int ON_END = 0x102;
-    
+
+    private static final String WORKING_SET_FILE = "gd_image_working_set";
+    private static final int DEFAULT_CONNECT_TIMEOUT = 15 * 1000;
+    private static final int DEFAULT_READ_TIMEOUT = 30 * 1000;
+    private static final int TEMP_STORAGE_SIZE = 16 * 1024;
+    private static final int BYTE_ARRAY_POOL_SIZE = (int) Math.min(2 * 1024 * 1024, Runtime.getRuntime().maxMemory() / 32);
+    private static final String MIME_TYPE_JPEG = "image/jpeg";
+    private static final char CACHE_KEY_SEPARATOR = '|';
+    private static final int DEFAULT_MAX_REQUESTS = 5;
+    private static final int DEFAULT_MAX_REQUESTS_PER_HOST = 3;
+
+    private static final ImageMetrics sMetrics = new ImageMetrics();
+    private static final DecodeBudget sDecodeBudget = new DecodeBudget();
+    private static final ByteArrayPool sByteArrayPool = new ByteArrayPool(BYTE_ARRAY_POOL_SIZE);
+
     private static ImageCache sImageCache;
     private static ExecutorService sExecutor;
+    private static HostDispatcher sDispatcher;
+    private static int sMaxRequestsPerHost = DEFAULT_MAX_REQUESTS_PER_HOST;
     private static BitmapFactory.Options sDefaultOptions;
     private static AssetManager sAssetManager;
+    private static DiskImageCache sVariantDiskCache;
+    private static DiskImageCache sOriginalDiskCache;
+    private static int sConnectTimeout = DEFAULT_CONNECT_TIMEOUT;
+    private static int sReadTimeout = DEFAULT_READ_TIMEOUT;
+    private static float sHedgingPercentile;
+    private static boolean sOpaqueDecodingEnabled = true;
+    private static ExecutorService sHedgingExecutor;
 
     public ImageLoader(Context context) {
         if (sImageCache == null) {
             sImageCache = GDUtils.getImageCache(context);
+            GDUtils.getGDApplication(context).registerOnLowMemoryListener(sDecodeBudget);
         }
         if (sExecutor == null) {
             sExecutor = GDUtils.getExecutor(context);
+            final int maxRequests = (sExecutor instanceof ThreadPoolExecutor) ? ((ThreadPoolExecutor) sExecutor).getMaximumPoolSize()
+                    : DEFAULT_MAX_REQUESTS;
+            sDispatcher = new HostDispatcher(sExecutor, maxRequests, sMaxRequestsPerHost);
         }
         if (sDefaultOptions == null) {
         	sDefaultOptions = new BitmapFactory.Options();
+        	sDefaultOptions.inPreferredConfig = Bitmap.Config.ARGB_8888;
         	sDefaultOptions.inDither = true;
         	sDefaultOptions.inScaled = true;
         	sDefaultOptions.inDensity = DisplayMetrics.DENSITY_MEDIUM;
@@ -88,6 +141,304 @@ public class ImageLoader {
         sAssetManager = context.getAssets();
     }
 
+    /**
+     * Return the application-wide {@link ImageMetrics} gathering statistics
+     * about all images loaded by {@link ImageLoader}s.
+     * 
+     * @return The {@link ImageMetrics} of the application
+     */
+    public static ImageMetrics getMetrics() {
+        return sMetrics;
+    }
+
+    /**
+     * Return the application-wide {@link DecodeBudget} used to limit the
+     * number of pixels decoded simultaneously.
+     * 
+     * @return The {@link DecodeBudget} of the application
+     */
+    public static DecodeBudget getDecodeBudget() {
+        return sDecodeBudget;
+    }
+
+    /**
+     * Set the maximum number of images downloaded simultaneously from a given
+     * host. Hosts are served in a round-robin fashion so that a slow host
+     * can't use all of the loading threads. Local images (assets, files, etc.)
+     * are not limited.
+     * 
+     * @param maxRequestsPerHost The maximum number of simultaneous requests
+     *            per host
+     */
+    public static void setMaxRequestsPerHost(int maxRequestsPerHost) {
+        sMaxRequestsPerHost = Math.max(1, maxRequestsPerHost);
+        if (sDispatcher != null) {
+            sDispatcher.setMaxRequestsPerHost(sMaxRequestsPerHost);
+        }
+    }
+
+    /**
+     * <p>
+     * Save the keys of the most recently displayed images so that they can be
+     * preloaded on the next launch using
+     * {@link #preloadWorkingSet(Context)}. This method is automatically called
+     * when a GreenDroid Activity is paused. Saving is done in background.
+     * </p>
+     * <p>
+     * Nothing is saved when no {@link DiskImageCache} has been set as the
+     * images couldn't be preloaded anyway.
+     * </p>
+     * 
+     * @param context The Context of the application
+     */
+    public static void saveWorkingSet(Context context) {
+        if (sVariantDiskCache == null && sOriginalDiskCache == null) {
+            return;
+        }
+
+        final String[] keys = GDUtils.getImageCache(context).getRecentKeys();
+        final File file = context.getFileStreamPath(WORKING_SET_FILE);
+
+        GDUtils.getExecutor(context).execute(new Runnable() {
+            public void run() {
+                final File tempFile = new File(file.getPath() + ".tmp");
+                Writer writer = null;
+                try {
+                    writer = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(tempFile), "UTF-8"));
+                    for (String key : keys) {
+                        writer.write(key);
+                        writer.write('\n');
+                    }
+                    writer.close();
+                    writer = null;
+                    tempFile.renameTo(file);
+                } catch (IOException e) {
+                    if (Config.GD_ERROR_LOGS_ENABLED) {
+                        Log.e(LOG_TAG, "Error while saving the working set", e);
+                    }
+                } finally {
+                    closeQuietly(writer);
+                    tempFile.delete();
+                }
+            }
+        });
+    }
+
+    /**
+     * Load, in background, the images saved by {@link #saveWorkingSet(Context)}
+     * from the {@link DiskImageCache}s into the {@link ImageCache}. This method
+     * should be called as soon as possible once the {@link DiskImageCache}s
+     * have been set (usually in Application.onCreate()) so that the first
+     * screen finds its images in memory.
+     * 
+     * @param context The Context of the application
+     */
+    public static void preloadWorkingSet(Context context) {
+        final ImageLoader loader = new ImageLoader(context);
+        final File file = context.getFileStreamPath(WORKING_SET_FILE);
+
+        GDUtils.getExecutor(context).execute(new Runnable() {
+            public void run() {
+                Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+                if (!file.exists()) {
+                    return;
+                }
+
+                BufferedReader reader = null;
+                try {
+                    reader = new BufferedReader(new InputStreamReader(new FileInputStream(file), "UTF-8"));
+                    String key;
+                    while ((key = reader.readLine()) != null) {
+                        if (key.length() > 0 && !sImageCache.contains(key)) {
+                            final Bitmap bitmap = loader.loadFromDisk(key);
+                            if (bitmap != null) {
+                                sImageCache.put(key, bitmap);
+                            }
+                        }
+                    }
+                } catch (Exception e) {
+                    if (Config.GD_ERROR_LOGS_ENABLED) {
+                        Log.e(LOG_TAG, "Error while preloading the working set", e);
+                    }
+                } finally {
+                    closeQuietly(reader);
+                }
+            }
+        });
+    }
+
+    /**
+     * Return the image associated to the given cache key if it is available
+     * in one of the disk tiers. Processed images are only available in the
+     * variant tier while original images are decoded from the original tier.
+     */
+    private Bitmap loadFromDisk(String key) throws Exception {
+        final DiskImageCache variantCache = sVariantDiskCache;
+        if (variantCache != null && variantCache.contains(key)) {
+            return variantCache.get(key, createVariantOptions(sDefaultOptions));
+        }
+
+        final DiskImageCache originalCache = sOriginalDiskCache;
+        final InputStream inputStream = (originalCache != null) ? originalCache.openInputStream(key) : null;
+        if (inputStream == null) {
+            return null;
+        }
+
+        final EncodedImage encodedImage = new EncodedImage(key, sByteArrayPool);
+        long pixels = 0;
+        try {
+            encodedImage.read(inputStream, inputStream.available());
+            final BitmapFactory.Options options = createDecodeOptions(encodedImage.getData(), encodedImage.getLength(),
+                    sDefaultOptions, null, null);
+            if (options == null) {
+                return null;
+            }
+            pixels = sDecodeBudget.acquire(options);
+            return BitmapFactory.decodeByteArray(encodedImage.getData(), 0, encodedImage.getLength(), options);
+        } finally {
+            sDecodeBudget.release(pixels);
+            encodedImage.release();
+        }
+    }
+
+    private static void closeQuietly(Closeable closeable) {
+        if (closeable != null) {
+            try {
+                closeable.close();
+            } catch (IOException e) {
+                // Nothing to do
+            }
+        }
+    }
+
+    /**
+     * Set the timeouts used when downloading images. A timeout of zero means
+     * the request never times out.
+     * 
+     * @param connectTimeout The timeout, in milliseconds, used when opening
+     *            the connection (default is 15 seconds)
+     * @param readTimeout The timeout, in milliseconds, used when reading the
+     *            image (default is 30 seconds)
+     */
+    public static void setTimeouts(int connectTimeout, int readTimeout) {
+        sConnectTimeout = Math.max(0, connectTimeout);
+        sReadTimeout = Math.max(0, readTimeout);
+    }
+
+    /**
+     * Enable hedged requests. When a download takes longer than the given
+     * percentile of the recent download times of its host, a second identical
+     * request is issued and the first response is used. For instance, a value
+     * of 0.95 duplicates roughly 5% of the requests. Hedging starts once enough
+     * downloads have been recorded for a host in the {@link ImageMetrics}.
+     * Hedged requests count against the limit set with
+     * {@link #setMaxRequestsPerHost(int)}: a request isn't hedged when its host
+     * is at its limit or has pending requests.
+     * 
+     * @param percentile The percentile (between 0 and 1) after which requests
+     *            are hedged. Pass 0 to disable hedging (default).
+     */
+    public static void setHedgingPercentile(float percentile) {
+        sHedgingPercentile = Math.max(0, Math.min(1, percentile));
+    }
+
+    /**
+     * Enable or disable the decoding of JPEG images using the
+     * {@link Bitmap.Config#RGB_565} configuration. JPEG images have no alpha
+     * channel: decoding them in RGB_565 halves their memory footprint. This
+     * only applies to requests whose options leave the configuration
+     * unspecified: <code>inPreferredConfig</code> is null or
+     * {@link Bitmap.Config#ARGB_8888} (the default value of
+     * BitmapFactory.Options on recent platforms).
+     * 
+     * @param enabled true to decode JPEG images in RGB_565 (default)
+     */
+    public static void setOpaqueDecodingEnabled(boolean enabled) {
+        sOpaqueDecodingEnabled = enabled;
+    }
+
+    /**
+     * Set the {@link DiskImageCache} used to persist images downloaded from
+     * the network. Images are stored exactly as they have been downloaded.
+     * This cache is independent from the variant cache (see
+     * {@link #setVariantDiskCache(DiskImageCache)}) and may therefore use a
+     * different directory and size.
+     * 
+     * @param diskCache The {@link DiskImageCache} storing original images.
+     *            Pass null to disable the persistence of original images.
+     */
+    public static void setOriginalDiskCache(DiskImageCache diskCache) {
+        sOriginalDiskCache = diskCache;
+    }
+
+    /**
+     * Return the {@link DiskImageCache} used to persist original images.
+     * 
+     * @return The current original {@link DiskImageCache} or null
+     */
+    public static DiskImageCache getOriginalDiskCache() {
+        return sOriginalDiskCache;
+    }
+
+    /**
+     * Set the {@link DiskImageCache} used to persist processed images. Only
+     * images processed by a {@link KeyedImageProcessor} returning a non-null
+     * key are stored in this cache. When a processed image is found on disk,
+     * it is used as is: the original image is neither downloaded nor
+     * processed.
+     * 
+     * @param diskCache The {@link DiskImageCache} storing processed images.
+     *            Pass null to disable the persistence of processed images.
+     */
+    public static void setVariantDiskCache(DiskImageCache diskCache) {
+        sVariantDiskCache = diskCache;
+    }
+
+    /**
+     * Return the {@link DiskImageCache} used to persist processed images.
+     * 
+     * @return The current variant {@link DiskImageCache} or null
+     */
+    public static DiskImageCache getVariantDiskCache() {
+        return sVariantDiskCache;
+    }
+
+    /**
+     * Return the key identifying the image at the given url once processed by
+     * the given {@link ImageProcessor}. This key is used to store the image in
+     * the {@link ImageCache}.
+     * 
+     * @param url The url of the image
+     * @param processor The processor applied to the image. May be null.
+     * @return The key of the processed image
+     */
+    public static String getCacheKey(String url, ImageProcessor processor) {
+        final String processorKey = getProcessorKey(processor);
+        if (url == null || processorKey == null) {
+            return url;
+        }
+        return url + CACHE_KEY_SEPARATOR + processorKey;
+    }
+
+    /**
+     * Return the {@link ScaleImageProcessor} applied first by the given
+     * processor if any.
+     */
+    private static ScaleImageProcessor getScaleProcessor(ImageProcessor processor) {
+        while (processor instanceof ChainImageProcessor) {
+            final ImageProcessor[] processors = ((ChainImageProcessor) processor).mProcessors;
+            processor = (processors != null && processors.length > 0) ? processors[0] : null;
+        }
+        return (processor instanceof ScaleImageProcessor) ? (ScaleImageProcessor) processor : null;
+    }
+
+    private static String getProcessorKey(ImageProcessor processor) {
+        if (processor instanceof KeyedImageProcessor) {
+            return ((KeyedImageProcessor) processor).getCacheKey();
+        }
+        return null;
+    }
+
     public Future<?> loadImage(String url, ImageLoaderCallback callback) {
         return loadImage(url, callback, null);
     }
@@ -97,7 +448,18 @@ public class ImageLoader {
     }
     
     public Future<?> loadImage(String url, ImageLoaderCallback callback, ImageProcessor bitmapProcessor, BitmapFactory.Options options) {
-        return sExecutor.submit(new ImageFetcher(url, callback, bitmapProcessor, options));
+        return sDispatcher.submit(getHost(url), new ImageFetcher(url, callback, bitmapProcessor, options));
+    }
+
+    /**
+     * Return the host of the given url or null if the url doesn't point to a
+     * remote image.
+     */
+    private static String getHost(String url) {
+        if (url == null || !(url.startsWith("http://") || url.startsWith("https://"))) {
+            return null;
+        }
+        return Uri.parse(url).getHost();
     }
 
     private class ImageFetcher implements Runnable {
@@ -107,9 +469,11 @@ public class ImageLoader {
         private ImageProcessor mBitmapProcessor;
         private BitmapFactory.Options mOptions;
 
+        private EncodedImage mEncodedImage;
+
         public ImageFetcher(String url, ImageLoaderCallback callback, ImageProcessor bitmapProcessor, BitmapFactory.Options options) {
             mUrl = url;
-            mHandler = new ImageHandler(url, callback);
+            mHandler = new ImageHandler(getCacheKey(url, bitmapProcessor), callback);
             mBitmapProcessor = bitmapProcessor;
             mOptions = options;
         }
@@ -121,6 +485,9 @@ public class ImageLoader {
             final Handler h = mHandler;
             Bitmap bitmap = null;
             Throwable throwable = null;
+            long pixels = 0;
+            byte[] tempStorage = null;
+            boolean dataShared = false;
 
             h.sendMessage(Message.obtain(h, ON_START));
 
@@ -129,22 +496,89 @@ public class ImageLoader {
                 if (TextUtils.isEmpty(mUrl)) {
                     throw new Exception("The given URL cannot be null or empty");
                 }
-                
-                InputStream inputStream = null;
-                
-                if (mUrl.startsWith("file:///android_asset/")) {
+
+                final BitmapFactory.Options requestedOptions = (mOptions == null) ? sDefaultOptions : mOptions;
+                if (requestedOptions.inTempStorage == null) {
+                    tempStorage = sByteArrayPool.get(TEMP_STORAGE_SIZE);
+                }
+
+                // Processed images are persisted only when the processor can
+                // be identified. Otherwise the key would be ambiguous.
+                final DiskImageCache variantCache = sVariantDiskCache;
+                final String variantKey = (variantCache != null && getProcessorKey(mBitmapProcessor) != null) ? getCacheKey(mUrl,
+                        mBitmapProcessor) : null;
+
+                if (variantKey != null) {
+                    final BitmapFactory.Options variantOptions = createVariantOptions(requestedOptions);
+                    if (tempStorage != null) {
+                        variantOptions.inTempStorage = tempStorage;
+                    }
+                    bitmap = variantCache.get(variantKey, variantOptions);
+                    if (bitmap != null) {
+                        sMetrics.onDiskCacheHit();
+                        h.sendMessage(Message.obtain(h, ON_END, bitmap));
+                        return;
+                    }
+                }
+
+                // The encoded image is entirely read in memory so that it can
+                // be decoded twice: once for the bounds, once for the pixels
+                final String host = getHost(mUrl);
+                final DiskImageCache originalCache = (host != null) ? sOriginalDiskCache : null;
+                InputStream inputStream = (originalCache != null) ? originalCache.openInputStream(mUrl) : null;
+
+                if (inputStream != null) {
+                    mEncodedImage = new EncodedImage(mUrl, sByteArrayPool);
+                    mEncodedImage.read(inputStream, inputStream.available());
+                } else if (mUrl.startsWith("file:///android_asset/")) {
                     inputStream = sAssetManager.open(mUrl.replaceFirst("file:///android_asset/", ""));
+                    mEncodedImage = new EncodedImage(mUrl, sByteArrayPool);
+                    mEncodedImage.read(inputStream, inputStream.available());
                 } else {
-                    inputStream = new URL(mUrl).openStream();
+                    // TODO Cyril: Use a AndroidHttpClient?
+                    final long startTime = SystemClock.uptimeMillis();
+                    mEncodedImage = download(host);
+                    if (host != null) {
+                        sMetrics.onHostRequestEnded(host, SystemClock.uptimeMillis() - startTime);
+                    }
+                    if (originalCache != null) {
+                        originalCache.put(mUrl, mEncodedImage.getData(), 0, mEncodedImage.getLength());
+                    }
+                }
+
+                final byte[] data = mEncodedImage.getData();
+                final int length = mEncodedImage.getLength();
+
+                // Purgeable Bitmaps may keep a reference to the encoded data
+                dataShared = requestedOptions.inPurgeable && requestedOptions.inInputShareable;
+
+                final BitmapFactory.Options options = createDecodeOptions(data, length, requestedOptions, mBitmapProcessor, tempStorage);
+                if (options != null) {
+                    // Savings are only known when the decoder would have
+                    // used ARGB_8888: with a null configuration, the
+                    // platform may already pick RGB_565 by itself
+                    final boolean opaque = requestedOptions.inPreferredConfig == Bitmap.Config.ARGB_8888
+                            && options.inPreferredConfig == Bitmap.Config.RGB_565;
+
+                    pixels = sDecodeBudget.acquire(options);
+                    bitmap = BitmapFactory.decodeByteArray(data, 0, length, options);
+
+                    if (bitmap != null) {
+                        sMetrics.onBitmapDecoded(bitmap, opaque);
+                    }
                 }
 
-                // TODO Cyril: Use a AndroidHttpClient?
-                bitmap = BitmapFactory.decodeStream(inputStream, null, (mOptions == null) ? sDefaultOptions : mOptions);
-                
                 if (mBitmapProcessor != null && bitmap != null) {
                     final Bitmap processedBitmap = mBitmapProcessor.processImage(bitmap);
                     if (processedBitmap != null) {
+                        if (processedBitmap != bitmap) {
+                            // Nobody else knows about the original Bitmap
+                            bitmap.recycle();
+                        }
                         bitmap = processedBitmap;
+                        if (variantKey != null) {
+                            variantCache.put(variantKey, bitmap);
+                        }
                     }
                 }
 
@@ -154,6 +588,15 @@ public class ImageLoader {
                     Log.e(LOG_TAG, "Error while fetching image", e);
                 }
                 throwable = e;
+            } finally {
+                // Processing the Bitmap may allocate intermediate Bitmaps. As
+                // a result, pixels are released once the processing is done
+                sDecodeBudget.release(pixels);
+                sByteArrayPool.put(tempStorage);
+                if (mEncodedImage != null && !dataShared) {
+                    mEncodedImage.release();
+                }
+                mEncodedImage = null;
             }
 
             if (bitmap == null) {
@@ -167,15 +610,171 @@ public class ImageLoader {
                 h.sendMessage(Message.obtain(h, ON_END, bitmap));
             }
         }
+
+        /**
+         * Download the image. When hedging is enabled and the download takes
+         * longer than usual for the given host, a second request is issued
+         * and the first response is used. The second request takes a slot of
+         * the host in the {@link HostDispatcher}.
+         */
+        private EncodedImage download(final String host) throws Exception {
+            final EncodedImage primary = new EncodedImage(mUrl, sByteArrayPool);
+            primary.setTimeouts(sConnectTimeout, sReadTimeout);
+
+            final long hedgingDelay = (host != null && sHedgingPercentile > 0) ? sMetrics.getLatencyPercentile(host, sHedgingPercentile)
+                    : -1;
+            if (hedgingDelay < 0) {
+                return primary.call();
+            }
+
+            final CompletionService<EncodedImage> completionService = new ExecutorCompletionService<EncodedImage>(getHedgingExecutor());
+            completionService.submit(primary);
+
+            Future<EncodedImage> future = completionService.poll(hedgingDelay, TimeUnit.MILLISECONDS);
+            if (future != null) {
+                return getResult(future);
+            }
+
+            if (!sDispatcher.tryAcquireHostSlot(host)) {
+                // Hedging would exceed the number of requests allowed for
+                // this host
+                return getResult(completionService.take());
+            }
+
+            final EncodedImage hedge = new EncodedImage(mUrl, sByteArrayPool);
+            hedge.setTimeouts(sConnectTimeout, sReadTimeout);
+            completionService.submit(new Callable<EncodedImage>() {
+                public EncodedImage call() throws Exception {
+                    try {
+                        return hedge.call();
+                    } finally {
+                        sDispatcher.releaseHostSlot(host);
+                    }
+                }
+            });
+            sMetrics.onRequestHedged();
+
+            EncodedImage result;
+            try {
+                result = getResult(completionService.take());
+            } catch (Exception e) {
+                // The fastest request failed. Let's wait for the other one
+                result = getResult(completionService.take());
+            }
+
+            ((result == primary) ? hedge : primary).abandon();
+            return result;
+        }
+    }
+
+
+    private static BitmapFactory.Options copyOptions(BitmapFactory.Options options) {
+        final BitmapFactory.Options copy = new BitmapFactory.Options();
+        copy.inSampleSize = options.inSampleSize;
+        copy.inPreferredConfig = options.inPreferredConfig;
+        copy.inDither = options.inDither;
+        copy.inDensity = options.inDensity;
+        copy.inTargetDensity = options.inTargetDensity;
+        copy.inScreenDensity = options.inScreenDensity;
+        copy.inScaled = options.inScaled;
+        copy.inPurgeable = options.inPurgeable;
+        copy.inInputShareable = options.inInputShareable;
+        copy.inTempStorage = options.inTempStorage;
+        return copy;
+    }
+
+    /**
+     * Decode the bounds of the given encoded image and return the options
+     * that should be used to decode its pixels. Returns null if the data
+     * doesn't contain a valid image.
+     */
+    private static BitmapFactory.Options createDecodeOptions(byte[] data, int length, BitmapFactory.Options requestedOptions,
+            ImageProcessor processor, byte[] tempStorage) {
+
+        final BitmapFactory.Options options = copyOptions(requestedOptions);
+        if (tempStorage != null) {
+            options.inTempStorage = tempStorage;
+        }
+
+        options.inJustDecodeBounds = true;
+        BitmapFactory.decodeByteArray(data, 0, length, options);
+        options.inJustDecodeBounds = false;
+
+        if (options.outWidth <= 0 || options.outHeight <= 0) {
+            return null;
+        }
+
+        // There is no need to decode more pixels than the processor will
+        // keep
+        final ScaleImageProcessor scaleProcessor = getScaleProcessor(processor);
+        if (scaleProcessor != null) {
+            float density = 1.0f;
+            if (options.inScaled && options.inDensity != 0 && options.inTargetDensity != 0) {
+                density = (float) options.inTargetDensity / options.inDensity;
+            }
+            final int sampleSize = scaleProcessor.computeSampleSize((int) (options.outWidth * density), (int) (options.outHeight * density));
+            options.inSampleSize = Math.max(options.inSampleSize, sampleSize);
+        }
+
+        // Images known to be opaque (as reported by the bounds decoding) are
+        // decoded in RGB_565 which halves their memory footprint. This is done
+        // only when the client didn't ask for a specific configuration.
+        final Bitmap.Config config = requestedOptions.inPreferredConfig;
+        if (sOpaqueDecodingEnabled && (config == null || config == Bitmap.Config.ARGB_8888)
+                && MIME_TYPE_JPEG.equals(options.outMimeType)) {
+            options.inPreferredConfig = Bitmap.Config.RGB_565;
+        }
+
+        return options;
+    }
+
+    private static EncodedImage getResult(Future<EncodedImage> future) throws Exception {
+        try {
+            return future.get();
+        } catch (ExecutionException e) {
+            final Throwable cause = e.getCause();
+            throw (cause instanceof Exception) ? (Exception) cause : e;
+        }
+    }
+
+    private static synchronized ExecutorService getHedgingExecutor() {
+        if (sHedgingExecutor == null) {
+            sHedgingExecutor = Executors.newCachedThreadPool(new ThreadFactory() {
+                private final AtomicInteger mCount = new AtomicInteger(1);
+
+                public Thread newThread(Runnable r) {
+                    final Thread thread = new Thread(r, "GreenDroid hedging thread #" + mCount.getAndIncrement());
+                    thread.setDaemon(true);
+                    thread.setPriority(Thread.NORM_PRIORITY - 1);
+                    return thread;
+                }
+            });
+        }
+        return sHedgingExecutor;
+    }
+
+    /**
+     * Processed images have already been scaled to their final size. They
+     * mustn't be scaled again according to the screen density.
+     */
+    private static BitmapFactory.Options createVariantOptions(BitmapFactory.Options options) {
+        final BitmapFactory.Options copy = new BitmapFactory.Options();
+        copy.inPreferredConfig = options.inPreferredConfig;
+        copy.inDither = options.inDither;
+        copy.inScaled = false;
+        copy.inPurgeable = options.inPurgeable;
+        copy.inInputShareable = options.inInputShareable;
+        copy.inTempStorage = options.inTempStorage;
+        return copy;
     }
 
     private class ImageHandler extends Handler {
 
-        private String mUrl;
+        private String mCacheKey;
         private ImageLoaderCallback mCallback;
 
-        private ImageHandler(String url, ImageLoaderCallback callback) {
-            mUrl = url;
+        private ImageHandler(String cacheKey, ImageLoaderCallback callback) {
+            mCacheKey = cacheKey;
             mCallback = callback;
         }
 
@@ -199,7 +798,7 @@ public class ImageLoader {
                 case ON_END:
 
                     final Bitmap bitmap = (Bitmap) msg.obj;
-                    sImageCache.put(mUrl, bitmap);
+                    sImageCache.put(mCacheKey, bitmap);
 
                     if (mCallback != null) {
                         mCallback.onImageLoadingEnded(ImageLoader.this, bitmap);
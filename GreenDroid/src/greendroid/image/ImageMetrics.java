@@ -0,0 +1,322 @@
+/*
+ * Copyright (C) 2011 Cyril Mottier (http://www.cyrilmottier.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package greendroid.image;
+
+import java.util.Arrays;
+import java.util.HashMap;
+
+import android.graphics.Bitmap;
+
+/**
+ * <p>
+ * Collects statistics about the images loaded by the {@link ImageLoader}. The
+ * application-wide instance may be retrieved using
+ * {@link ImageLoader#getMetrics()}.
+ * </p>
+ * <p>
+ * Metrics are cumulative. In order to measure a single screen, simply call
+ * {@link #reset()} when the screen is displayed and read the values once it
+ * is left.
+ * </p>
+ * 
+ * @author Cyril Mottier
+ */
+public class ImageMetrics {
+
+    private static final int RECENT_LATENCY_COUNT = 32;
+    private static final int MIN_LATENCY_COUNT = 8;
+
+    private static class HostStats {
+        int requestCount;
+        long totalLatency;
+        long maxLatency;
+    }
+
+    private static class LatencyWindow {
+        int count;
+        final long[] latencies = new long[RECENT_LATENCY_COUNT];
+    }
+
+    private int mDecodedCount;
+    private int mOpaqueDecodedCount;
+    private int mDownsampledCount;
+    private int mDiskHitCount;
+    private int mMemoryLookupCount;
+    private int mMemoryHitCount;
+    private int mHedgedCount;
+    private long mDecodedBytes;
+    private long mSavedBytes;
+    private final HashMap<String, HostStats> mHostStats = new HashMap<String, HostStats>();
+
+    /**
+     * The recent download times of each host. They drive hedged requests and
+     * are therefore not cleared by {@link #reset()}.
+     */
+    private final HashMap<String, LatencyWindow> mLatencyWindows = new HashMap<String, LatencyWindow>();
+
+    ImageMetrics() {
+    }
+
+    /**
+     * Return the number of images decoded since the last reset.
+     * 
+     * @return The number of decoded images
+     */
+    public synchronized int getDecodedCount() {
+        return mDecodedCount;
+    }
+
+    /**
+     * Return the number of images that have been decoded using the
+     * {@link Bitmap.Config#RGB_565} configuration, instead of the requested
+     * {@link Bitmap.Config#ARGB_8888}, because their source was known to be
+     * opaque.
+     * 
+     * @return The number of images decoded as opaque images
+     */
+    public synchronized int getOpaqueDecodedCount() {
+        return mOpaqueDecodedCount;
+    }
+
+    /**
+     * Return the number of images that have been down-sampled because they
+     * were too large to fit in the {@link DecodeBudget}.
+     * 
+     * @return The number of down-sampled images
+     */
+    public synchronized int getDownsampledCount() {
+        return mDownsampledCount;
+    }
+
+    /**
+     * Return the number of times an image has been looked for in the
+     * {@link ImageCache} before being requested.
+     * 
+     * @return The number of memory cache lookups
+     * @see #onMemoryCacheLookup(boolean)
+     */
+    public synchronized int getMemoryLookupCount() {
+        return mMemoryLookupCount;
+    }
+
+    /**
+     * Return the number of memory cache lookups that found the image: no
+     * request has been necessary.
+     * 
+     * @return The number of memory cache hits
+     * @see #getMemoryLookupCount()
+     */
+    public synchronized int getMemoryHitCount() {
+        return mMemoryHitCount;
+    }
+
+    /**
+     * Record a lookup in the {@link ImageCache} made before requesting an
+     * image. {@link greendroid.widget.AsyncImageView} calls this method each
+     * time it looks for its image. Custom views doing the same may call it
+     * too.
+     * 
+     * @param hit true if the image was in the cache
+     */
+    public synchronized void onMemoryCacheLookup(boolean hit) {
+        mMemoryLookupCount++;
+        if (hit) {
+            mMemoryHitCount++;
+        }
+    }
+
+    /**
+     * Return the number of processed images that have been read from the
+     * variant {@link DiskImageCache} rather than being downloaded, decoded and
+     * processed.
+     * 
+     * @return The number of disk cache hits
+     */
+    public synchronized int getDiskHitCount() {
+        return mDiskHitCount;
+    }
+
+    /**
+     * Return the amount of memory, in bytes, used by all of the images decoded
+     * since the last reset.
+     * 
+     * @return The number of bytes used by the decoded images
+     */
+    public synchronized long getDecodedBytes() {
+        return mDecodedBytes;
+    }
+
+    /**
+     * Return an estimation of the memory, in bytes, saved by decoding opaque
+     * images with the {@link Bitmap.Config#RGB_565} configuration rather than
+     * the requested {@link Bitmap.Config#ARGB_8888}. Images whose request
+     * left the configuration to the platform are not taken into account.
+     * 
+     * @return The number of bytes saved
+     */
+    public synchronized long getSavedBytes() {
+        return mSavedBytes;
+    }
+
+    /**
+     * Return the hosts images have been downloaded from since the last reset.
+     * 
+     * @return The host names
+     */
+    public synchronized String[] getHosts() {
+        return mHostStats.keySet().toArray(new String[mHostStats.size()]);
+    }
+
+    /**
+     * Return the number of images downloaded from the given host.
+     * 
+     * @param host The host name
+     * @return The number of images downloaded from this host
+     */
+    public synchronized int getRequestCount(String host) {
+        final HostStats stats = mHostStats.get(host);
+        return (stats == null) ? 0 : stats.requestCount;
+    }
+
+    /**
+     * Return the average time, in milliseconds, spent downloading an image from
+     * the given host.
+     * 
+     * @param host The host name
+     * @return The average download time or 0 if nothing has been downloaded
+     *         from this host
+     */
+    public synchronized long getAverageLatency(String host) {
+        final HostStats stats = mHostStats.get(host);
+        return (stats == null || stats.requestCount == 0) ? 0 : stats.totalLatency / stats.requestCount;
+    }
+
+    /**
+     * Return the longest time, in milliseconds, spent downloading an image from
+     * the given host.
+     * 
+     * @param host The host name
+     * @return The maximum download time
+     */
+    public synchronized long getMaxLatency(String host) {
+        final HostStats stats = mHostStats.get(host);
+        return (stats == null) ? 0 : stats.maxLatency;
+    }
+
+    /**
+     * Return the given percentile of the recent download times of the given
+     * host. Unlike the other values, recent download times are kept when the
+     * metrics are reset: the {@link ImageLoader} uses them to decide when to
+     * hedge requests.
+     * 
+     * @param host The host name
+     * @param percentile The percentile between 0 and 1
+     * @return The download time, in milliseconds, or -1 if not enough images
+     *         have been downloaded from this host
+     */
+    public synchronized long getLatencyPercentile(String host, float percentile) {
+        final LatencyWindow window = mLatencyWindows.get(host);
+        if (window == null || window.count < MIN_LATENCY_COUNT) {
+            return -1;
+        }
+
+        final int count = Math.min(window.count, RECENT_LATENCY_COUNT);
+        final long[] latencies = new long[count];
+        System.arraycopy(window.latencies, 0, latencies, 0, count);
+        Arrays.sort(latencies);
+        return latencies[Math.min(count - 1, (int) (percentile * count))];
+    }
+
+    /**
+     * Return the number of downloads for which a second request has been
+     * issued because the first one was too slow.
+     * 
+     * @return The number of hedged requests
+     */
+    public synchronized int getHedgedCount() {
+        return mHedgedCount;
+    }
+
+    /**
+     * Reset all counters to zero. The recent download times used for hedging
+     * are kept (see {@link #getLatencyPercentile(String, float)}).
+     */
+    public synchronized void reset() {
+        mDecodedCount = 0;
+        mOpaqueDecodedCount = 0;
+        mDownsampledCount = 0;
+        mDiskHitCount = 0;
+        mMemoryLookupCount = 0;
+        mMemoryHitCount = 0;
+        mHedgedCount = 0;
+        mDecodedBytes = 0;
+        mSavedBytes = 0;
+        mHostStats.clear();
+    }
+
+    synchronized void onBitmapDecoded(Bitmap bitmap, boolean opaque) {
+        final long bytes = (long) bitmap.getRowBytes() * bitmap.getHeight();
+        mDecodedCount++;
+        mDecodedBytes += bytes;
+        if (opaque && bitmap.getConfig() == Bitmap.Config.RGB_565) {
+            mOpaqueDecodedCount++;
+            // An ARGB_8888 Bitmap would have used twice as much memory
+            mSavedBytes += bytes;
+        }
+    }
+
+    synchronized void onBitmapDownsampled() {
+        mDownsampledCount++;
+    }
+
+    synchronized void onHostRequestEnded(String host, long latency) {
+        HostStats stats = mHostStats.get(host);
+        if (stats == null) {
+            stats = new HostStats();
+            mHostStats.put(host, stats);
+        }
+        stats.requestCount++;
+        stats.totalLatency += latency;
+        stats.maxLatency = Math.max(stats.maxLatency, latency);
+
+        LatencyWindow window = mLatencyWindows.get(host);
+        if (window == null) {
+            window = new LatencyWindow();
+            mLatencyWindows.put(host, window);
+        }
+        window.latencies[window.count % RECENT_LATENCY_COUNT] = latency;
+        window.count++;
+    }
+
+    synchronized void onRequestHedged() {
+        mHedgedCount++;
+    }
+
+    synchronized void onDiskCacheHit() {
+        mDiskHitCount++;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return "ImageMetrics{decoded=" + mDecodedCount + ", opaque=" + mOpaqueDecodedCount + ", downsampled=" + mDownsampledCount
+                + ", memoryHits=" + mMemoryHitCount + "/" + mMemoryLookupCount
+                + ", diskHits=" + mDiskHitCount
+                + ", hedged=" + mHedgedCount
+                + ", decodedBytes=" + mDecodedBytes
+                + ", savedBytes=" + mSavedBytes
+                + ", hosts=" + mHostStats.keySet() + "}";
+    }
+}
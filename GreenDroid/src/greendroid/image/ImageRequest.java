@@ -17,11 +17,14 @@ package greendroid.image;
 
 import greendroid.image.ImageLoader.ImageLoaderCallback;
 
+import java.util.HashMap;
 import java.util.concurrent.Future;
 
 import android.content.Context;
 import android.graphics.Bitmap;
 import android.graphics.BitmapFactory;
+import android.os.Handler;
+import android.os.Looper;
 
 /**
  * An {@link ImageRequest} may be used to request an image from the network. The
@@ -31,6 +34,14 @@ import android.graphics.BitmapFactory;
  * <li>Call {@link #load(Context)} to start loading the image</li>
  * <li>Listen to loading state changes using a {@link ImageRequestCallback}</li>
  * </ul>
+ * <p>
+ * An {@link ImageRequest} may outlive the object that started it. This is
+ * typically the case when a configuration change occurs: the View that started
+ * the request is destroyed and a new View is created. Calling {@link #detach()}
+ * on the old request and {@link #attach(String, ImageRequestCallback)} on the
+ * new View lets the new View continue the loading process rather than starting
+ * it over.
+ * </p>
  * 
  * @author Cyril Mottier
  */
@@ -57,7 +68,10 @@ public class ImageRequest {
         void onImageRequestFailed(ImageRequest request, Throwable throwable);
 
         /**
-         * Callback to be invoked when the request processing ended.
+         * Callback to be invoked when the request processing ended. The given
+         * Bitmap is owned by the {@link ImageCache} and may be recycled once
+         * this method returns. Callbacks that need to keep it must obtain a
+         * {@link BitmapRef} using {@link ImageRequest#acquireBitmap()}.
          * 
          * @param request ImageRequest that ended
          * @param image The resulting Bitmap
@@ -73,8 +87,23 @@ public class ImageRequest {
         void onImageRequestCancelled(ImageRequest request);
     }
 
+    /**
+     * The delay after which a detached request that hasn't been re-attached is
+     * forgotten.
+     */
+    private static final long DETACHED_TIMEOUT = 10 * 1000;
+
+    private static final HashMap<String, ImageRequest> sDetachedRequests = new HashMap<String, ImageRequest>();
+    private static int sDetachedKeyCount;
+    private static Handler sHandler;
+
     private static ImageLoader sImageLoader;
 
+    private String mDetachedKey;
+    private ImageCache mImageCache;
+    private String mCacheKey;
+    private BitmapRef mBitmapRef;
+
     private Future<?> mFuture;
     private String mUrl;
     private ImageRequestCallback mCallback;
@@ -109,12 +138,133 @@ public class ImageRequest {
             if (sImageLoader == null) {
                 sImageLoader = new ImageLoader(context);
             }
+            mImageCache = ImageCache.from(context);
+            mCacheKey = ImageLoader.getCacheKey(mUrl, mBitmapProcessor);
             mFuture = sImageLoader.loadImage(mUrl, new InnerCallback(), mBitmapProcessor, mOptions);
         }
     }
 
+    /**
+     * Return true if this request is currently loading its image.
+     * 
+     * @return true if the request is loading, false otherwise
+     */
+    public boolean isLoading() {
+        return mFuture != null && !mFuture.isCancelled();
+    }
+
+    /**
+     * Return the image loaded by this request. The image is retained by the
+     * request while it is delivered to the {@link ImageRequestCallback} and
+     * while the request is detached. It must not be kept: use
+     * {@link #acquireBitmap()} instead.
+     * 
+     * @return The image loaded by this request or null if the request hasn't
+     *         successfully ended yet or doesn't retain its image anymore.
+     */
+    public Bitmap getBitmap() {
+        return (mBitmapRef != null) ? mBitmapRef.getBitmap() : null;
+    }
+
+    /**
+     * Return a handle on the image loaded by this request. The image is
+     * guaranteed to stay valid until the returned handle is released.
+     * 
+     * @return A {@link BitmapRef} that must be released by the caller or null
+     *         if the request hasn't successfully ended or if its image has been
+     *         evicted from the {@link ImageCache}.
+     */
+    public BitmapRef acquireBitmap() {
+        if (mBitmapRef != null) {
+            // Hands the handle retained by this request over to the caller
+            final BitmapRef ref = mBitmapRef;
+            mBitmapRef = null;
+            return ref;
+        }
+        return (mImageCache != null && mCacheKey != null) ? mImageCache.acquire(mCacheKey) : null;
+    }
+
+    private void releaseBitmap() {
+        if (mBitmapRef != null) {
+            final BitmapRef ref = mBitmapRef;
+            mBitmapRef = null;
+            ref.release();
+        }
+    }
+
+    /**
+     * <p>
+     * Make this request available for a later re-attachment using the returned
+     * key. The current {@link ImageRequestCallback} is removed: loading events
+     * are no longer delivered until the request is re-attached via
+     * {@link #attach(String, ImageRequestCallback)}. The image loaded in the
+     * meantime is retained until it is acquired with {@link #acquireBitmap()}
+     * or until the request is cancelled.
+     * </p>
+     * <p>
+     * Detached requests that haven't been re-attached after a few seconds are
+     * cancelled and forgotten. This method must be called from the UI thread.
+     * </p>
+     * 
+     * @return The key that may be used to re-attach the request.
+     */
+    public String detach() {
+        if (sHandler == null) {
+            sHandler = new Handler(Looper.getMainLooper());
+        }
+
+        mCallback = null;
+        if (mDetachedKey == null) {
+            mDetachedKey = mUrl + "#" + (sDetachedKeyCount++);
+            sDetachedRequests.put(mDetachedKey, this);
+        }
+        sHandler.removeCallbacks(mPurgeRunnable);
+        sHandler.postDelayed(mPurgeRunnable, DETACHED_TIMEOUT);
+        return mDetachedKey;
+    }
+
+    /**
+     * Re-attach a previously detached request to the given callback. The
+     * returned request may still be loading, may have ended (see
+     * {@link #getBitmap()}) or may have failed.
+     * 
+     * @param key The key returned by {@link #detach()}
+     * @param callback The callback that will be notified of the request events
+     * @return The detached request or null if no request is associated to the
+     *         given key
+     */
+    public static ImageRequest attach(String key, ImageRequestCallback callback) {
+        final ImageRequest request = sDetachedRequests.remove(key);
+        if (request != null) {
+            sHandler.removeCallbacks(request.mPurgeRunnable);
+            request.mDetachedKey = null;
+            request.mCallback = callback;
+        }
+        return request;
+    }
+
+    /**
+     * Forget a request that hasn't been re-attached in time. Its result is
+     * dropped and the loading process is stopped.
+     */
+    private final Runnable mPurgeRunnable = new Runnable() {
+        public void run() {
+            if (mDetachedKey != null) {
+                sDetachedRequests.remove(mDetachedKey);
+                mDetachedKey = null;
+                cancel();
+            }
+        }
+    };
+
     public void cancel() {
-        if (!isCancelled()) {
+        if (mDetachedKey != null) {
+            sDetachedRequests.remove(mDetachedKey);
+            sHandler.removeCallbacks(mPurgeRunnable);
+            mDetachedKey = null;
+        }
+        releaseBitmap();
+        if (mFuture != null && !isCancelled()) {
             // Here we do not want to force the task to be interrupted. Indeed,
             // it may be useful to keep the result in a cache for a further use
             mFuture.cancel(false);
@@ -125,7 +275,7 @@ public class ImageRequest {
     }
 
     public final boolean isCancelled() {
-        return mFuture.isCancelled();
+        return mFuture != null && mFuture.isCancelled();
     }
 
     private class InnerCallback implements ImageLoaderCallback {
@@ -137,8 +287,23 @@ public class ImageRequest {
         }
 
         public void onImageLoadingEnded(ImageLoader loader, Bitmap bitmap) {
-            if (mCallback != null && !isCancelled()) {
-                mCallback.onImageRequestEnded(ImageRequest.this, bitmap);
+            if (!isCancelled()) {
+                // The image has just been put in the cache by the loader.
+                // Retaining it prevents the cache from recycling it while it is
+                // delivered or while this request is detached.
+                BitmapRef ref = mImageCache.acquire(mCacheKey);
+                if (ref == null) {
+                    mImageCache.put(mCacheKey, bitmap);
+                    ref = mImageCache.acquire(mCacheKey);
+                }
+                mBitmapRef = ref;
+
+                if (mCallback != null) {
+                    mCallback.onImageRequestEnded(ImageRequest.this, ref.getBitmap());
+                }
+                if (mDetachedKey == null) {
+                    releaseBitmap();
+                }
             }
             mFuture = null;
         }
@@ -0,0 +1,38 @@
+/*
+ * Copyright (C) 2011 Cyril Mottier (http://www.cyrilmottier.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package greendroid.image;
+
+/**
+ * An {@link ImageProcessor} whose output can be identified by a key. Two
+ * {@link KeyedImageProcessor}s returning the same key must produce the same
+ * Bitmap from a given input. Keys are used to cache processed images in memory
+ * and on disk.
+ * 
+ * @author Cyril Mottier
+ * @see ImageLoader#setVariantDiskCache(DiskImageCache)
+ */
+public interface KeyedImageProcessor extends ImageProcessor {
+
+    /**
+     * Return a key describing the processing done by this processor. The key
+     * must remain the same across application launches.
+     * 
+     * @return A key identifying this processor or null if the processed images
+     *         can't be identified.
+     */
+    String getCacheKey();
+
+}
@@ -15,22 +15,30 @@
  */
 package greendroid.image;
 
+import java.util.Arrays;
+
 import android.graphics.Bitmap;
+import android.graphics.BitmapShader;
 import android.graphics.Canvas;
-import android.graphics.Color;
 import android.graphics.Paint;
 import android.graphics.Path;
-import android.graphics.PorterDuff;
-import android.graphics.PorterDuffXfermode;
 import android.graphics.RectF;
+import android.graphics.Shader;
 
 /**
+ * <p>
  * An {@link ImageProcessor} that masks the given Bitmap according to a shape or
  * another Bitmap.
+ * </p>
+ * <p>
+ * The mask geometry is computed once per output size and the source Bitmap is
+ * drawn in a single pass through a BitmapShader. The resulting Bitmaps may be
+ * taken from a {@link BitmapPool} (see {@link #setBitmapPool(BitmapPool)}).
+ * </p>
  * 
  * @author Cyril Mottier
  */
-public class MaskImageProcessor implements ImageProcessor {
+public class MaskImageProcessor implements KeyedImageProcessor, NewBitmapImageProcessor {
 
     private static final int CUSTOM = 1;
     private static final int RECTANGLE = 2;
@@ -40,11 +48,13 @@ public class MaskImageProcessor implements ImageProcessor {
     private float[] mRadiiArray;
 
     private Bitmap mMaskBitmap;
+    private Bitmap mAlphaMask;
+
+    private Path mPath;
+    private int mPathWidth;
+    private int mPathHeight;
 
-    private final Paint mMaskPaint = new Paint(Paint.ANTI_ALIAS_FLAG);
-    private final Paint mFillPaint = new Paint(Paint.ANTI_ALIAS_FLAG);
-    private final Path mPath = new Path();
-    private final RectF mRect = new RectF();
+    private BitmapPool mBitmapPool;
 
     /**
      * Create a new MaskImageProcessor using a simple rectangle as mask.
@@ -54,7 +64,6 @@ public class MaskImageProcessor implements ImageProcessor {
      * @param radius The radius for the corners of the rectangle.
      */
     public MaskImageProcessor(float radius) {
-        init();
         mShape = RECTANGLE;
         if (radius < 0) {
             radius = 0;
@@ -78,7 +87,6 @@ public class MaskImageProcessor implements ImageProcessor {
      * @see Path#addRoundRect(RectF, float[], android.graphics.Path.Direction)
      */
     public MaskImageProcessor(float[] radii) {
-        init();
         mShape = RECTANGLE;
         mRadiiArray = radii;
         if (radii == null) {
@@ -94,14 +102,30 @@ public class MaskImageProcessor implements ImageProcessor {
      * @param maskBitmap The Bitmap used for masking
      */
     public MaskImageProcessor(Bitmap maskBitmap) {
-        init();
         mShape = CUSTOM;
         mMaskBitmap = maskBitmap;
     }
 
-    private void init() {
-        mFillPaint.setColor(Color.RED);
-        mMaskPaint.setXfermode(new PorterDuffXfermode(PorterDuff.Mode.SRC_IN));
+    /**
+     * Set the {@link BitmapPool} in which resulting Bitmaps are taken. When no
+     * pool is set, a new Bitmap is allocated for each processed image.
+     * 
+     * @param bitmapPool The pool of Bitmaps to use. May be null.
+     */
+    public void setBitmapPool(BitmapPool bitmapPool) {
+        mBitmapPool = bitmapPool;
+    }
+
+    public String getCacheKey() {
+        switch (mShape) {
+            case CUSTOM:
+                // There is no way to identify the mask Bitmap
+                return null;
+
+            case RECTANGLE:
+            default:
+                return "mask(" + ((mRadiiArray != null) ? Arrays.toString(mRadiiArray) : String.valueOf(mRadius)) + ")";
+        }
     }
 
     public Bitmap processImage(Bitmap bitmap) {
@@ -113,35 +137,60 @@ public class MaskImageProcessor implements ImageProcessor {
         final int width = bitmap.getWidth();
         final int height = bitmap.getHeight();
 
-        mRect.set(0, 0, width, height);
+        // The mask introduces transparency. As a result, the output Bitmap
+        // always requires an alpha channel even if the source is opaque.
+        final BitmapPool pool = mBitmapPool;
+        final Bitmap result = (pool != null) ? pool.get(width, height, Bitmap.Config.ARGB_8888) : Bitmap.createBitmap(width, height,
+                Bitmap.Config.ARGB_8888);
+        final Canvas canvas = new Canvas(result);
 
-        Bitmap result = Bitmap.createBitmap(width, height, Bitmap.Config.ARGB_8888);
-        Canvas canvas = new Canvas(result);
+        // Filling the mask with a BitmapShader draws the source and masks it
+        // in a single pass
+        final Paint paint = new Paint(Paint.ANTI_ALIAS_FLAG);
+        paint.setShader(new BitmapShader(bitmap, Shader.TileMode.CLAMP, Shader.TileMode.CLAMP));
 
         switch (mShape) {
             case CUSTOM:
-                canvas.drawBitmap(mMaskBitmap, 0, 0, mFillPaint);
+                // Drawing an alpha-only Bitmap uses the Paint's shader
+                canvas.drawBitmap(getAlphaMask(), 0, 0, paint);
                 break;
 
             case RECTANGLE:
             default:
                 if (mRadiiArray != null) {
-                    mPath.reset();
-                    mPath.addRoundRect(mRect, mRadiiArray, Path.Direction.CW);
-                    canvas.drawPath(mPath, mFillPaint);
+                    canvas.drawPath(getPath(width, height), paint);
                 } else {
                     float rad = mRadius;
                     float r = Math.min(width, height) * 0.5f;
                     if (rad > r) {
                         rad = r;
                     }
-                    canvas.drawRoundRect(mRect, rad, rad, mFillPaint);
+                    canvas.drawRoundRect(new RectF(0, 0, width, height), rad, rad, paint);
                 }
                 break;
         }
 
-        canvas.drawBitmap(bitmap, 0, 0, mMaskPaint);
-
         return result;
     }
+
+    private synchronized Bitmap getAlphaMask() {
+        if (mAlphaMask == null) {
+            mAlphaMask = mMaskBitmap.extractAlpha();
+        }
+        return mAlphaMask;
+    }
+
+    private synchronized Path getPath(int width, int height) {
+        // Images processed by a given processor usually have the same size.
+        // The Path is therefore only computed when the size changes. A new
+        // Path is created so that it can be used safely by other threads.
+        if (mPath == null || mPathWidth != width || mPathHeight != height) {
+            final Path path = new Path();
+            path.addRoundRect(new RectF(0, 0, width, height), mRadiiArray, Path.Direction.CW);
+            mPath = path;
+            mPathWidth = width;
+            mPathHeight = height;
+        }
+        return mPath;
+    }
 }
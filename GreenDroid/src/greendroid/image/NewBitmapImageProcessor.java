@@ -0,0 +1,26 @@
+/*
+ * Copyright (C) 2011 Cyril Mottier (http://www.cyrilmottier.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package greendroid.image;
+
+/**
+ * Implemented by the {@link ImageProcessor}s of the library that always
+ * return a newly created Bitmap nobody else references. Such Bitmaps may be
+ * recycled by a {@link ChainImageProcessor} once they have been processed.
+ * 
+ * @author Cyril Mottier
+ */
+interface NewBitmapImageProcessor extends ImageProcessor {
+}
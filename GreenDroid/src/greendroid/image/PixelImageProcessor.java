@@ -0,0 +1,91 @@
+/*
+ * Copyright (C) 2011 Cyril Mottier (http://www.cyrilmottier.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package greendroid.image;
+
+import android.graphics.Bitmap;
+
+/**
+ * <p>
+ * An {@link ImageProcessor} applying a {@link PixelKernel} to the pixels of
+ * the given Bitmap. Kernels are executed concurrently on tiles of the image by
+ * the {@link PixelKernelExecutor}.
+ * </p>
+ * <p>
+ * A {@link PixelImageProcessor} is a regular {@link ImageProcessor} and may
+ * therefore be used in a {@link ChainImageProcessor}. For instance, the
+ * following code scales the image and blurs it:
+ * </p>
+ * 
+ * <pre>
+ * new ChainImageProcessor(new ScaleImageProcessor(width, height, ScaleType.CENTER_CROP),
+ *         new PixelImageProcessor(new BlurPixelKernel(4)));
+ * </pre>
+ * 
+ * @author Cyril Mottier
+ * @see BlurPixelKernel
+ * @see DesaturatePixelKernel
+ * @see SharpenPixelKernel
+ * @see TintPixelKernel
+ */
+public class PixelImageProcessor implements KeyedImageProcessor, NewBitmapImageProcessor {
+
+    private PixelKernel mKernel;
+    private String mCacheKey;
+
+    /**
+     * Create a new PixelImageProcessor.
+     * 
+     * @param kernel The {@link PixelKernel} applied to images
+     */
+    public PixelImageProcessor(PixelKernel kernel) {
+        this(kernel, null);
+    }
+
+    /**
+     * Create a new PixelImageProcessor identified by the given key.
+     * 
+     * @param kernel The {@link PixelKernel} applied to images
+     * @param cacheKey A key identifying the kernel and its parameters
+     * @see KeyedImageProcessor
+     */
+    public PixelImageProcessor(PixelKernel kernel, String cacheKey) {
+        mKernel = kernel;
+        mCacheKey = cacheKey;
+    }
+
+    public String getCacheKey() {
+        return mCacheKey;
+    }
+
+    public Bitmap processImage(Bitmap bitmap) {
+
+        if (bitmap == null) {
+            return null;
+        }
+
+        final int width = bitmap.getWidth();
+        final int height = bitmap.getHeight();
+
+        final int[] pixels = new int[width * height];
+        bitmap.getPixels(pixels, 0, width, 0, 0, width, height);
+
+        final int[] result = PixelKernelExecutor.execute(mKernel, pixels, width, height);
+
+        // Kernels preserve the alpha channel so opaque images remain opaque
+        final Bitmap.Config config = (bitmap.getConfig() == Bitmap.Config.RGB_565) ? Bitmap.Config.RGB_565 : Bitmap.Config.ARGB_8888;
+        return Bitmap.createBitmap(result, width, height, config);
+    }
+}
@@ -0,0 +1,75 @@
+/*
+ * Copyright (C) 2011 Cyril Mottier (http://www.cyrilmottier.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package greendroid.image;
+
+/**
+ * <p>
+ * A {@link PixelKernel} is an effect working on an array of ARGB pixels (as
+ * returned by <code>Bitmap.getPixels()</code>). Kernels are executed by a
+ * {@link PixelKernelExecutor} which splits the image in horizontal tiles
+ * processed concurrently. As a result, a kernel must only write the rows it
+ * has been given and must not keep any state between two calls.
+ * </p>
+ * <p>
+ * Kernels may require several passes (a separable blur is usually made of a
+ * horizontal pass followed by a vertical one). The output of a pass is the
+ * input of the next one.
+ * </p>
+ * <p>
+ * <em><strong>Note:</strong> Kernels only depend on the Java platform. They
+ * can be tested and benchmarked on a regular JVM.</em>
+ * </p>
+ * 
+ * @author Cyril Mottier
+ * @see PixelImageProcessor
+ */
+public interface PixelKernel {
+
+    /**
+     * Return the number of passes required by this kernel.
+     * 
+     * @return The number of passes (at least 1)
+     */
+    int getPassCount();
+
+    /**
+     * Return the size of the scratch buffer required by this kernel when
+     * processing an image of the given dimensions.
+     * 
+     * @param width The width of the image
+     * @param height The height of the image
+     * @return The required size of the scratch buffer (may be 0)
+     */
+    int getScratchSize(int width, int height);
+
+    /**
+     * Process the rows <em>top</em> (inclusive) to <em>bottom</em> (exclusive)
+     * of the given pass.
+     * 
+     * @param pass The index of the current pass
+     * @param src The input pixels (entire image)
+     * @param dst The output pixels (entire image). Only the given rows must be
+     *            written.
+     * @param width The width of the image
+     * @param height The height of the image
+     * @param top The first row to process
+     * @param bottom The row after the last row to process
+     * @param scratch A buffer that may be used freely by the kernel. This
+     *            buffer is reused between calls and its content is undefined.
+     */
+    void processRows(int pass, int[] src, int[] dst, int width, int height, int top, int bottom, int[] scratch);
+
+}
@@ -0,0 +1,148 @@
+/*
+ * Copyright (C) 2011 Cyril Mottier (http://www.cyrilmottier.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package greendroid.image;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * <p>
+ * Executes {@link PixelKernel}s on arrays of pixels. The image is split into
+ * horizontal tiles that are processed concurrently on a pool of threads sized
+ * according to the number of available processors. Each worker thread owns a
+ * scratch buffer that is reused from one tile to another.
+ * </p>
+ * <p>
+ * Small images are processed directly on the calling thread as the cost of
+ * dispatching tiles would outweigh the benefits of parallelism.
+ * </p>
+ * 
+ * @author Cyril Mottier
+ */
+public final class PixelKernelExecutor {
+
+    private static final int MIN_PARALLEL_PIXELS = 128 * 128;
+    private static final int MIN_TILE_ROWS = 16;
+    private static final int TILES_PER_THREAD = 4;
+
+    private static final int THREAD_COUNT = Runtime.getRuntime().availableProcessors();
+
+    private static final ThreadFactory sThreadFactory = new ThreadFactory() {
+        private final AtomicInteger mCount = new AtomicInteger(1);
+
+        public Thread newThread(Runnable r) {
+            final Thread thread = new Thread(r, "GreenDroid pixel thread #" + mCount.getAndIncrement());
+            thread.setDaemon(true);
+            // Equivalent to Process.THREAD_PRIORITY_BACKGROUND on Android
+            thread.setPriority(Thread.NORM_PRIORITY - 1);
+            return thread;
+        }
+    };
+
+    private static final ThreadLocal<int[]> sScratch = new ThreadLocal<int[]>();
+
+    private static ExecutorService sExecutor;
+
+    private PixelKernelExecutor() {
+    }
+
+    /**
+     * Apply all passes of the given kernel to the given pixels.
+     * 
+     * @param kernel The kernel to execute
+     * @param pixels The pixels of the image. This array may be used as an
+     *            output buffer and its content is undefined once this method
+     *            returns.
+     * @param width The width of the image
+     * @param height The height of the image
+     * @return An array containing the processed pixels. The returned array may
+     *         be the given <em>pixels</em> array.
+     */
+    public static int[] execute(PixelKernel kernel, int[] pixels, int width, int height) {
+        int[] src = pixels;
+        int[] dst = new int[width * height];
+
+        final int passCount = kernel.getPassCount();
+        final boolean parallel = THREAD_COUNT > 1 && width * height >= MIN_PARALLEL_PIXELS;
+
+        for (int pass = 0; pass < passCount; pass++) {
+            if (parallel) {
+                executeParallel(kernel, pass, src, dst, width, height);
+            } else {
+                kernel.processRows(pass, src, dst, width, height, 0, height, obtainScratch(kernel.getScratchSize(width, height)));
+            }
+
+            final int[] tmp = src;
+            src = dst;
+            dst = tmp;
+        }
+
+        return src;
+    }
+
+    private static void executeParallel(final PixelKernel kernel, final int pass, final int[] src, final int[] dst, final int width,
+            final int height) {
+
+        final int tileRows = Math.max(MIN_TILE_ROWS, (height + THREAD_COUNT * TILES_PER_THREAD - 1) / (THREAD_COUNT * TILES_PER_THREAD));
+        final int scratchSize = kernel.getScratchSize(width, height);
+        final List<Callable<Void>> tiles = new ArrayList<Callable<Void>>();
+
+        for (int top = 0; top < height; top += tileRows) {
+            final int tileTop = top;
+            final int tileBottom = Math.min(height, top + tileRows);
+            tiles.add(new Callable<Void>() {
+                public Void call() {
+                    kernel.processRows(pass, src, dst, width, height, tileTop, tileBottom, obtainScratch(scratchSize));
+                    return null;
+                }
+            });
+        }
+
+        try {
+            for (Future<Void> future : getExecutor().invokeAll(tiles)) {
+                future.get();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while processing pixels", e);
+        } catch (ExecutionException e) {
+            throw new RuntimeException("Error while processing pixels", e.getCause());
+        }
+    }
+
+    private static synchronized ExecutorService getExecutor() {
+        if (sExecutor == null) {
+            sExecutor = Executors.newFixedThreadPool(THREAD_COUNT, sThreadFactory);
+        }
+        return sExecutor;
+    }
+
+    private static int[] obtainScratch(int size) {
+        int[] scratch = sScratch.get();
+        if (scratch == null || scratch.length < size) {
+            scratch = new int[size];
+            sScratch.set(scratch);
+        }
+        return scratch;
+    }
+}
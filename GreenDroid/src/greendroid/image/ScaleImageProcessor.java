@@ -29,7 +29,7 @@ import android.widget.ImageView.ScaleType;
  * @author Cyril Mottier
  * @author kennydude
  */
-public class ScaleImageProcessor implements ImageProcessor {
+public class ScaleImageProcessor implements KeyedImageProcessor, NewBitmapImageProcessor {
 
     private int mWidth;
     private int mHeight;
@@ -52,6 +52,52 @@ public class ScaleImageProcessor implements ImageProcessor {
         mScaleType = scaleType;
     }
 
+    public String getCacheKey() {
+        return "scale(" + mWidth + "x" + mHeight + "," + mScaleType + ")";
+    }
+
+    /**
+     * Return the largest power of 2 that may be used to sub-sample an image
+     * with the given dimensions without degrading the result of this
+     * processor.
+     * 
+     * @param width The width of the image
+     * @param height The height of the image
+     * @return The sample size
+     */
+    int computeSampleSize(int width, int height) {
+        if (width <= 0 || height <= 0 || mWidth <= 0 || mHeight <= 0) {
+            return 1;
+        }
+
+        final float scaleX = (float) mWidth / width;
+        final float scaleY = (float) mHeight / height;
+        final float scale;
+
+        switch (mScaleType) {
+            case CENTER:
+                // The image is not scaled
+                return 1;
+
+            case CENTER_INSIDE:
+            case FIT_CENTER:
+                scale = Math.min(scaleX, scaleY);
+                break;
+
+            case CENTER_CROP:
+            case FIT_XY:
+            default:
+                scale = Math.max(scaleX, scaleY);
+                break;
+        }
+
+        int sampleSize = 1;
+        while (sampleSize * 2 * scale <= 1.0f) {
+            sampleSize <<= 1;
+        }
+        return sampleSize;
+    }
+
     public Bitmap processImage(Bitmap bitmap) {
 
         if (bitmap == null) {
@@ -60,6 +106,10 @@ public class ScaleImageProcessor implements ImageProcessor {
 
         mMatrix.reset();
 
+        // Opaque Bitmaps remain opaque as long as the result is entirely
+        // covered by the scaled Bitmap.
+        boolean opaque = bitmap.getConfig() == Config.RGB_565;
+
         final int bWidth = bitmap.getWidth();
         final int bHeight = bitmap.getHeight();
 
@@ -86,6 +136,7 @@ public class ScaleImageProcessor implements ImageProcessor {
 
             case CENTER: {
                 // Center bitmap without scaling
+                opaque &= bWidth >= mWidth && bHeight >= mHeight;
                 final int dx = (int) ((mWidth - bWidth) * 0.5f + 0.5f);
                 final int dy = (int) ((mHeight - bHeight) * 0.5f + 0.5f);
                 mMatrix.setTranslate(dx, dy);
@@ -105,6 +156,8 @@ public class ScaleImageProcessor implements ImageProcessor {
                     scale = Math.min((float) mWidth / (float) bWidth, (float) mHeight / (float) bHeight);
                 }
 
+                opaque &= (int) (bWidth * scale + 0.5f) >= mWidth && (int) (bHeight * scale + 0.5f) >= mHeight;
+
                 dx = (int) ((mWidth - bWidth * scale) * 0.5f + 0.5f);
                 dy = (int) ((mHeight - bHeight * scale) * 0.5f + 0.5f);
 
@@ -113,6 +166,21 @@ public class ScaleImageProcessor implements ImageProcessor {
                 break;
             }
 
+            case FIT_CENTER: {
+                // Center and scale the bitmap so that it entirely fits into the
+                // given space even if it has to be enlarged.
+                final float scale = Math.min((float) mWidth / (float) bWidth, (float) mHeight / (float) bHeight);
+
+                opaque &= (int) (bWidth * scale + 0.5f) >= mWidth && (int) (bHeight * scale + 0.5f) >= mHeight;
+
+                final float dx = (int) ((mWidth - bWidth * scale) * 0.5f + 0.5f);
+                final float dy = (int) ((mHeight - bHeight * scale) * 0.5f + 0.5f);
+
+                mMatrix.setScale(scale, scale);
+                mMatrix.postTranslate(dx, dy);
+                break;
+            }
+
             case FIT_XY:
             default:
                 // Entirely fills the space without respecting bitmap's ratio.
@@ -123,7 +191,7 @@ public class ScaleImageProcessor implements ImageProcessor {
                 break;
         }
 
-        Bitmap result = Bitmap.createBitmap(mWidth, mHeight, Config.ARGB_8888);
+        Bitmap result = Bitmap.createBitmap(mWidth, mHeight, opaque ? Config.RGB_565 : Config.ARGB_8888);
         Canvas canvas = new Canvas(result);
         canvas.drawBitmap(bitmap, mMatrix, null);
 
@@ -0,0 +1,78 @@
+/*
+ * Copyright (C) 2011 Cyril Mottier (http://www.cyrilmottier.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package greendroid.image;
+
+/**
+ * A {@link PixelKernel} sharpening images using a 3x3 Laplacian convolution.
+ * 
+ * @author Cyril Mottier
+ */
+public class SharpenPixelKernel implements PixelKernel {
+
+    private final int mAmount;
+
+    /**
+     * Create a new SharpenPixelKernel.
+     * 
+     * @param amount The strength of the effect. 0 leaves the image unchanged
+     *            while 1 is a strong sharpening.
+     */
+    public SharpenPixelKernel(float amount) {
+        mAmount = (int) (Math.max(0, amount) * 256);
+    }
+
+    public int getPassCount() {
+        return 1;
+    }
+
+    public int getScratchSize(int width, int height) {
+        return 0;
+    }
+
+    public void processRows(int pass, int[] src, int[] dst, int width, int height, int top, int bottom, int[] scratch) {
+        final int amount = mAmount;
+        final int center = 256 + 4 * amount;
+
+        for (int y = top; y < bottom; y++) {
+            final int row = y * width;
+            final int rowAbove = (y > 0) ? row - width : row;
+            final int rowBelow = (y < height - 1) ? row + width : row;
+
+            for (int x = 0; x < width; x++) {
+                final int left = (x > 0) ? x - 1 : x;
+                final int right = (x < width - 1) ? x + 1 : x;
+
+                final int c = src[row + x];
+                final int n = src[rowAbove + x];
+                final int s = src[rowBelow + x];
+                final int w = src[row + left];
+                final int e = src[row + right];
+
+                final int r = clamp((((c >> 16) & 0xFF) * center - (((n >> 16) & 0xFF) + ((s >> 16) & 0xFF) + ((w >> 16) & 0xFF) + ((e >> 16) & 0xFF))
+                        * amount) >> 8);
+                final int g = clamp((((c >> 8) & 0xFF) * center - (((n >> 8) & 0xFF) + ((s >> 8) & 0xFF) + ((w >> 8) & 0xFF) + ((e >> 8) & 0xFF))
+                        * amount) >> 8);
+                final int b = clamp(((c & 0xFF) * center - ((n & 0xFF) + (s & 0xFF) + (w & 0xFF) + (e & 0xFF)) * amount) >> 8);
+
+                dst[row + x] = (c & 0xFF000000) | (r << 16) | (g << 8) | b;
+            }
+        }
+    }
+
+    private static int clamp(int value) {
+        return (value < 0) ? 0 : (value > 255) ? 255 : value;
+    }
+}
@@ -0,0 +1,82 @@
+/*
+ * Copyright (C) 2011 Cyril Mottier (http://www.cyrilmottier.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package greendroid.image;
+
+/**
+ * A {@link PixelKernel} tinting images with a given color. The luminance of
+ * each pixel is preserved while its hue is replaced by the hue of the tint
+ * color.
+ * 
+ * @author Cyril Mottier
+ */
+public class TintPixelKernel implements PixelKernel {
+
+    private final int mRed;
+    private final int mGreen;
+    private final int mBlue;
+    private final int mAmount;
+
+    /**
+     * Create a new TintPixelKernel that fully tints images.
+     * 
+     * @param color The tint color (the alpha component is ignored)
+     */
+    public TintPixelKernel(int color) {
+        this(color, 1.0f);
+    }
+
+    /**
+     * Create a new TintPixelKernel.
+     * 
+     * @param color The tint color (the alpha component is ignored)
+     * @param amount The amount of tint from 0 (original image) to 1 (fully
+     *            tinted image)
+     */
+    public TintPixelKernel(int color, float amount) {
+        mRed = (color >> 16) & 0xFF;
+        mGreen = (color >> 8) & 0xFF;
+        mBlue = color & 0xFF;
+        mAmount = (int) (Math.max(0, Math.min(1, amount)) * 256);
+    }
+
+    public int getPassCount() {
+        return 1;
+    }
+
+    public int getScratchSize(int width, int height) {
+        return 0;
+    }
+
+    public void processRows(int pass, int[] src, int[] dst, int width, int height, int top, int bottom, int[] scratch) {
+        final int amount = mAmount;
+        final int end = bottom * width;
+
+        for (int i = top * width; i < end; i++) {
+            final int color = src[i];
+            final int r = (color >> 16) & 0xFF;
+            final int g = (color >> 8) & 0xFF;
+            final int b = color & 0xFF;
+
+            final int lum = (r * 77 + g * 150 + b * 29) >> 8;
+            final int tr = (lum * mRed) / 255;
+            final int tg = (lum * mGreen) / 255;
+            final int tb = (lum * mBlue) / 255;
+
+            dst[i] = (color & 0xFF000000) | ((r + (((tr - r) * amount) >> 8)) << 16) | ((g + (((tg - g) * amount) >> 8)) << 8)
+                    | (b + (((tb - b) * amount) >> 8));
+        }
+    }
+}
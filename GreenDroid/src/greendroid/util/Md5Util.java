@@ -32,7 +32,7 @@ public class Md5Util {
      * @param s The String whose hash is required
      * @return The MD5 hash of the given String
      */
-    public static String md5(String s) {
+    public static synchronized String md5(String s) {
 
         sMd5MessageDigest.reset();
         sMd5MessageDigest.update(s.getBytes());
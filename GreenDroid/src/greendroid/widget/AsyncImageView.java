@@ -15,11 +15,18 @@
  */
 package greendroid.widget;
 
+import greendroid.image.BitmapRef;
+import greendroid.image.ChainImageProcessor;
+import greendroid.image.ImageCache;
+import greendroid.image.ImageLoader;
+import greendroid.image.ImageMetrics;
 import greendroid.image.ImageProcessor;
 import greendroid.image.ImageRequest;
 import greendroid.image.ImageRequest.ImageRequestCallback;
+import greendroid.image.ScaleImageProcessor;
 import greendroid.util.Config;
 import greendroid.util.GDUtils;
+import android.app.Activity;
 import android.content.Context;
 import android.content.res.TypedArray;
 import android.graphics.Bitmap;
@@ -53,6 +60,19 @@ import com.cyrilmottier.android.greendroid.R;
  * scrolling/flinging is over, <em>un-pause</em> your {@link AsyncImageView}s
  * using <code>setPaused(false)</code>
  * </p>
+ * <p>
+ * An {@link AsyncImageView} may also display a low-quality preview of the
+ * image while the full-resolution image is loading. The preview is usually a
+ * small thumbnail provided by the server. It may be given explicitly using
+ * {@link #setUrl(String, String)} or derived from the URL using a template (see
+ * {@link #setPreviewUrlTemplate(String)}).
+ * </p>
+ * <p>
+ * When auto-size is enabled (see {@link #setAutoSize(boolean)}), the image is
+ * scaled to the size of the {@link AsyncImageView} according to its
+ * ScaleType. The image is not requested until the {@link AsyncImageView} has
+ * been laid out.
+ * </p>
  * 
  * @author Cyril Mottier
  */
@@ -77,7 +97,9 @@ public class AsyncImageView extends ImageView implements ImageRequestCallback {
 
         /**
          * Called when the image ended to load that is when the image has been
-         * downloaded and is ready to be displayed on screen
+         * downloaded and is ready to be displayed on screen. The image is only
+         * guaranteed to be valid while it is displayed by the AsyncImageView.
+         * Use {@link AsyncImageView#acquireBitmap()} to keep it.
          * 
          * @param imageView The AsyncImageView that ended loading
          */
@@ -91,6 +113,13 @@ public class AsyncImageView extends ImageView implements ImageRequestCallback {
         void onLoadingFailed(AsyncImageView imageView, Throwable throwable);
     }
 
+    /**
+     * The placeholder replaced by the image url in preview url templates.
+     * 
+     * @see #setPreviewUrlTemplate(String)
+     */
+    public static final String PREVIEW_URL_PLACEHOLDER = "{url}";
+
     private static final int IMAGE_SOURCE_UNKNOWN = -1;
     private static final int IMAGE_SOURCE_RESOURCE = 0;
     private static final int IMAGE_SOURCE_DRAWABLE = 1;
@@ -105,11 +134,22 @@ public class AsyncImageView extends ImageView implements ImageRequestCallback {
     private ImageRequest mRequest;
     private boolean mPaused;
 
+    private String mPreviewUrl;
+    private String mPreviewUrlTemplate;
+    private ImageRequest mPreviewRequest;
+
     private Bitmap mBitmap;
+    private BitmapRef mBitmapRef;
     private OnImageViewLoadListener mOnImageViewLoadListener;
     private ImageProcessor mImageProcessor;
     private BitmapFactory.Options mOptions;
 
+    private boolean mAutoSize;
+    private int mAutoSizeWidth;
+    private int mAutoSizeHeight;
+    private ScaleType mAutoSizeScaleType;
+    private ImageProcessor mAutoSizeProcessor;
+
     public AsyncImageView(Context context) {
         this(context, null);
     }
@@ -135,6 +175,8 @@ public class AsyncImageView extends ImageView implements ImageRequestCallback {
             setInDensity(inDensity);
         }
 
+        setAutoSize(a.getBoolean(R.styleable.AsyncImageView_autoSize, false));
+        setPreviewUrlTemplate(a.getString(R.styleable.AsyncImageView_previewUrlTemplate));
         setUrl(a.getString(R.styleable.AsyncImageView_url));
 
         a.recycle();
@@ -165,6 +207,18 @@ public class AsyncImageView extends ImageView implements ImageRequestCallback {
         return mRequest == null && mBitmap != null;
     }
 
+    /**
+     * Return a handle on the image currently displayed. The image is
+     * guaranteed to stay valid until the returned handle is released, even if
+     * this AsyncImageView displays another image in the meantime.
+     * 
+     * @return A {@link BitmapRef} that must be released by the caller or null
+     *         if the displayed image hasn't been loaded from an url
+     */
+    public BitmapRef acquireBitmap() {
+        return (mBitmapRef != null) ? getImageCache().acquire(mBitmapRef.getKey()) : null;
+    }
+
     /**
      * Pause this AsyncImageView preventing it from downloading the image. The
      * download process will start back once setPaused(false) is called.
@@ -203,6 +257,13 @@ public class AsyncImageView extends ImageView implements ImageRequestCallback {
      * are used internally by the {@link AsyncImageView} when decoding the
      * image. This may be used to prevent the default behavior that loads all
      * images as mdpi density.
+     * <p>
+     * Leaving the <code>inPreferredConfig</code> field to its default value
+     * (null or {@link Bitmap.Config#ARGB_8888} depending on the platform)
+     * lets the {@link greendroid.image.ImageLoader} decode opaque images
+     * using {@link Bitmap.Config#RGB_565} (see
+     * {@link greendroid.image.ImageLoader#setOpaqueDecodingEnabled(boolean)}).
+     * </p>
      * 
      * @param options
      */
@@ -210,6 +271,112 @@ public class AsyncImageView extends ImageView implements ImageRequestCallback {
         mOptions = options;
     }
 
+    /**
+     * Enable or disable the auto-size mode. In auto-size mode, images are
+     * decoded and scaled to the size of this {@link AsyncImageView} (padding
+     * excluded) according to its ScaleType. Requests are deferred until this
+     * {@link AsyncImageView} has been laid out. The ImageProcessor given to
+     * {@link #setImageProcessor(ImageProcessor)} is applied on the scaled
+     * image.
+     * <p>
+     * <em><strong>Note:</strong> The {@link ScaleType#MATRIX},
+     * {@link ScaleType#FIT_START} and {@link ScaleType#FIT_END} scale types are
+     * not supported. Images are loaded at their original size when one of
+     * those is used.</em>
+     * </p>
+     * 
+     * @param autoSize true to scale images to the size of this view
+     */
+    public void setAutoSize(boolean autoSize) {
+        if (mAutoSize != autoSize) {
+            mAutoSize = autoSize;
+            invalidateAutoSize();
+        }
+    }
+
+    @Override
+    public void setScaleType(ScaleType scaleType) {
+        super.setScaleType(scaleType);
+        if (mAutoSize) {
+            invalidateAutoSize();
+        }
+    }
+
+    @Override
+    protected void onSizeChanged(int w, int h, int oldw, int oldh) {
+        super.onSizeChanged(w, h, oldw, oldh);
+        if (mAutoSize) {
+            invalidateAutoSize();
+        }
+    }
+
+    /**
+     * Recompute the auto-size processor and reload the image if it changed.
+     */
+    private void invalidateAutoSize() {
+        final int width = mAutoSize ? Math.max(0, getWidth() - getPaddingLeft() - getPaddingRight()) : 0;
+        final int height = mAutoSize ? Math.max(0, getHeight() - getPaddingTop() - getPaddingBottom()) : 0;
+        final ScaleType scaleType = getScaleType();
+
+        if (width == mAutoSizeWidth && height == mAutoSizeHeight && scaleType == mAutoSizeScaleType) {
+            return;
+        }
+
+        mAutoSizeWidth = width;
+        mAutoSizeHeight = height;
+        mAutoSizeScaleType = scaleType;
+        mAutoSizeProcessor = null;
+
+        if (width > 0 && height > 0) {
+            final ScaleType processorScaleType = getProcessorScaleType(scaleType);
+            if (processorScaleType == null) {
+                mAutoSizeProcessor = mImageProcessor;
+            } else {
+                final ImageProcessor scaleProcessor = new ScaleImageProcessor(width, height, processorScaleType);
+                mAutoSizeProcessor = (mImageProcessor == null) ? scaleProcessor : new ChainImageProcessor(scaleProcessor,
+                        mImageProcessor);
+            }
+        }
+
+        // The image that may have been loaded doesn't match the new size
+        if (!TextUtils.isEmpty(mUrl)) {
+            stopLoading();
+            mBitmap = null;
+            if (!mPaused && !isWaitingForSize()) {
+                // Setting the image while being laid out is not safe
+                removeCallbacks(mReloadRunnable);
+                post(mReloadRunnable);
+            }
+        }
+    }
+
+    private final Runnable mReloadRunnable = new Runnable() {
+        public void run() {
+            reload();
+        }
+    };
+
+    private static ScaleType getProcessorScaleType(ScaleType scaleType) {
+        switch (scaleType) {
+            case CENTER:
+            case CENTER_CROP:
+            case CENTER_INSIDE:
+            case FIT_CENTER:
+            case FIT_XY:
+                return scaleType;
+            default:
+                return null;
+        }
+    }
+
+    private boolean isWaitingForSize() {
+        return mAutoSize && (mAutoSizeWidth <= 0 || mAutoSizeHeight <= 0);
+    }
+
+    private ImageProcessor getRequestProcessor() {
+        return mAutoSize ? mAutoSizeProcessor : mImageProcessor;
+    }
+
     /**
      * Reload the image pointed by the given URL
      */
@@ -227,15 +394,18 @@ public class AsyncImageView extends ImageView implements ImageRequestCallback {
     public void reload(boolean force) {
         if (mRequest == null && mUrl != null) {
 
+            if (isWaitingForSize()) {
+                // The image will be requested once the size is known
+                mBitmap = null;
+                setDefaultImage();
+                return;
+            }
+
             // Prior downloading the image ... let's look in a cache !
             // TODO cyril: This is a synchronous call ... make it asynchronous
             mBitmap = null;
-            if (!force) {
-                mBitmap = GDUtils.getImageCache(getContext()).get(mUrl);
-            }
-
-            if (mBitmap != null) {
-                setImageBitmap(mBitmap);
+            if (!force && setImageFromCache(mUrl, true)) {
+                mBitmap = mBitmapRef.getBitmap();
                 return;
             }
 
@@ -243,22 +413,52 @@ public class AsyncImageView extends ImageView implements ImageRequestCallback {
                 Log.i(LOG_TAG, "Cache miss. Starting to load the image at the given URL");
             }
 
-            setDefaultImage();
-            mRequest = new ImageRequest(mUrl, this, mImageProcessor, mOptions);
+            if (!setPreviewImage()) {
+                setDefaultImage();
+            }
+            mRequest = new ImageRequest(mUrl, this, getRequestProcessor(), mOptions);
             mRequest.load(getContext());
         }
     }
 
+    /**
+     * Display the preview image if it is in the cache. Otherwise, start loading
+     * it. Returns true if the preview image has been set.
+     */
+    private boolean setPreviewImage() {
+        if (mPreviewUrl == null) {
+            return false;
+        }
+
+        if (setPreviewImageFromCache()) {
+            return true;
+        }
+
+        if (mPreviewRequest == null) {
+            mPreviewRequest = new ImageRequest(mPreviewUrl, this, getRequestProcessor(), mOptions);
+            mPreviewRequest.load(getContext());
+        }
+        return false;
+    }
+
     /**
      * Force the loading to be stopped.
      */
     public void stopLoading() {
+        stopLoadingPreview();
         if (mRequest != null) {
             mRequest.cancel();
             mRequest = null;
         }
     }
 
+    private void stopLoadingPreview() {
+        if (mPreviewRequest != null) {
+            mPreviewRequest.cancel();
+            mPreviewRequest = null;
+        }
+    }
+
     /**
      * Register a callback to be invoked when an event occured for this
      * AsyncImageView.
@@ -280,6 +480,22 @@ public class AsyncImageView extends ImageView implements ImageRequestCallback {
      *            AsyncImageView to display the default image
      */
     public void setUrl(String url) {
+        setUrl(url, createPreviewUrl(url));
+    }
+
+    /**
+     * Set the url of the image that will be used as the content of this
+     * AsyncImageView as well as the url of a low-quality version of the same
+     * image. The preview image is displayed as soon as it is available and
+     * replaced by the full-resolution image once it has been loaded.
+     * 
+     * @param url The url of the image to set. Pass null to force the
+     *            AsyncImageView to display the default image
+     * @param previewUrl The url of a low-quality version of the image. May be
+     *            null.
+     * @see #setUrl(String)
+     */
+    public void setUrl(String url, String previewUrl) {
 
         // Check the url has changed
         if (mBitmap != null && url != null && url.equals(mUrl)) {
@@ -288,6 +504,7 @@ public class AsyncImageView extends ImageView implements ImageRequestCallback {
 
         stopLoading();
         mUrl = url;
+        mPreviewUrl = previewUrl;
 
         // Setting the url to an empty string force the displayed image to the
         // default image
@@ -300,17 +517,95 @@ public class AsyncImageView extends ImageView implements ImageRequestCallback {
             } else {
                 // We're paused: let's look in a synchronous and efficient cache
                 // prior using the default image.
-                mBitmap = GDUtils.getImageCache(getContext()).get(mUrl);
-                if (mBitmap != null) {
-                    setImageBitmap(mBitmap);
+                if (setImageFromCache(mUrl, true)) {
+                    mBitmap = mBitmapRef.getBitmap();
                     return;
-                } else {
+                } else if (mPreviewUrl == null || !setPreviewImageFromCache()) {
                     setDefaultImage();
                 }
             }
         }
     }
 
+    /**
+     * Set a template used to compute the url of the preview image whenever
+     * {@link #setUrl(String)} is called. All occurrences of
+     * {@value #PREVIEW_URL_PLACEHOLDER} in the template are replaced by the url
+     * of the image. For instance,
+     * <code>http://example.com/thumbnail?src={url}</code> may be used.
+     * 
+     * @param template The template used to compute preview urls. Pass null to
+     *            disable previews.
+     */
+    public void setPreviewUrlTemplate(String template) {
+        mPreviewUrlTemplate = template;
+    }
+
+    private String createPreviewUrl(String url) {
+        if (mPreviewUrlTemplate == null || TextUtils.isEmpty(url)) {
+            return null;
+        }
+        return mPreviewUrlTemplate.replace(PREVIEW_URL_PLACEHOLDER, url);
+    }
+
+    private boolean setPreviewImageFromCache() {
+        return setImageFromCache(mPreviewUrl, false);
+    }
+
+    /**
+     * Display the image at the given url if it is in the cache. The Bitmap is
+     * retained until another image is displayed. Lookups of the
+     * full-resolution image are recorded in the {@link ImageMetrics}.
+     */
+    private boolean setImageFromCache(String url, boolean recordLookup) {
+        if (isWaitingForSize()) {
+            return false;
+        }
+        final BitmapRef ref = getImageCache().acquire(ImageLoader.getCacheKey(url, getRequestProcessor()));
+        if (recordLookup) {
+            ImageLoader.getMetrics().onMemoryCacheLookup(ref != null);
+        }
+        if (ref != null) {
+            setImageRef(ref);
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Display the image that has just been loaded by the given request. The
+     * image is retained so that it can't be recycled while being displayed.
+     */
+    private Bitmap setLoadedImage(ImageRequest request) {
+        final BitmapRef ref = request.acquireBitmap();
+        if (ref == null) {
+            return null;
+        }
+        setImageRef(ref);
+        return ref.getBitmap();
+    }
+
+    private void setImageRef(BitmapRef ref) {
+        final BitmapRef previousRef = mBitmapRef;
+        mBitmapRef = ref;
+        setImageBitmap(ref.getBitmap());
+        if (previousRef != null) {
+            previousRef.release();
+        }
+    }
+
+    private void releaseImageRef() {
+        if (mBitmapRef != null) {
+            final BitmapRef ref = mBitmapRef;
+            mBitmapRef = null;
+            ref.release();
+        }
+    }
+
+    private ImageCache getImageCache() {
+        return GDUtils.getImageCache(getContext());
+    }
+
     /**
      * Set the default bitmap as the content of this AsyncImageView
      * 
@@ -354,6 +649,11 @@ public class AsyncImageView extends ImageView implements ImageRequestCallback {
      */
     public void setImageProcessor(ImageProcessor imageProcessor) {
         mImageProcessor = imageProcessor;
+        if (mAutoSize) {
+            // Forces the auto-size processor to be built again
+            mAutoSizeWidth = -1;
+            invalidateAutoSize();
+        }
     }
 
     private void setDefaultImage() {
@@ -372,11 +672,34 @@ public class AsyncImageView extends ImageView implements ImageRequestCallback {
                     setImageDrawable(null);
                     break;
             }
+            releaseImageRef();
+        }
+    }
+
+    @Override
+    protected void onAttachedToWindow() {
+        super.onAttachedToWindow();
+        // The image may have been released while detached
+        if (mBitmap == null && mRequest == null && !mPaused && !TextUtils.isEmpty(mUrl)) {
+            reload();
+        }
+    }
+
+    @Override
+    protected void onDetachedFromWindow() {
+        super.onDetachedFromWindow();
+        // Let the cache recycle the Bitmap if nobody else displays it. It is
+        // reloaded if this AsyncImageView is attached again.
+        if (mBitmapRef != null) {
+            mBitmap = null;
+            setDefaultImage();
         }
     }
 
     static class SavedState extends BaseSavedState {
         String url;
+        String previewUrl;
+        String requestKey;
 
         SavedState(Parcelable superState) {
             super(superState);
@@ -385,12 +708,16 @@ public class AsyncImageView extends ImageView implements ImageRequestCallback {
         private SavedState(Parcel in) {
             super(in);
             url = in.readString();
+            previewUrl = in.readString();
+            requestKey = in.readString();
         }
 
         @Override
         public void writeToParcel(Parcel out, int flags) {
             super.writeToParcel(out, flags);
             out.writeString(url);
+            out.writeString(previewUrl);
+            out.writeString(requestKey);
         }
 
         public static final Parcelable.Creator<SavedState> CREATOR = new Parcelable.Creator<SavedState>() {
@@ -410,41 +737,114 @@ public class AsyncImageView extends ImageView implements ImageRequestCallback {
         SavedState ss = new SavedState(superState);
 
         ss.url = mUrl;
+        ss.previewUrl = mPreviewUrl;
+
+        // The View is about to be destroyed because of a configuration
+        // change. Let's make the current request available to the View that
+        // will restore this state. The state is also saved when the Activity
+        // is simply paused: the request must then keep notifying this View.
+        if (mRequest != null && isChangingConfigurations()) {
+            ss.requestKey = mRequest.detach();
+            mRequest = null;
+            stopLoadingPreview();
+        }
 
         return ss;
     }
 
+    private boolean isChangingConfigurations() {
+        final Context context = getContext();
+        return (context instanceof Activity) && ((Activity) context).getChangingConfigurations() != 0;
+    }
+
     @Override
     public void onRestoreInstanceState(Parcelable state) {
         SavedState ss = (SavedState) state;
         super.onRestoreInstanceState(ss.getSuperState());
 
-        setUrl(ss.url);
+        if (ss.requestKey != null && restoreRequest(ss)) {
+            return;
+        }
+
+        setUrl(ss.url, ss.previewUrl);
+    }
+
+    private boolean restoreRequest(SavedState ss) {
+        final ImageRequest request = ImageRequest.attach(ss.requestKey, this);
+        if (request == null) {
+            return false;
+        }
+
+        final Bitmap bitmap = request.getBitmap();
+        if ((bitmap == null && !request.isLoading()) || (bitmap != null && bitmap.isRecycled())) {
+            // The request failed or its Bitmap has been evicted and
+            // recycled in the meantime. Let's start over
+            request.setImageRequestCallback(null);
+            request.cancel();
+            return false;
+        }
+
+        stopLoading();
+        mUrl = ss.url;
+        mPreviewUrl = ss.previewUrl;
+        mBitmap = null;
+        mRequest = request;
+
+        if (bitmap != null) {
+            onImageRequestEnded(request, bitmap);
+        } else if (!setPreviewImage()) {
+            setDefaultImage();
+        }
+
+        return true;
     }
 
     public void onImageRequestStarted(ImageRequest request) {
+        if (request == mPreviewRequest) {
+            return;
+        }
         if (mOnImageViewLoadListener != null) {
             mOnImageViewLoadListener.onLoadingStarted(this);
         }
     }
 
     public void onImageRequestFailed(ImageRequest request, Throwable throwable) {
+        if (request == mPreviewRequest) {
+            // The preview is optional. Let's simply wait for the final image
+            mPreviewRequest = null;
+            return;
+        }
         mRequest = null;
+        stopLoadingPreview();
         if (mOnImageViewLoadListener != null) {
             mOnImageViewLoadListener.onLoadingFailed(this, throwable);
         }
     }
 
     public void onImageRequestEnded(ImageRequest request, Bitmap image) {
-        mBitmap = image;
-        setImageBitmap(image);
+        if (request == mPreviewRequest) {
+            mPreviewRequest = null;
+            if (mBitmap == null) {
+                setLoadedImage(request);
+            }
+            return;
+        }
+        stopLoadingPreview();
+        mBitmap = setLoadedImage(request);
+        if (mBitmap == null) {
+            setDefaultImage();
+        }
         if (mOnImageViewLoadListener != null) {
-            mOnImageViewLoadListener.onLoadingEnded(this, image);
+            mOnImageViewLoadListener.onLoadingEnded(this, mBitmap);
         }
         mRequest = null;
     }
 
     public void onImageRequestCancelled(ImageRequest request) {
+        if (request == mPreviewRequest) {
+            // Cancelling the preview is done silently
+            return;
+        }
         mRequest = null;
         if (mOnImageViewLoadListener != null) {
             mOnImageViewLoadListener.onLoadingFailed(this, null);
@@ -0,0 +1,598 @@
+/*
+ * Copyright (C) 2011 Cyril Mottier (http://www.cyrilmottier.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package greendroid.widget;
+
+import greendroid.widget.ItemDiff.ItemComparator;
+import greendroid.widget.item.Item;
+import greendroid.widget.item.SeparatorItem;
+import greendroid.widget.item.SubtextItem;
+import greendroid.widget.item.SubtitleItem;
+import greendroid.widget.item.TextItem;
+
+import java.text.Collator;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+
+import android.content.Context;
+import android.widget.Filter;
+import android.widget.Filterable;
+
+/**
+ * <p>
+ * An {@link ItemAdapter} that may be filtered. The text of each Item is given
+ * by a {@link TextExtractor} and an Item is displayed when its text contains
+ * the filtering constraint (ignoring case).
+ * </p>
+ * <p>
+ * Filtering is done on a background thread by the Filter returned by
+ * {@link #getFilter()}. The texts of the Items are indexed by trigrams so that
+ * only the Items containing all of the trigrams of the constraint are
+ * checked. When the new constraint contains the previous one (which is the
+ * case when the user types a new character), only the Items of the previous
+ * result are checked. Results are published as ranges of removed and
+ * inserted Items in a single batch.
+ * </p>
+ * <p>
+ * Items may be added (see {@link #add(Item)} and {@link #addAll(Collection)})
+ * and removed (see {@link #remove(Item)} and {@link #clear()}). Added Items
+ * are indexed incrementally. As positions depend on the current filter,
+ * position-based modifications are not supported and throw an
+ * UnsupportedOperationException.
+ * </p>
+ * 
+ * @author Cyril Mottier
+ */
+public class FilterableItemAdapter extends ItemAdapter implements Filterable {
+
+    /**
+     * Returns the text used to filter Items.
+     * 
+     * @author Cyril Mottier
+     */
+    public interface TextExtractor {
+
+        /**
+         * Return the text of the given Item. This method is called on a
+         * background thread.
+         * 
+         * @param item The Item
+         * @return The text against which the filtering constraint is matched
+         *         or null if the item only appears when the list is not
+         *         filtered
+         */
+        CharSequence getText(Item item);
+    }
+
+    /**
+     * The default {@link TextExtractor}. It returns the text of
+     * {@link TextItem}s followed by the subtitle of {@link SubtitleItem}s and
+     * the subtext of {@link SubtextItem}s. {@link SeparatorItem}s have no
+     * text.
+     */
+    public static final TextExtractor DEFAULT_TEXT_EXTRACTOR = new TextExtractor() {
+        public CharSequence getText(Item item) {
+            if (!(item instanceof TextItem) || item instanceof SeparatorItem) {
+                return null;
+            }
+
+            final String text = ((TextItem) item).text;
+            String extra = null;
+            if (item instanceof SubtitleItem) {
+                extra = ((SubtitleItem) item).subtitle;
+            } else if (item instanceof SubtextItem) {
+                extra = ((SubtextItem) item).subtext;
+            }
+
+            if (extra == null) {
+                return text;
+            }
+            return (text == null) ? extra : text + " " + extra;
+        }
+    };
+
+    private static final int NGRAM_LENGTH = 3;
+
+    private final Object mLock = new Object();
+
+    private final ArrayList<Item> mDisplayedItems;
+    private int[] mDisplayedIndices;
+
+    // Fields protected by mLock
+    private final ArrayList<Item> mAllItems;
+    private final TextExtractor mTextExtractor;
+    private NGramIndex mIndex;
+    private int mGeneration;
+    private String mLastQuery;
+    private int[] mLastResult;
+    private int mLastResultItemCount;
+
+    private String mQuery = "";
+    private ItemFilter mFilter;
+
+    /**
+     * Create a new FilterableItemAdapter using the default
+     * {@link TextExtractor}.
+     * 
+     * @param context The context associated with this adapter.
+     * @param items The items of this adapter. The list is copied.
+     */
+    public FilterableItemAdapter(Context context, List<Item> items) {
+        this(context, items, DEFAULT_TEXT_EXTRACTOR, DEFAULT_MAX_VIEW_TYPE_COUNT);
+    }
+
+    /**
+     * Create a new FilterableItemAdapter.
+     * 
+     * @param context The context associated with this adapter.
+     * @param items The items of this adapter. The list is copied.
+     * @param textExtractor The {@link TextExtractor} returning the text of
+     *            the items
+     * @param maxViewTypeCount The maximum number of view type that may be
+     *            generated by this adapter
+     */
+    public FilterableItemAdapter(Context context, List<Item> items, TextExtractor textExtractor, int maxViewTypeCount) {
+        this(context, new ArrayList<Item>(items), textExtractor, maxViewTypeCount);
+    }
+
+    private FilterableItemAdapter(Context context, ArrayList<Item> items, TextExtractor textExtractor, int maxViewTypeCount) {
+        super(context, items, maxViewTypeCount);
+        mDisplayedItems = items;
+        mAllItems = new ArrayList<Item>(items);
+        mTextExtractor = textExtractor;
+        mDisplayedIndices = createRange(items.size());
+    }
+
+    public Filter getFilter() {
+        if (mFilter == null) {
+            mFilter = new ItemFilter();
+        }
+        return mFilter;
+    }
+
+    /**
+     * Adds the specified item. The item is displayed only if it matches the
+     * current filter.
+     * 
+     * @param item The item to add.
+     */
+    @Override
+    public void add(Item item) {
+        final ArrayList<Item> items = new ArrayList<Item>(1);
+        items.add(item);
+        addAll(items);
+    }
+
+    /**
+     * Adds the specified items. Only the items matching the current filter
+     * are displayed.
+     * 
+     * @param items The items to add.
+     */
+    @Override
+    public void addAll(Collection<? extends Item> items) {
+        final ArrayList<Item> displayed = new ArrayList<Item>();
+        int[] indices = mDisplayedIndices;
+        int count = indices.length;
+
+        synchronized (mLock) {
+            for (Item item : items) {
+                final int index = mAllItems.size();
+                final String text = getLowerCaseText(item);
+                mAllItems.add(item);
+                if (mIndex != null) {
+                    mIndex.add(text);
+                }
+                if (matches(text, mQuery)) {
+                    displayed.add(item);
+                    if (count == indices.length) {
+                        final int[] newIndices = new int[Math.max(8, count * 2)];
+                        System.arraycopy(indices, 0, newIndices, 0, count);
+                        indices = newIndices;
+                    }
+                    indices[count++] = index;
+                }
+            }
+            // A pending filter result doesn't contain the new items
+            mGeneration++;
+        }
+
+        mDisplayedIndices = trim(indices, count);
+        super.insertRange(displayed, mDisplayedItems.size());
+    }
+
+    /**
+     * Removes the specified item.
+     * 
+     * @param item The item to remove.
+     */
+    @Override
+    public void remove(Item item) {
+        synchronized (mLock) {
+            final int index = mAllItems.indexOf(item);
+            if (index < 0) {
+                return;
+            }
+            mAllItems.remove(index);
+            // Indices changed: the index and the results are rebuilt lazily
+            mIndex = null;
+            mLastResult = null;
+            mGeneration++;
+
+            final int[] indices = mDisplayedIndices;
+            int count = 0;
+            for (int i = 0; i < indices.length; i++) {
+                if (indices[i] != index) {
+                    indices[count++] = (indices[i] > index) ? indices[i] - 1 : indices[i];
+                }
+            }
+            mDisplayedIndices = trim(indices, count);
+        }
+        super.remove(item);
+    }
+
+    @Override
+    public void clear() {
+        synchronized (mLock) {
+            mAllItems.clear();
+            mIndex = null;
+            mLastResult = null;
+            mGeneration++;
+        }
+        mDisplayedIndices = new int[0];
+        super.clear();
+    }
+
+    @Override
+    public void insert(Item item, int index) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public void insertRange(Collection<? extends Item> items, int index) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public void removeRange(int start, int end) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public void move(int from, int to) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public void replace(Item item, int index) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public void sort(Comparator<? super Item> comparator) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public void sortAsync(Comparator<? super Item> comparator) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public void sortAsync(Collator collator, SortKeyExtractor extractor) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public void updateItems(List<Item> items, ItemComparator comparator) {
+        throw new UnsupportedOperationException();
+    }
+
+    private String getLowerCaseText(Item item) {
+        final CharSequence text = mTextExtractor.getText(item);
+        return (text == null) ? null : text.toString().toLowerCase();
+    }
+
+    private static boolean matches(String text, String query) {
+        return query.length() == 0 || (text != null && text.indexOf(query) >= 0);
+    }
+
+    private static int[] createRange(int count) {
+        final int[] range = new int[count];
+        for (int i = 0; i < count; i++) {
+            range[i] = i;
+        }
+        return range;
+    }
+
+    private static int[] trim(int[] array, int length) {
+        if (array.length == length) {
+            return array;
+        }
+        final int[] result = new int[length];
+        System.arraycopy(array, 0, result, 0, length);
+        return result;
+    }
+
+    /**
+     * Build the index of the items if needed. The (potentially long)
+     * indexing is done without holding mLock on a snapshot of the items. It
+     * is done again if the items are modified in the meantime.
+     */
+    private void ensureIndex() {
+        while (true) {
+            final ArrayList<Item> items;
+            final int generation;
+            synchronized (mLock) {
+                if (mIndex != null) {
+                    return;
+                }
+                items = new ArrayList<Item>(mAllItems);
+                generation = mGeneration;
+            }
+
+            final NGramIndex index = new NGramIndex();
+            final int itemCount = items.size();
+            for (int i = 0; i < itemCount; i++) {
+                index.add(getLowerCaseText(items.get(i)));
+            }
+
+            synchronized (mLock) {
+                if (generation == mGeneration) {
+                    if (mIndex == null) {
+                        mIndex = index;
+                    }
+                    return;
+                }
+            }
+        }
+    }
+
+    /**
+     * Compute the indices of the items matching the given query. Must be
+     * called with mLock held. The index is usually built beforehand by
+     * {@link #ensureIndex()}.
+     */
+    private int[] computeIndices(String query) {
+        final int itemCount = mAllItems.size();
+        if (query.length() == 0) {
+            return createRange(itemCount);
+        }
+
+        if (mIndex == null) {
+            mIndex = new NGramIndex();
+            for (int i = 0; i < itemCount; i++) {
+                mIndex.add(getLowerCaseText(mAllItems.get(i)));
+            }
+        }
+
+        int[] candidates = null;
+        int candidateCount = 0;
+        if (mLastResult != null && mLastResultItemCount == itemCount && query.indexOf(mLastQuery) >= 0) {
+            // The new query is more specific: narrow the previous result
+            candidates = mLastResult;
+            candidateCount = candidates.length;
+        } else if (query.length() >= NGRAM_LENGTH) {
+            candidates = mIndex.getCandidates(query);
+            candidateCount = candidates.length;
+        }
+
+        final int[] result;
+        int count = 0;
+        if (candidates != null) {
+            result = new int[candidateCount];
+            for (int i = 0; i < candidateCount; i++) {
+                if (matches(mIndex.getText(candidates[i]), query)) {
+                    result[count++] = candidates[i];
+                }
+            }
+        } else {
+            result = new int[itemCount];
+            for (int i = 0; i < itemCount; i++) {
+                if (matches(mIndex.getText(i), query)) {
+                    result[count++] = i;
+                }
+            }
+        }
+
+        mLastQuery = query;
+        mLastResult = trim(result, count);
+        mLastResultItemCount = itemCount;
+        return mLastResult;
+    }
+
+    /**
+     * Replace the displayed items with the items at the given indices. Both
+     * the current and the new indices are sorted: the differences are
+     * computed by merging them and applied as ranges in a single batch.
+     */
+    private void publish(int[] indices) {
+        final int[] oldIndices = mDisplayedIndices;
+        mDisplayedIndices = indices;
+
+        beginBatch();
+        try {
+            int i = 0;
+            int j = 0;
+            int position = 0;
+            while (i < oldIndices.length || j < indices.length) {
+                final int oldIndex = (i < oldIndices.length) ? oldIndices[i] : Integer.MAX_VALUE;
+                final int newIndex = (j < indices.length) ? indices[j] : Integer.MAX_VALUE;
+
+                if (oldIndex == newIndex) {
+                    i++;
+                    j++;
+                    position++;
+                } else if (oldIndex < newIndex) {
+                    final int start = i;
+                    while (i < oldIndices.length && oldIndices[i] < newIndex) {
+                        i++;
+                    }
+                    super.removeRange(position, position + i - start);
+                } else {
+                    final ArrayList<Item> inserted = new ArrayList<Item>();
+                    synchronized (mLock) {
+                        while (j < indices.length && indices[j] < oldIndex) {
+                            inserted.add(mAllItems.get(indices[j++]));
+                        }
+                    }
+                    super.insertRange(inserted, position);
+                    position += inserted.size();
+                }
+            }
+        } finally {
+            endBatch();
+        }
+    }
+
+    private class ItemFilter extends Filter {
+
+        @Override
+        protected FilterResults performFiltering(CharSequence constraint) {
+            final String query = (constraint == null) ? "" : constraint.toString().toLowerCase().trim();
+            final FilterResults results = new FilterResults();
+            if (query.length() > 0) {
+                ensureIndex();
+            }
+            synchronized (mLock) {
+                final int[] indices = computeIndices(query);
+                results.values = new Object[] {
+                        query, indices, mGeneration
+                };
+                results.count = indices.length;
+            }
+            return results;
+        }
+
+        @Override
+        protected void publishResults(CharSequence constraint, FilterResults results) {
+            final Object[] values = (Object[]) results.values;
+            final int generation;
+            synchronized (mLock) {
+                generation = mGeneration;
+            }
+            if ((Integer) values[2] != generation) {
+                // Items have been added or removed in the meantime: indices are stale
+                filter(constraint);
+                return;
+            }
+            mQuery = (String) values[0];
+            publish((int[]) values[1]);
+        }
+    }
+
+    /**
+     * An inverted index of the trigrams contained in the texts of the items.
+     * Items are identified by their index and added in ascending order so
+     * that postings are always sorted.
+     */
+    private static class NGramIndex {
+
+        private static class Posting {
+            int[] ids = new int[4];
+            int size;
+
+            void add(int id) {
+                if (size > 0 && ids[size - 1] == id) {
+                    return;
+                }
+                if (size == ids.length) {
+                    final int[] newIds = new int[size * 2];
+                    System.arraycopy(ids, 0, newIds, 0, size);
+                    ids = newIds;
+                }
+                ids[size++] = id;
+            }
+        }
+
+        private final HashMap<String, Posting> mPostings = new HashMap<String, Posting>();
+        private final ArrayList<String> mTexts = new ArrayList<String>();
+
+        void add(String text) {
+            final int id = mTexts.size();
+            mTexts.add(text);
+            if (text == null) {
+                return;
+            }
+            final int last = text.length() - NGRAM_LENGTH;
+            for (int i = 0; i <= last; i++) {
+                final String ngram = text.substring(i, i + NGRAM_LENGTH);
+                Posting posting = mPostings.get(ngram);
+                if (posting == null) {
+                    posting = new Posting();
+                    mPostings.put(ngram, posting);
+                }
+                posting.add(id);
+            }
+        }
+
+        String getText(int id) {
+            return mTexts.get(id);
+        }
+
+        /**
+         * Return the sorted ids of the texts containing all of the trigrams of
+         * the given query (which must contain at least one trigram).
+         */
+        int[] getCandidates(String query) {
+            final int last = query.length() - NGRAM_LENGTH;
+            int[] result = null;
+            int count = 0;
+
+            for (int i = 0; i <= last; i++) {
+                final Posting posting = mPostings.get(query.substring(i, i + NGRAM_LENGTH));
+                if (posting == null) {
+                    return new int[0];
+                }
+                if (result == null) {
+                    result = new int[posting.size];
+                    System.arraycopy(posting.ids, 0, result, 0, posting.size);
+                    count = posting.size;
+                } else {
+                    count = intersect(result, count, posting.ids, posting.size);
+                }
+                if (count == 0) {
+                    break;
+                }
+            }
+
+            return trim(result, count);
+        }
+
+        /**
+         * Intersect two sorted arrays. The result is stored in the first one.
+         */
+        private static int intersect(int[] a, int aSize, int[] b, int bSize) {
+            int i = 0;
+            int j = 0;
+            int count = 0;
+            while (i < aSize && j < bSize) {
+                if (a[i] < b[j]) {
+                    i++;
+                } else if (a[i] > b[j]) {
+                    j++;
+                } else {
+                    a[count++] = a[i];
+                    i++;
+                    j++;
+                }
+            }
+            return count;
+        }
+    }
+}
@@ -15,6 +15,8 @@
  */
 package greendroid.widget;
 
+import greendroid.util.GDUtils;
+import greendroid.widget.ItemDiff.ItemComparator;
 import greendroid.widget.item.DescriptionItem;
 import greendroid.widget.item.DrawableItem;
 import greendroid.widget.item.Item;
@@ -26,10 +28,15 @@ import greendroid.widget.item.SubtitleItem;
 import greendroid.widget.item.TextItem;
 import greendroid.widget.item.ThumbnailItem;
 import greendroid.widget.itemview.ItemView;
+import greendroid.widget.itemview.ItemViewFactory;
 
 import java.io.IOException;
+import java.lang.ref.WeakReference;
+import java.text.CollationKey;
+import java.text.Collator;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collection;
 import java.util.Collections;
 import java.util.Comparator;
 import java.util.HashMap;
@@ -40,11 +47,15 @@ import org.xmlpull.v1.XmlPullParserException;
 
 import android.content.Context;
 import android.content.res.Resources;
+import android.content.res.XmlResourceParser;
+import android.os.Handler;
 import android.util.AttributeSet;
 import android.util.Xml;
 import android.view.View;
 import android.view.ViewGroup;
+import android.widget.AdapterView;
 import android.widget.BaseAdapter;
+import android.widget.SectionIndexer;
 
 /**
  * <p>
@@ -59,29 +70,175 @@ import android.widget.BaseAdapter;
  * {@link #setNotifyOnChange(boolean)} method.
  * </p>
  * <p>
+ * Several modifications may be grouped using {@link #beginBatch()} and
+ * {@link #endBatch()} so that the ListView is notified only once. When only
+ * the content of some items changed (see {@link #replace(Item, int)} and
+ * {@link #notifyItemRangeChanged(int, int)}), only the visible rows displaying
+ * those items are rebound. Large lists may be updated using
+ * {@link #updateItems(List, ItemComparator)} which computes the minimal set of
+ * changes on a background thread.
+ * </p>
+ * <p>
+ * An ItemAdapter is also a SectionIndexer: each {@link SeparatorItem} starts
+ * a new section whose name is the text of the separator. The section index is
+ * updated incrementally by the modification methods of the ItemAdapter and
+ * allows the fast scroller to jump between sections of very long lists. Items
+ * added to or removed from the underlying list without using the ItemAdapter
+ * are not taken into account.
+ * </p>
+ * <p>
  * Finally, an ItemAdapter can be created via XML code using the
  * {@link #createFromXml(Context, int)} method. This is a very powerful feature
  * when you want to display static data or if you want to pre-populate your
- * ItemAdapter.
+ * ItemAdapter. Custom Items may be used in XML files once an
+ * {@link ItemFactory} has been registered for their tag using
+ * {@link #registerItemFactory(String, ItemFactory)}.
  * </p>
  * 
  * @author Cyril Mottier
  */
-public class ItemAdapter extends BaseAdapter {
+public class ItemAdapter extends BaseAdapter implements SectionIndexer {
 
-    private static final int DEFAULT_MAX_VIEW_TYPE_COUNT = 10;
+    static final int DEFAULT_MAX_VIEW_TYPE_COUNT = 10;
 
-    private static class TypeInfo {
-        int count;
-        int type;
+    /**
+     * Creates new {@link Item}s for a given XML tag. ItemFactories are
+     * registered using {@link ItemAdapter#registerItemFactory(String, ItemFactory)}.
+     * 
+     * @author Cyril Mottier
+     */
+    public interface ItemFactory {
+
+        /**
+         * Create a new empty Item. The returned Item is then inflated from the
+         * attributes of the XML tag.
+         * 
+         * @return A newly allocated Item
+         */
+        Item newItem();
+    }
+
+    /**
+     * Interface definition for a callback to be invoked when an ItemAdapter
+     * has been inflated on a background thread. Callbacks are invoked on the
+     * UI thread.
+     * 
+     * @see ItemAdapter#createFromXmlAsync(Context, int,
+     *      OnItemAdapterInflatedListener)
+     * 
+     * @author Cyril Mottier
+     */
+    public interface OnItemAdapterInflatedListener {
+
+        /**
+         * Called when the ItemAdapter has been successfully inflated.
+         * 
+         * @param adapter The inflated ItemAdapter
+         */
+        void onItemAdapterInflated(ItemAdapter adapter);
+
+        /**
+         * Called when an error occurred while inflating the ItemAdapter.
+         * 
+         * @param throwable The error
+         */
+        void onInflateFailed(Throwable throwable);
+    }
+
+    /**
+     * Returns the text used to sort Items with a Collator.
+     * 
+     * @author Cyril Mottier
+     * @see ItemAdapter#sortAsync(Collator, SortKeyExtractor)
+     */
+    public interface SortKeyExtractor {
+
+        /**
+         * Return the text of the given Item. This method is called on a
+         * background thread.
+         * 
+         * @param item The Item
+         * @return The text used to sort the Item. Items with a null text are
+         *         placed first.
+         */
+        String getSortKey(Item item);
+    }
+
+    private static final HashMap<String, ItemFactory> sItemFactories = new HashMap<String, ItemFactory>();
+
+    static {
+        registerItemFactory("text-item", new ItemFactory() {
+            public Item newItem() {
+                return new TextItem();
+            }
+        });
+        registerItemFactory("longtext-item", new ItemFactory() {
+            public Item newItem() {
+                return new LongTextItem();
+            }
+        });
+        registerItemFactory("description-item", new ItemFactory() {
+            public Item newItem() {
+                return new DescriptionItem();
+            }
+        });
+        registerItemFactory("separator-item", new ItemFactory() {
+            public Item newItem() {
+                return new SeparatorItem();
+            }
+        });
+        registerItemFactory("progress-item", new ItemFactory() {
+            public Item newItem() {
+                return new ProgressItem();
+            }
+        });
+        registerItemFactory("drawable-item", new ItemFactory() {
+            public Item newItem() {
+                return new DrawableItem();
+            }
+        });
+        registerItemFactory("subtitle-item", new ItemFactory() {
+            public Item newItem() {
+                return new SubtitleItem();
+            }
+        });
+        registerItemFactory("subtext-item", new ItemFactory() {
+            public Item newItem() {
+                return new SubtextItem();
+            }
+        });
+        registerItemFactory("thumbnail-item", new ItemFactory() {
+            public Item newItem() {
+                return new ThumbnailItem();
+            }
+        });
     }
 
     private List<Item> mItems;
-    private HashMap<Class<? extends Item>, TypeInfo> mTypes;
+    private ViewTypeRegistry mTypes;
     private Context mContext;
 
     private boolean mNotifyOnChange;
-    private int mMaxViewTypeCount;
+
+    private int mBatchDepth;
+    private boolean mPendingDataSetChange;
+    private int mPendingChangeStart = -1;
+    private int mPendingChangeEnd;
+
+    private ItemViewFactory mItemViewFactory;
+    private ItemViewPool mItemViewPool;
+    private WeakReference<ViewGroup> mParent;
+    private Handler mHandler;
+    private int mModCount;
+    private int mUpdateGeneration;
+    private int mSortGeneration;
+
+    private final SectionIndex mSectionIndex = new SectionIndex(new SectionIndex.Callback() {
+        public boolean isSectionStart(int position) {
+            return mItems.get(position) instanceof SeparatorItem;
+        }
+    });
+    private Object[] mSections;
 
     /**
      * Constructs an empty ItemAdapter.
@@ -162,46 +319,30 @@ public class ItemAdapter extends BaseAdapter {
     public ItemAdapter(Context context, List<Item> items, int maxViewTypeCount) {
         mContext = context;
         mItems = items;
-        mTypes = new HashMap<Class<? extends Item>, TypeInfo>();
-        mMaxViewTypeCount = Integer.MAX_VALUE;
+        mTypes = new ViewTypeRegistry();
 
         for (Item item : mItems) {
-            addItem(item);
+            registerType(item);
         }
 
-        mMaxViewTypeCount = Math.max(1, Math.max(mTypes.size(), maxViewTypeCount));
-    }
-
-    private void addItem(Item item) {
-        final Class<? extends Item> klass = item.getClass();
-        TypeInfo info = mTypes.get(klass);
-
-        if (info == null) {
-            final int type = mTypes.size();
-            if (type >= mMaxViewTypeCount) {
-                throw new RuntimeException("This ItemAdapter may handle only " + mMaxViewTypeCount + " different view types.");
-            }
-            final TypeInfo newInfo = new TypeInfo();
-            newInfo.count = 1;
-            newInfo.type = type;
-            mTypes.put(klass, newInfo);
-        } else {
-            info.count++;
-        }
+        mTypes.setMaxViewTypeCount(maxViewTypeCount);
     }
 
-    private void removeItem(Item item) {
-        final Class<? extends Item> klass = item.getClass();
-        TypeInfo info = mTypes.get(klass);
+    /**
+     * Return the view type of the given Item, assigning a new view type to its
+     * class if needed. View types are permanent: once a class has been given a
+     * view type, it keeps it for the lifetime of this ItemAdapter (even if all
+     * items of that class are removed). This ensures two classes can never
+     * share a view type and recycled views are always given to items of the
+     * correct class. The view type is also cached on the Item itself.
+     */
+    private int registerType(Item item) {
+        final int type = mTypes.getViewType(item.getClass());
 
-        if (info != null) {
-            info.count--;
-            if (info.count == 0) {
-                // TODO cyril: Creating a pool to keep all TypeInfo instances
-                // could be a great idea in the future.
-                mTypes.remove(klass);
-            }
-        }
+        // The type registry identifies this ItemAdapter. It is used rather
+        // than the ItemAdapter itself so that items don't leak the Context.
+        item.setViewType(mTypes, type);
+        return type;
     }
 
     /**
@@ -216,7 +357,8 @@ public class ItemAdapter extends BaseAdapter {
 
     /**
      * Returns the current number of different views types used in this
-     * ItemAdapter. Having a <em>getCurrentViewTypeCount</em> equal to
+     * ItemAdapter. View types are never released so this value never
+     * decreases. Having a <em>getCurrentViewTypeCount</em> equal to
      * <em>getViewTypeCount</em> means you won't be able to add a new type of
      * view in this adapter (The Adapter class doesn't allow variable view type
      * count).
@@ -234,10 +376,18 @@ public class ItemAdapter extends BaseAdapter {
      */
     public void add(Item item) {
         mItems.add(item);
-        addItem(item);
-        if (mNotifyOnChange) {
-            notifyDataSetChanged();
-        }
+        registerType(item);
+        onItemsInserted(mItems.size() - 1, 1);
+        onStructureChanged();
+    }
+
+    /**
+     * Adds the specified items at the end of the array.
+     * 
+     * @param items The items to add at the end of the array.
+     */
+    public void addAll(Collection<? extends Item> items) {
+        insertRange(items, mItems.size());
     }
 
     /**
@@ -248,10 +398,27 @@ public class ItemAdapter extends BaseAdapter {
      */
     public void insert(Item item, int index) {
         mItems.add(index, item);
-        addItem(item);
-        if (mNotifyOnChange) {
-            notifyDataSetChanged();
+        registerType(item);
+        onItemsInserted(index, 1);
+        onStructureChanged();
+    }
+
+    /**
+     * Inserts the specified items at the specified index in the array.
+     * 
+     * @param items The items to insert into the array.
+     * @param index The index at which the items must be inserted.
+     */
+    public void insertRange(Collection<? extends Item> items, int index) {
+        if (items.isEmpty()) {
+            return;
+        }
+        for (Item item : items) {
+            registerType(item);
         }
+        mItems.addAll(index, items);
+        onItemsInserted(index, items.size());
+        onStructureChanged();
     }
 
     /**
@@ -260,23 +427,73 @@ public class ItemAdapter extends BaseAdapter {
      * @param item The object to remove.
      */
     public void remove(Item item) {
-        if (mItems.remove(item)) {
-            removeItem(item);
-            if (mNotifyOnChange) {
-                notifyDataSetChanged();
-            }
+        final int index = mItems.indexOf(item);
+        if (index >= 0) {
+            mItems.remove(index);
+            onItemsRemoved(index, 1);
+            onStructureChanged();
+        }
+    }
+
+    /**
+     * Removes the items from index <em>start</em> (inclusive) to index
+     * <em>end</em> (exclusive).
+     * 
+     * @param start The index of the first item to remove.
+     * @param end The index after the last item to remove.
+     */
+    public void removeRange(int start, int end) {
+        if (start < end) {
+            mItems.subList(start, end).clear();
+            onItemsRemoved(start, end - start);
+            onStructureChanged();
+        }
+    }
+
+    /**
+     * Moves the item at the given index to a new index.
+     * 
+     * @param from The current index of the item.
+     * @param to The index of the item once moved.
+     */
+    public void move(int from, int to) {
+        if (from != to) {
+            mItems.add(to, mItems.remove(from));
+            onItemsRemoved(from, 1);
+            onItemsInserted(to, 1);
+            onStructureChanged();
+        }
+    }
+
+    /**
+     * Replaces the item at the specified index. When both items use the same
+     * type of view, only the row displaying the item is rebound.
+     * 
+     * @param item The new item.
+     * @param index The index of the item to replace.
+     */
+    public void replace(Item item, int index) {
+        final Item oldItem = mItems.set(index, item);
+        if (oldItem instanceof SeparatorItem || item instanceof SeparatorItem) {
+            onItemsRemoved(index, 1);
+            onItemsInserted(index, 1);
+        }
+        if (registerType(oldItem) == registerType(item)) {
+            onContentChanged(index, index + 1);
+        } else {
+            onStructureChanged();
         }
     }
 
     /**
-     * Remove all elements from the list.
+     * Remove all elements from the list. The view types that have already been
+     * assigned are kept.
      */
     public void clear() {
         mItems.clear();
-        mTypes.clear();
-        if (mNotifyOnChange) {
-            notifyDataSetChanged();
-        }
+        mSectionIndex.reset();
+        mSections = null;
+        onStructureChanged();
     }
 
     /**
@@ -287,15 +504,344 @@ public class ItemAdapter extends BaseAdapter {
      */
     public void sort(Comparator<? super Item> comparator) {
         Collections.sort(mItems, comparator);
-        if (mNotifyOnChange) {
+        invalidateSections();
+        onStructureChanged();
+    }
+
+    /**
+     * Sorts the content of this adapter on a background thread using the
+     * specified comparator. Large lists are sorted concurrently by several
+     * threads. The sorted content replaces the current one on the UI thread
+     * and the ListView is notified once. The result is discarded if the
+     * adapter is modified before the sort completes.
+     * 
+     * @param comparator The comparator used to sort the objects contained in
+     *            this adapter. It must be thread-safe.
+     */
+    public void sortAsync(final Comparator<? super Item> comparator) {
+        final Item[] items = mItems.toArray(new Item[mItems.size()]);
+        startAsyncSort(new Runnable() {
+            public void run() {
+                ParallelSorter.sort(items, comparator, GDUtils.getExecutor(mContext));
+            }
+        }, items);
+    }
+
+    /**
+     * Sorts the content of this adapter on a background thread according to
+     * the rules of the given Collator. The collation keys of all Items are
+     * computed once prior sorting which makes locale-aware sorting of large
+     * lists much cheaper than comparing Strings with a Collator.
+     * 
+     * @param collator The Collator defining the order of the texts. It is
+     *            cloned prior being used.
+     * @param extractor The {@link SortKeyExtractor} returning the text of
+     *            the Items
+     * @see #sortAsync(Comparator)
+     */
+    public void sortAsync(Collator collator, final SortKeyExtractor extractor) {
+        // Collators are not thread-safe
+        final Collator sortCollator = (Collator) collator.clone();
+        final Item[] items = mItems.toArray(new Item[mItems.size()]);
+
+        startAsyncSort(new Runnable() {
+            public void run() {
+                final int count = items.length;
+                final CollationKey[] keys = new CollationKey[count];
+                final Integer[] order = new Integer[count];
+                for (int i = 0; i < count; i++) {
+                    final String key = extractor.getSortKey(items[i]);
+                    keys[i] = (key == null) ? null : sortCollator.getCollationKey(key);
+                    order[i] = i;
+                }
+
+                ParallelSorter.sort(order, new Comparator<Integer>() {
+                    public int compare(Integer i1, Integer i2) {
+                        final CollationKey k1 = keys[i1];
+                        final CollationKey k2 = keys[i2];
+                        if (k1 == null || k2 == null) {
+                            return (k1 == null) ? ((k2 == null) ? 0 : -1) : 1;
+                        }
+                        return k1.compareTo(k2);
+                    }
+                }, GDUtils.getExecutor(mContext));
+
+                final Item[] unsorted = items.clone();
+                for (int i = 0; i < count; i++) {
+                    items[i] = unsorted[order[i]];
+                }
+            }
+        }, items);
+    }
+
+    /**
+     * Run the given sort on a background thread and swap the sorted items in
+     * on the UI thread, unless the adapter has been modified in the meantime.
+     */
+    private void startAsyncSort(final Runnable sort, final Item[] items) {
+        if (mHandler == null) {
+            mHandler = new Handler();
+        }
+
+        final int generation = ++mSortGeneration;
+        final int modCount = mModCount;
+
+        GDUtils.getExecutor(mContext).execute(new Runnable() {
+            public void run() {
+                sort.run();
+                mHandler.post(new Runnable() {
+                    public void run() {
+                        if (generation != mSortGeneration || modCount != mModCount) {
+                            // The adapter changed: the sorted snapshot is stale
+                            return;
+                        }
+                        for (int i = 0; i < items.length; i++) {
+                            mItems.set(i, items[i]);
+                        }
+                        invalidateSections();
+                        mModCount++;
+                        if (mBatchDepth > 0) {
+                            mPendingDataSetChange = true;
+                        } else {
+                            // The caller can't know when the sort completes:
+                            // always notify, whatever setNotifyOnChange says
+                            notifyDataSetChanged();
+                        }
+                    }
+                });
+            }
+        });
+    }
+
+    /**
+     * Starts a batch of modifications. Until the matching call to
+     * {@link #endBatch()}, modifications don't notify the ListView. Batches
+     * may be nested.
+     */
+    public void beginBatch() {
+        mBatchDepth++;
+    }
+
+    /**
+     * Ends a batch of modifications started with {@link #beginBatch()}. When
+     * the outermost batch ends, the ListView is notified once of all the
+     * modifications made during the batch.
+     */
+    public void endBatch() {
+        if (mBatchDepth == 0) {
+            throw new IllegalStateException("endBatch() called without a matching beginBatch()");
+        }
+        if (--mBatchDepth > 0) {
+            return;
+        }
+
+        if (mPendingDataSetChange) {
+            mPendingDataSetChange = false;
+            mPendingChangeStart = -1;
+            notifyDataSetChanged();
+        } else if (mPendingChangeStart >= 0) {
+            final int start = mPendingChangeStart;
+            mPendingChangeStart = -1;
+            rebindItems(start, mPendingChangeEnd);
+        }
+    }
+
+    /**
+     * Notifies the ListView that the content of some items changed (but not
+     * their type nor their position). Only the visible rows displaying those
+     * items are rebound.
+     * 
+     * @param start The index of the first changed item.
+     * @param count The number of changed items.
+     */
+    public void notifyItemRangeChanged(int start, int count) {
+        mModCount++;
+        if (mBatchDepth > 0) {
+            addPendingChange(start, start + count);
+        } else {
+            rebindItems(start, start + count);
+        }
+    }
+
+    /**
+     * Replaces the content of this adapter with the given items. The minimal
+     * set of changes is computed on a background thread and applied on the UI
+     * thread as a single batch. If the content of the adapter is modified
+     * before the changes are applied, they are computed again.
+     * 
+     * @param items The new items
+     * @param comparator The {@link ItemComparator} used to identify items
+     *            present in both the current and the new content
+     */
+    public void updateItems(List<Item> items, final ItemComparator comparator) {
+        if (mHandler == null) {
+            mHandler = new Handler();
+        }
+
+        final int generation = ++mUpdateGeneration;
+        final int modCount = mModCount;
+        final List<Item> oldItems = new ArrayList<Item>(mItems);
+        final List<Item> newItems = new ArrayList<Item>(items);
+
+        GDUtils.getExecutor(mContext).execute(new Runnable() {
+            public void run() {
+                final ItemDiff diff = ItemDiff.compute(oldItems, newItems, comparator);
+                mHandler.post(new Runnable() {
+                    public void run() {
+                        if (generation != mUpdateGeneration) {
+                            // A more recent update is on its way
+                            return;
+                        }
+                        if (modCount != mModCount) {
+                            updateItems(newItems, comparator);
+                            return;
+                        }
+                        diff.applyTo(ItemAdapter.this);
+                    }
+                });
+            }
+        });
+    }
+
+    public Object[] getSections() {
+        ensureSections();
+        if (mSections == null) {
+            final int count = mSectionIndex.getCount();
+            final Object[] sections = new Object[count];
+            for (int i = 0; i < count; i++) {
+                final String text = ((SeparatorItem) mItems.get(mSectionIndex.getPosition(i))).text;
+                sections[i] = (text == null) ? "" : text;
+            }
+            mSections = sections;
+        }
+        return mSections;
+    }
+
+    public int getPositionForSection(int section) {
+        ensureSections();
+        return mSectionIndex.getPositionForSection(section);
+    }
+
+    public int getSectionForPosition(int position) {
+        ensureSections();
+        return mSectionIndex.getSectionForPosition(position);
+    }
+
+    /**
+     * Force the section index to be rebuilt. This must be called by
+     * subclasses modifying the underlying list of items directly.
+     */
+    void invalidateSections() {
+        mSectionIndex.invalidate();
+    }
+
+    private void ensureSections() {
+        if (mSectionIndex.ensure(mItems.size())) {
+            mSections = null;
+        }
+    }
+
+    /**
+     * Update the section index once <em>count</em> items have been inserted
+     * at the given index.
+     */
+    private void onItemsInserted(int index, int count) {
+        if (mSectionIndex.onItemsInserted(index, count)) {
+            mSections = null;
+        }
+    }
+
+    /**
+     * Update the section index once <em>count</em> items have been removed
+     * from the given index.
+     */
+    private void onItemsRemoved(int index, int count) {
+        if (mSectionIndex.onItemsRemoved(index, count)) {
+            mSections = null;
+        }
+    }
+
+    private void onStructureChanged() {
+        mModCount++;
+        if (mBatchDepth > 0) {
+            mPendingDataSetChange = true;
+        } else if (mNotifyOnChange) {
             notifyDataSetChanged();
         }
     }
 
+    private void onContentChanged(int start, int end) {
+        mModCount++;
+        if (mBatchDepth > 0) {
+            addPendingChange(start, end);
+        } else if (mNotifyOnChange) {
+            rebindItems(start, end);
+        }
+    }
+
+    private void addPendingChange(int start, int end) {
+        if (mPendingChangeStart < 0) {
+            mPendingChangeStart = start;
+            mPendingChangeEnd = end;
+        } else {
+            mPendingChangeStart = Math.min(mPendingChangeStart, start);
+            mPendingChangeEnd = Math.max(mPendingChangeEnd, end);
+        }
+    }
+
+    /**
+     * Rebinds the visible rows displaying the items from index <em>start</em>
+     * to <em>end</em> (exclusive). A regular notifyDataSetChanged() is used
+     * when the rows can't be found: ListView may wrap this adapter (to add
+     * headers for instance), making positions unreliable.
+     */
+    private void rebindItems(int start, int end) {
+        final ViewGroup parent = (mParent == null) ? null : mParent.get();
+        if (!(parent instanceof AdapterView<?>) || ((AdapterView<?>) parent).getAdapter() != this) {
+            notifyDataSetChanged();
+            return;
+        }
+
+        final AdapterView<?> adapterView = (AdapterView<?>) parent;
+        final int firstPosition = adapterView.getFirstVisiblePosition();
+        final int from = Math.max(start, firstPosition);
+        final int to = Math.min(end, Math.min(mItems.size(), firstPosition + adapterView.getChildCount()));
+
+        for (int position = from; position < to; position++) {
+            final View child = adapterView.getChildAt(position - firstPosition);
+            if (child instanceof ItemView) {
+                ((ItemView) child).setObject(mItems.get(position));
+            }
+        }
+    }
+
+    /**
+     * Set the {@link ItemViewFactory} used to create ItemViews. This must be
+     * done before the ItemAdapter is given to a ListView.
+     * 
+     * @param factory The ItemViewFactory to use or null to use the default
+     *            ItemViews of the Items
+     * @see greendroid.widget.itemview.FlatItemViewFactory
+     */
+    public void setItemViewFactory(ItemViewFactory factory) {
+        mItemViewFactory = factory;
+    }
+
+    /**
+     * Set the {@link ItemViewPool} in which new ItemViews are looked for
+     * before being inflated. A pool may be shared by several ItemAdapters.
+     * 
+     * @param pool The ItemViewPool to use or null to always inflate new
+     *            ItemViews
+     */
+    public void setItemViewPool(ItemViewPool pool) {
+        mItemViewPool = pool;
+    }
+
     /**
      * Control whether methods that change the list ({@link #add},
-     * {@link #insert}, {@link #remove}, {@link #clear}) automatically call
-     * notifyDataSetChanged(). If set to false, caller must manually call
+     * {@link #insert}, {@link #remove}, {@link #clear} and their range
+     * equivalents) automatically call notifyDataSetChanged(). If set to false, caller must manually call
      * notifyDataSetChanged() to have the changes reflected in the attached
      * view. The default is true, and calling notifyDataSetChanged() resets the
      * flag to true.
@@ -307,6 +853,21 @@ public class ItemAdapter extends BaseAdapter {
         mNotifyOnChange = notifyOnChange;
     }
 
+    /**
+     * Register the {@link ItemFactory} used to create Items for the given XML
+     * tag. This makes it possible to use custom Items in XML files given to
+     * {@link #createFromXml(Context, int)}. Registering a factory for a tag
+     * that already has one replaces the previous factory.
+     * 
+     * @param tagName The name of the XML tag (for instance "text-item")
+     * @param factory The {@link ItemFactory} creating Items for that tag
+     */
+    public static void registerItemFactory(String tagName, ItemFactory factory) {
+        synchronized (sItemFactories) {
+            sItemFactories.put(tagName, factory);
+        }
+    }
+
     /**
      * Creates an ItemAdapter from a given resource ID
      * 
@@ -335,6 +896,53 @@ public class ItemAdapter extends BaseAdapter {
      * @throws IOException
      */
     public static ItemAdapter createFromXml(Context context, XmlPullParser parser) throws XmlPullParserException, IOException {
+        return new ItemAdapter(context, inflateItems(context, parser));
+    }
+
+    /**
+     * Creates an ItemAdapter from a given resource ID on a background thread.
+     * Inflating a large XML file may take a while: this method prevents it
+     * from blocking the UI thread. The ItemAdapter is given to the listener on
+     * the UI thread.
+     * 
+     * @param context The Context in which the ItemAdapter will be used in
+     * @param xmlId The resource ID of an XML file that describes a set of
+     *            {@link Item}
+     * @param listener The listener notified once the ItemAdapter is ready
+     */
+    public static void createFromXmlAsync(final Context context, final int xmlId, final OnItemAdapterInflatedListener listener) {
+        final Handler handler = new Handler();
+
+        GDUtils.getExecutor(context).execute(new Runnable() {
+            public void run() {
+                List<Item> items = null;
+                Throwable error = null;
+
+                final XmlResourceParser parser = context.getResources().getXml(xmlId);
+                try {
+                    items = inflateItems(context, parser);
+                } catch (Exception e) {
+                    error = e;
+                } finally {
+                    parser.close();
+                }
+
+                final List<Item> result = items;
+                final Throwable throwable = error;
+                handler.post(new Runnable() {
+                    public void run() {
+                        if (result != null) {
+                            listener.onItemAdapterInflated(new ItemAdapter(context, result));
+                        } else {
+                            listener.onInflateFailed(throwable);
+                        }
+                    }
+                });
+            }
+        });
+    }
+
+    private static List<Item> inflateItems(Context context, XmlPullParser parser) throws XmlPullParserException, IOException {
         AttributeSet attrs = Xml.asAttributeSet(parser);
 
         int type;
@@ -365,42 +973,23 @@ public class ItemAdapter extends BaseAdapter {
                 continue;
             }
 
-            String name = parser.getName();
-            Item item;
-            if (name.equals("text-item")) {
-                item = new TextItem();
-            } else if (name.equals("longtext-item")) {
-                item = new LongTextItem();
-            } else if (name.equals("description-item")) {
-                item = new DescriptionItem();
-            } else if (name.equals("separator-item")) {
-                item = new SeparatorItem();
-            } else if (name.equals("progress-item")) {
-                item = new ProgressItem();
-            } else if (name.equals("drawable-item")) {
-                item = new DrawableItem();
-            } else if (name.equals("subtitle-item")) {
-                item = new SubtitleItem();
-            } else if (name.equals("subtext-item")) {
-                item = new SubtextItem();
-            } else if (name.equals("thumbnail-item")) {
-                item = new ThumbnailItem();
-            } else {
-                // TODO cyril: Remove that so that we can extend from
-                // ItemAdapter and creates our own items via XML?
+            final String name = parser.getName();
+            final ItemFactory factory;
+            synchronized (sItemFactories) {
+                factory = sItemFactories.get(name);
+            }
+            if (factory == null) {
                 throw new XmlPullParserException(parser.getPositionDescription() + ": invalid item tag " + name);
             }
 
-            // TODO cyril: Here we should call a method that children may
-            // override to be able to create our own Items
-
+            final Item item = factory.newItem();
             if (item != null) {
                 item.inflate(r, parser, attrs);
                 items.add(item);
             }
         }
 
-        return new ItemAdapter(context, items);
+        return items;
     }
 
     public int getCount() {
@@ -417,7 +1006,9 @@ public class ItemAdapter extends BaseAdapter {
 
     @Override
     public int getItemViewType(int position) {
-        return mTypes.get(getItem(position).getClass()).type;
+        final Item item = (Item) getItem(position);
+        final int type = item.getViewType(mTypes);
+        return (type != Item.NO_VIEW_TYPE) ? type : registerType(item);
     }
 
     @Override
@@ -427,7 +1018,7 @@ public class ItemAdapter extends BaseAdapter {
 
     @Override
     public int getViewTypeCount() {
-        return mMaxViewTypeCount;
+        return mTypes.getMaxViewTypeCount();
     }
 
     public View getView(int position, View convertView, ViewGroup parent) {
@@ -435,6 +1026,20 @@ public class ItemAdapter extends BaseAdapter {
         final Item item = (Item) getItem(position);
         ItemView cell = (ItemView) convertView;
 
+        // Keeps track of the AdapterView so that changed rows can be rebound
+        if (mParent == null || mParent.get() != parent) {
+            mParent = new WeakReference<ViewGroup>(parent);
+        }
+
+        if (cell == null && mItemViewFactory != null) {
+            cell = mItemViewFactory.newItemView(item, mContext, parent);
+            if (cell != null) {
+                cell.prepareItemView();
+            }
+        }
+        if (cell == null && mItemViewPool != null) {
+            cell = mItemViewPool.obtain(item);
+        }
         if (cell == null) {
             cell = item.newView(mContext, null);
             cell.prepareItemView();
@@ -0,0 +1,278 @@
+/*
+ * Copyright (C) 2011 Cyril Mottier (http://www.cyrilmottier.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package greendroid.widget;
+
+import greendroid.widget.item.Item;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * <p>
+ * An {@link ItemDiff} is the minimal edit script transforming a list of
+ * {@link Item}s into another one. It is computed using the linear space
+ * variant of the Myers' difference algorithm which runs in O((N+M)D) where N
+ * and M are the sizes of the lists and D the number of inserted and removed
+ * items. As a result, computing the difference between two large but similar
+ * lists is cheap.
+ * </p>
+ * <p>
+ * Lists that have little in common are not worth diffing: when more than
+ * {@value #MAX_EDIT_DISTANCE} items are inserted or removed, the computation
+ * is aborted and the resulting {@link ItemDiff} simply replaces all items.
+ * </p>
+ * <p>
+ * Items present in both lists are identified using an {@link ItemComparator}.
+ * Identical items whose content changed are reported as changes so that they
+ * can be rebound without being recreated. Computing an {@link ItemDiff} only
+ * depends on the given lists and may be done on a background thread (see
+ * {@link ItemAdapter#updateItems(List, ItemComparator)}).
+ * </p>
+ * 
+ * @author Cyril Mottier
+ */
+public final class ItemDiff {
+
+    /**
+     * Identifies items present in both lists of a {@link ItemDiff}.
+     * 
+     * @author Cyril Mottier
+     */
+    public interface ItemComparator {
+
+        /**
+         * Return true if the given items represent the same entity (for
+         * instance, if they have the same identifier).
+         * 
+         * @param oldItem An item of the old list
+         * @param newItem An item of the new list
+         * @return true if both items represent the same entity
+         */
+        boolean areItemsTheSame(Item oldItem, Item newItem);
+
+        /**
+         * Return true if the given items, already known to represent the same
+         * entity, are displayed identically.
+         * 
+         * @param oldItem An item of the old list
+         * @param newItem An item of the new list
+         * @return true if the old item doesn't need to be replaced
+         */
+        boolean areContentsTheSame(Item oldItem, Item newItem);
+    }
+
+    /**
+     * The maximum number of inserted and removed items above which the old
+     * items are simply replaced by the new ones.
+     */
+    public static final int MAX_EDIT_DISTANCE = 2000;
+
+    private static final int REMOVE = 0;
+    private static final int INSERT = 1;
+    private static final int CHANGE = 2;
+
+    private static class Operation {
+        int type;
+        int position;
+        int count;
+        List<Item> items;
+    }
+
+    private final ArrayList<Operation> mOperations = new ArrayList<Operation>();
+    private int mRemovedCount;
+    private int mInsertedCount;
+    private int mChangedCount;
+
+    private ItemDiff() {
+    }
+
+    /**
+     * Compute the edit script transforming <em>oldItems</em> into
+     * <em>newItems</em>. None of the given lists are modified.
+     * 
+     * @param oldItems The current list of items
+     * @param newItems The new list of items
+     * @param comparator The {@link ItemComparator} used to match items
+     * @return The resulting {@link ItemDiff}
+     */
+    public static ItemDiff compute(final List<Item> oldItems, final List<Item> newItems, final ItemComparator comparator) {
+        final int oldSize = oldItems.size();
+        final int newSize = newItems.size();
+
+        // Index of the matching new item for each old item (or -1)
+        final int[] oldMatches = new int[oldSize];
+        final boolean[] newMatched = new boolean[newSize];
+        final MyersDiff.Callback callback = new MyersDiff.Callback() {
+            public boolean areItemsTheSame(int oldPosition, int newPosition) {
+                return comparator.areItemsTheSame(oldItems.get(oldPosition), newItems.get(newPosition));
+            }
+        };
+
+        final ItemDiff diff = new ItemDiff();
+        if (!MyersDiff.match(oldSize, newSize, callback, MAX_EDIT_DISTANCE, oldMatches, newMatched)) {
+            diff.replaceAll(oldSize, newItems);
+            return diff;
+        }
+
+        int oldIndex = 0;
+        int newIndex = 0;
+        int position = 0;
+
+        while (oldIndex < oldSize || newIndex < newSize) {
+            if (oldIndex < oldSize && oldMatches[oldIndex] < 0) {
+                diff.add(REMOVE, position, null);
+                diff.mRemovedCount++;
+                oldIndex++;
+            } else if (newIndex < newSize && !newMatched[newIndex]) {
+                diff.add(INSERT, position, newItems.get(newIndex));
+                diff.mInsertedCount++;
+                newIndex++;
+                position++;
+            } else {
+                final Item newItem = newItems.get(newIndex);
+                if (!comparator.areContentsTheSame(oldItems.get(oldIndex), newItem)) {
+                    diff.add(CHANGE, position, newItem);
+                    diff.mChangedCount++;
+                }
+                oldIndex++;
+                newIndex++;
+                position++;
+            }
+        }
+
+        return diff;
+    }
+
+    /**
+     * Return the number of removed items.
+     * 
+     * @return The number of items only present in the old list
+     */
+    public int getRemovedCount() {
+        return mRemovedCount;
+    }
+
+    /**
+     * Return the number of inserted items.
+     * 
+     * @return The number of items only present in the new list
+     */
+    public int getInsertedCount() {
+        return mInsertedCount;
+    }
+
+    /**
+     * Return the number of changed items.
+     * 
+     * @return The number of items present in both lists whose content changed
+     */
+    public int getChangedCount() {
+        return mChangedCount;
+    }
+
+    /**
+     * Return true if both lists were identical.
+     * 
+     * @return true if this ItemDiff contains no operation
+     */
+    public boolean isEmpty() {
+        return mOperations.size() == 0;
+    }
+
+    /**
+     * Apply this edit script to the given {@link ItemAdapter}. The content of
+     * the adapter must be equal to the old list given to
+     * {@link #compute(List, List, ItemComparator)}. All operations are batched
+     * so that the adapter is notified only once. When the structure of the
+     * list is unchanged, only the changed rows are rebound.
+     * 
+     * @param adapter The {@link ItemAdapter} to modify
+     */
+    public void applyTo(ItemAdapter adapter) {
+        adapter.beginBatch();
+        try {
+            final int count = mOperations.size();
+            for (int i = 0; i < count; i++) {
+                final Operation operation = mOperations.get(i);
+                switch (operation.type) {
+                    case REMOVE:
+                        adapter.removeRange(operation.position, operation.position + operation.count);
+                        break;
+                    case INSERT:
+                        adapter.insertRange(operation.items, operation.position);
+                        break;
+                    case CHANGE:
+                        for (int j = 0; j < operation.count; j++) {
+                            adapter.replace(operation.items.get(j), operation.position + j);
+                        }
+                        break;
+                }
+            }
+        } finally {
+            adapter.endBatch();
+        }
+    }
+
+    /**
+     * Make this edit script remove all old items and insert all new ones.
+     */
+    private void replaceAll(int oldSize, List<Item> newItems) {
+        if (oldSize > 0) {
+            final Operation remove = new Operation();
+            remove.type = REMOVE;
+            remove.count = oldSize;
+            mOperations.add(remove);
+            mRemovedCount = oldSize;
+        }
+        if (!newItems.isEmpty()) {
+            final Operation insert = new Operation();
+            insert.type = INSERT;
+            insert.count = newItems.size();
+            insert.items = new ArrayList<Item>(newItems);
+            mOperations.add(insert);
+            mInsertedCount = newItems.size();
+        }
+    }
+
+    /**
+     * Append an operation to the edit script, merging it with the previous
+     * one when possible.
+     */
+    private void add(int type, int position, Item item) {
+        final int size = mOperations.size();
+        final Operation last = (size == 0) ? null : mOperations.get(size - 1);
+
+        if (last != null && last.type == type) {
+            if ((type == REMOVE && last.position == position) || (type != REMOVE && last.position + last.count == position)) {
+                last.count++;
+                if (item != null) {
+                    last.items.add(item);
+                }
+                return;
+            }
+        }
+
+        final Operation operation = new Operation();
+        operation.type = type;
+        operation.position = position;
+        operation.count = 1;
+        if (item != null) {
+            operation.items = new ArrayList<Item>();
+            operation.items.add(item);
+        }
+        mOperations.add(operation);
+    }
+}
@@ -0,0 +1,203 @@
+/*
+ * Copyright (C) 2011 Cyril Mottier (http://www.cyrilmottier.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package greendroid.widget;
+
+import greendroid.util.Config;
+import greendroid.widget.item.Item;
+import greendroid.widget.itemview.ItemView;
+
+import java.util.HashMap;
+import java.util.LinkedList;
+
+import android.content.Context;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.MessageQueue;
+import android.util.Log;
+
+/**
+ * <p>
+ * A pool of ready-to-use {@link ItemView}s. Inflating an ItemView is
+ * expensive: when a ListView is displayed for the first time (or when a new
+ * type of Item becomes visible) all of the visible ItemViews have to be
+ * inflated at once. An ItemViewPool inflates ItemViews in advance, while the
+ * UI thread is idle, so that they are immediately available to the
+ * {@link ItemAdapter}s using the pool (see
+ * {@link ItemAdapter#setItemViewPool(ItemViewPool)}).
+ * </p>
+ * <p>
+ * A single pool may be shared by several ItemAdapters (in different tabs of
+ * the same Activity for instance). As ItemViews reference their Context, an
+ * ItemViewPool must not outlive the Activity it has been created with.
+ * </p>
+ * 
+ * @author Cyril Mottier
+ */
+public class ItemViewPool implements MessageQueue.IdleHandler {
+
+    private static final String LOG_TAG = ItemViewPool.class.getSimpleName();
+
+    private static class WarmUpRequest {
+        Item prototype;
+        int count;
+    }
+
+    private final Context mContext;
+    private final HashMap<Class<? extends Item>, LinkedList<ItemView>> mViews;
+    private final LinkedList<WarmUpRequest> mRequests;
+    private final Handler mHandler = new Handler();
+    private boolean mIdleHandlerAdded;
+
+    /*
+     * IdleHandlers are only called once each time the MessageQueue becomes
+     * idle. Posting this no-op Runnable makes the queue go idle again.
+     */
+    private final Runnable mWakeUp = new Runnable() {
+        public void run() {
+        }
+    };
+
+    /**
+     * Create a new empty ItemViewPool. This must be done on the UI thread.
+     * 
+     * @param context The Context used to inflate ItemViews
+     */
+    public ItemViewPool(Context context) {
+        mContext = context;
+        mViews = new HashMap<Class<? extends Item>, LinkedList<ItemView>>();
+        mRequests = new LinkedList<WarmUpRequest>();
+    }
+
+    /**
+     * Ask the pool to inflate, during idle time, ItemViews for Items of the
+     * given class. The class must have a public no-argument constructor.
+     * 
+     * @param klass The class of the Items
+     * @param count The number of ItemViews to inflate
+     */
+    public void prewarm(Class<? extends Item> klass, int count) {
+        final Item prototype;
+        try {
+            prototype = klass.newInstance();
+        } catch (Exception e) {
+            throw new IllegalArgumentException(klass.getName() + " can't be instantiated", e);
+        }
+        prewarm(prototype, count);
+    }
+
+    /**
+     * Ask the pool to inflate, during idle time, ItemViews for Items of the
+     * same class as the given Item. ItemViews are created using
+     * {@link Item#newView(Context, android.view.ViewGroup)} on the given Item.
+     * 
+     * @param prototype An Item used to create the ItemViews
+     * @param count The number of ItemViews to inflate
+     */
+    public void prewarm(Item prototype, int count) {
+        if (count <= 0) {
+            return;
+        }
+
+        final WarmUpRequest request = new WarmUpRequest();
+        request.prototype = prototype;
+        request.count = count;
+        mRequests.add(request);
+
+        if (!mIdleHandlerAdded) {
+            mIdleHandlerAdded = true;
+            Looper.myQueue().addIdleHandler(this);
+        }
+    }
+
+    /**
+     * Return a pooled ItemView able to display the given Item.
+     * 
+     * @param item The Item that will be displayed
+     * @return A prepared ItemView or null if the pool contains no ItemView for
+     *         that type of Item
+     */
+    public ItemView obtain(Item item) {
+        final LinkedList<ItemView> views = mViews.get(item.getClass());
+        return (views == null || views.isEmpty()) ? null : views.removeFirst();
+    }
+
+    /**
+     * Return the number of ItemViews currently pooled for the given class of
+     * Items.
+     * 
+     * @param klass The class of the Items
+     * @return The number of available ItemViews
+     */
+    public int getCount(Class<? extends Item> klass) {
+        final LinkedList<ItemView> views = mViews.get(klass);
+        return (views == null) ? 0 : views.size();
+    }
+
+    /**
+     * Remove all pooled ItemViews and cancel all pending warm up requests.
+     */
+    public void clear() {
+        mViews.clear();
+        mRequests.clear();
+        mHandler.removeCallbacks(mWakeUp);
+    }
+
+    /**
+     * Inflate a single ItemView each time the UI thread becomes idle so that
+     * incoming events are not delayed by a long series of inflations. A no-op
+     * message is posted after each inflation so the queue becomes idle again
+     * while some work remains.
+     */
+    public boolean queueIdle() {
+        final WarmUpRequest request = mRequests.peek();
+        if (request == null) {
+            mIdleHandlerAdded = false;
+            return false;
+        }
+
+        if (--request.count <= 0) {
+            mRequests.poll();
+        }
+
+        final Item prototype = request.prototype;
+        try {
+            final ItemView view = prototype.newView(mContext, null);
+            view.prepareItemView();
+
+            LinkedList<ItemView> views = mViews.get(prototype.getClass());
+            if (views == null) {
+                views = new LinkedList<ItemView>();
+                mViews.put(prototype.getClass(), views);
+            }
+            views.add(view);
+        } catch (RuntimeException e) {
+            if (Config.GD_ERROR_LOGS_ENABLED) {
+                Log.e(LOG_TAG, "Error while inflating an ItemView for " + prototype.getClass().getName(), e);
+            }
+            mRequests.remove(request);
+        }
+
+        if (mRequests.isEmpty()) {
+            mIdleHandlerAdded = false;
+            return false;
+        }
+
+        // Make sure we are called again even if no other message arrives
+        mHandler.removeCallbacks(mWakeUp);
+        mHandler.post(mWakeUp);
+        return true;
+    }
+}
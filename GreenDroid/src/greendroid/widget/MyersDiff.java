@@ -0,0 +1,242 @@
+/*
+ * Copyright (C) 2011 Cyril Mottier (http://www.cyrilmottier.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package greendroid.widget;
+
+import java.util.Arrays;
+
+/**
+ * <p>
+ * The linear space variant of the Myers' difference algorithm. The middle
+ * snake of the shortest edit script is found by searching from both ends of
+ * the lists at once. The lists are then split around it and both halves are
+ * processed the same way. The algorithm runs in O((N+M)D) time and only
+ * requires O(N+M) memory.
+ * </p>
+ * <p>
+ * <em><strong>Note:</strong> This class only depends on the Java platform. It
+ * can be tested and benchmarked on a regular JVM.</em>
+ * </p>
+ * 
+ * @author Cyril Mottier
+ * @see ItemDiff
+ */
+final class MyersDiff {
+
+    /**
+     * Identifies elements present in both lists.
+     */
+    interface Callback {
+
+        /**
+         * Return true if the given elements represent the same entity.
+         * 
+         * @param oldPosition The position of an element in the old list
+         * @param newPosition The position of an element in the new list
+         * @return true if both elements represent the same entity
+         */
+        boolean areItemsTheSame(int oldPosition, int newPosition);
+    }
+
+    private final Callback mCallback;
+    private final int[] mOldMatches;
+    private final boolean[] mNewMatched;
+
+    // Furthest reaching paths of the forward and backward searches
+    private final int[] mForward;
+    private final int[] mBackward;
+
+    private int mSplitX;
+    private int mSplitY;
+
+    private MyersDiff(Callback callback, int[] oldMatches, boolean[] newMatched, int maxD) {
+        mCallback = callback;
+        mOldMatches = oldMatches;
+        mNewMatched = newMatched;
+        mForward = new int[2 * maxD + 2];
+        mBackward = new int[2 * maxD + 2];
+    }
+
+    /**
+     * Match the elements of both lists along a shortest edit script.
+     * 
+     * @param oldSize The size of the old list
+     * @param newSize The size of the new list
+     * @param callback The {@link Callback} used to compare elements
+     * @param maxEditDistance The maximum number of inserted and removed
+     *            elements. The computation is aborted as soon as the search
+     *            goes beyond this distance. Pass Integer.MAX_VALUE to always
+     *            complete the computation.
+     * @param oldMatches Filled with the position of the matching new element
+     *            of each old element or -1
+     * @param newMatched Filled with true for each new element matching an old
+     *            element
+     * @return true if the lists have been matched, false if the edit distance
+     *         exceeds maxEditDistance. The arrays content is undefined in that
+     *         case.
+     */
+    static boolean match(int oldSize, int newSize, Callback callback, int maxEditDistance, int[] oldMatches,
+            boolean[] newMatched) {
+
+        Arrays.fill(oldMatches, 0, oldSize, -1);
+        Arrays.fill(newMatched, 0, newSize, false);
+
+        final int maxD = (oldSize + newSize + 1) / 2;
+        final MyersDiff diff = new MyersDiff(callback, oldMatches, newMatched, maxD);
+        return diff.match(0, oldSize, 0, newSize, maxEditDistance);
+    }
+
+    /**
+     * Match the elements of the old range [x0, x1[ with the new range [y0,
+     * y1[.
+     */
+    private boolean match(int x0, int x1, int y0, int y1, int maxEditDistance) {
+
+        // Common prefix and suffix
+        while (x0 < x1 && y0 < y1 && mCallback.areItemsTheSame(x0, y0)) {
+            setMatch(x0++, y0++);
+        }
+        while (x0 < x1 && y0 < y1 && mCallback.areItemsTheSame(x1 - 1, y1 - 1)) {
+            setMatch(--x1, --y1);
+        }
+
+        if (x0 == x1 || y0 == y1) {
+            // Only insertions or removals are left
+            return true;
+        }
+
+        if (!findMiddleSnake(x0, x1, y0, y1, maxEditDistance)) {
+            return false;
+        }
+
+        // Both halves have an edit distance of at most half the current one
+        final int splitX = mSplitX;
+        final int splitY = mSplitY;
+        match(x0, splitX, y0, splitY, Integer.MAX_VALUE);
+        match(splitX, x1, splitY, y1, Integer.MAX_VALUE);
+        return true;
+    }
+
+    /**
+     * Find a point of the shortest edit script of the given ranges where the
+     * forward and backward searches overlap. The first and last elements of
+     * the ranges are known to be different.
+     */
+    private boolean findMiddleSnake(int x0, int x1, int y0, int y1, int maxEditDistance) {
+        final int n = x1 - x0;
+        final int m = y1 - y0;
+        final int maxD = (n + m + 1) / 2;
+        final int offset = maxD;
+        final int length = 2 * maxD + 2;
+        final int[] forward = mForward;
+        final int[] backward = mBackward;
+
+        // Diagonals are k = x - y. Backward coordinates are counted from the
+        // end of the ranges.
+        Arrays.fill(forward, 0, length, -1);
+        Arrays.fill(backward, 0, length, -1);
+        forward[offset + 1] = 0;
+        backward[offset + 1] = 0;
+
+        final int delta = n - m;
+        // When delta is odd, paths overlap during the forward search
+        final boolean checkForward = (delta & 1) != 0;
+
+        // Diagonals going out of the ranges are not searched anymore
+        int forwardStart = 0;
+        int forwardEnd = 0;
+        int backwardStart = 0;
+        int backwardEnd = 0;
+
+        for (int d = 0; d < maxD; d++) {
+            if (2 * d > maxEditDistance) {
+                return false;
+            }
+
+            for (int k = -d + forwardStart; k <= d - forwardEnd; k += 2) {
+                final int index = offset + k;
+                int x;
+                if (k == -d || (k != d && forward[index - 1] < forward[index + 1])) {
+                    x = forward[index + 1];
+                } else {
+                    x = forward[index - 1] + 1;
+                }
+                int y = x - k;
+                while (x < n && y < m && mCallback.areItemsTheSame(x0 + x, y0 + y)) {
+                    x++;
+                    y++;
+                }
+                forward[index] = x;
+
+                if (x > n) {
+                    forwardEnd += 2;
+                } else if (y > m) {
+                    forwardStart += 2;
+                } else if (checkForward) {
+                    final int backwardIndex = offset + delta - k;
+                    if (backwardIndex >= 0 && backwardIndex < length && backward[backwardIndex] != -1) {
+                        if (x >= n - backward[backwardIndex]) {
+                            mSplitX = x0 + x;
+                            mSplitY = y0 + y;
+                            return true;
+                        }
+                    }
+                }
+            }
+
+            for (int k = -d + backwardStart; k <= d - backwardEnd; k += 2) {
+                final int index = offset + k;
+                int x;
+                if (k == -d || (k != d && backward[index - 1] < backward[index + 1])) {
+                    x = backward[index + 1];
+                } else {
+                    x = backward[index - 1] + 1;
+                }
+                int y = x - k;
+                while (x < n && y < m && mCallback.areItemsTheSame(x1 - x - 1, y1 - y - 1)) {
+                    x++;
+                    y++;
+                }
+                backward[index] = x;
+
+                if (x > n) {
+                    backwardEnd += 2;
+                } else if (y > m) {
+                    backwardStart += 2;
+                } else if (!checkForward) {
+                    final int forwardIndex = offset + delta - k;
+                    if (forwardIndex >= 0 && forwardIndex < length && forward[forwardIndex] != -1) {
+                        final int forwardX = forward[forwardIndex];
+                        if (forwardX >= n - x) {
+                            mSplitX = x0 + forwardX;
+                            mSplitY = y0 + forwardX - (forwardIndex - offset);
+                            return true;
+                        }
+                    }
+                }
+            }
+        }
+
+        // Nothing in common
+        mSplitX = x0;
+        mSplitY = y1;
+        return true;
+    }
+
+    private void setMatch(int oldPosition, int newPosition) {
+        mOldMatches[oldPosition] = newPosition;
+        mNewMatched[newPosition] = true;
+    }
+}
@@ -0,0 +1,422 @@
+/*
+ * Copyright (C) 2011 Cyril Mottier (http://www.cyrilmottier.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package greendroid.widget;
+
+import greendroid.util.Config;
+import greendroid.util.GDUtils;
+import greendroid.widget.ItemDiff.ItemComparator;
+import greendroid.widget.item.Item;
+import greendroid.widget.item.ProgressItem;
+
+import java.text.Collator;
+import java.util.AbstractList;
+import java.util.Comparator;
+import java.util.List;
+
+import android.content.Context;
+import android.os.Handler;
+import android.util.Log;
+import android.util.SparseArray;
+import android.view.View;
+import android.view.ViewGroup;
+
+/**
+ * <p>
+ * An {@link ItemAdapter} whose {@link Item}s are loaded lazily, page by page,
+ * from an {@link ItemDataSource}. Pages are loaded on a background thread when
+ * the ListView gets close to them. Only a limited number of pages around the
+ * last displayed position are kept in memory: distant pages are evicted and
+ * loaded again when needed. As a result, the memory used by a
+ * PagedItemAdapter doesn't depend on the size of the data set.
+ * </p>
+ * <p>
+ * Rows whose page hasn't been loaded yet display a placeholder Item (a
+ * {@link ProgressItem} by default). The content of a PagedItemAdapter is
+ * driven by its {@link ItemDataSource}: methods modifying the content of the
+ * adapter throw an UnsupportedOperationException. Use {@link #refresh()} when
+ * the data set changed.
+ * </p>
+ * <p>
+ * Pages that failed to load are loaded again after a delay growing with the
+ * number of failures. Failures may be observed using an
+ * {@link OnPageLoadFailedListener}.
+ * </p>
+ * 
+ * @author Cyril Mottier
+ */
+public class PagedItemAdapter extends ItemAdapter {
+
+    private static final String LOG_TAG = PagedItemAdapter.class.getSimpleName();
+
+    private static final int DEFAULT_PAGE_SIZE = 50;
+    private static final int DEFAULT_MAX_PAGE_COUNT = 5;
+
+    private static final long INITIAL_RETRY_DELAY = 1000;
+    private static final long MAX_RETRY_DELAY = 60 * 1000;
+
+    /**
+     * Provides the {@link Item}s of a {@link PagedItemAdapter}. All methods of
+     * this interface are called on a background thread.
+     * 
+     * @author Cyril Mottier
+     */
+    public interface ItemDataSource {
+
+        /**
+         * Return the total number of items in the data set.
+         * 
+         * @return The number of items
+         */
+        int getCount();
+
+        /**
+         * Load a page of items.
+         * 
+         * @param start The index of the first item to load
+         * @param count The number of items to load. The last page may be
+         *            shorter than the other ones.
+         * @return The loaded items. The returned list must contain exactly
+         *         <em>count</em> items.
+         */
+        List<Item> loadPage(int start, int count);
+    }
+
+    /**
+     * Interface definition for a callback to be invoked when a page couldn't
+     * be loaded.
+     * 
+     * @author Cyril Mottier
+     */
+    public interface OnPageLoadFailedListener {
+
+        /**
+         * Called on the UI thread when a page couldn't be loaded: the
+         * {@link ItemDataSource} threw an exception or returned an unexpected
+         * number of items. The page is loaded again later.
+         * 
+         * @param adapter The PagedItemAdapter loading the page
+         * @param start The index of the first item of the page
+         * @param count The number of items of the page
+         */
+        void onPageLoadFailed(PagedItemAdapter adapter, int start, int count);
+    }
+
+    private final ItemDataSource mDataSource;
+    private final int mPageSize;
+    private final int mMaxPageCount;
+    private final Handler mHandler = new Handler();
+
+    private final SparseArray<List<Item>> mPages = new SparseArray<List<Item>>();
+    private final SparseArray<Boolean> mLoadingPages = new SparseArray<Boolean>();
+    private final SparseArray<Integer> mFailureCounts = new SparseArray<Integer>();
+    private final SparseArray<Boolean> mRetryingPages = new SparseArray<Boolean>();
+    private Item mPlaceholder;
+    private OnPageLoadFailedListener mOnPageLoadFailedListener;
+
+    private int mCount;
+    private boolean mCountLoaded;
+    private int mCountFailureCount;
+    private int mCurrentPage;
+    private int mGeneration;
+
+    /**
+     * Create a new PagedItemAdapter loading pages of 50 items and keeping at
+     * most 5 pages in memory.
+     * 
+     * @param context The context associated with this adapter.
+     * @param dataSource The {@link ItemDataSource} providing the items
+     */
+    public PagedItemAdapter(Context context, ItemDataSource dataSource) {
+        this(context, dataSource, DEFAULT_PAGE_SIZE, DEFAULT_MAX_PAGE_COUNT, DEFAULT_MAX_VIEW_TYPE_COUNT);
+    }
+
+    /**
+     * Create a new PagedItemAdapter.
+     * 
+     * @param context The context associated with this adapter.
+     * @param dataSource The {@link ItemDataSource} providing the items
+     * @param pageSize The number of items in a page
+     * @param maxPageCount The maximum number of pages kept in memory (at least
+     *            3: the current page and its two neighbours)
+     * @param maxViewTypeCount The maximum number of view type that may be
+     *            generated by this adapter (including the placeholder)
+     */
+    public PagedItemAdapter(Context context, ItemDataSource dataSource, int pageSize, int maxPageCount, int maxViewTypeCount) {
+        this(context, new PagedList(), dataSource, pageSize, maxPageCount, maxViewTypeCount);
+    }
+
+    private PagedItemAdapter(Context context, PagedList list, ItemDataSource dataSource, int pageSize, int maxPageCount,
+            int maxViewTypeCount) {
+        super(context, list, maxViewTypeCount);
+        list.mAdapter = this;
+
+        mDataSource = dataSource;
+        mPageSize = Math.max(1, pageSize);
+        mMaxPageCount = Math.max(3, maxPageCount);
+
+        final ProgressItem placeholder = new ProgressItem(null, true);
+        placeholder.enabled = false;
+        mPlaceholder = placeholder;
+
+        refresh();
+    }
+
+    /**
+     * Set the Item displayed by rows whose page hasn't been loaded yet.
+     * 
+     * @param placeholder The placeholder Item
+     */
+    public void setPlaceholder(Item placeholder) {
+        mPlaceholder = placeholder;
+        notifyDataSetChanged();
+    }
+
+    /**
+     * Register a callback to be invoked when a page couldn't be loaded.
+     * 
+     * @param listener The listener to notify
+     */
+    public void setOnPageLoadFailedListener(OnPageLoadFailedListener listener) {
+        mOnPageLoadFailedListener = listener;
+    }
+
+    /**
+     * Return true if the item at the given position has been loaded.
+     * 
+     * @param position The position of the item
+     * @return true if the item is not a placeholder
+     */
+    public boolean isLoaded(int position) {
+        return mPages.get(position / mPageSize) != null;
+    }
+
+    /**
+     * Discard all loaded pages and reload the data set from the
+     * {@link ItemDataSource}. Pages being currently loaded are ignored.
+     */
+    public void refresh() {
+        final int generation = ++mGeneration;
+        mPages.clear();
+        mLoadingPages.clear();
+        mFailureCounts.clear();
+        mRetryingPages.clear();
+        invalidateSections();
+
+        // No page is loaded until the size of the new data set is known
+        mCountLoaded = false;
+        mCountFailureCount = 0;
+        loadCount(generation);
+    }
+
+    private void loadCount(final int generation) {
+        GDUtils.getExecutor(getContext()).execute(new Runnable() {
+            public void run() {
+                int count = -1;
+                try {
+                    count = mDataSource.getCount();
+                } catch (RuntimeException e) {
+                    if (Config.GD_ERROR_LOGS_ENABLED) {
+                        Log.e(LOG_TAG, "Error while loading the number of items", e);
+                    }
+                }
+
+                final int result = count;
+                mHandler.post(new Runnable() {
+                    public void run() {
+                        if (generation != mGeneration) {
+                            return;
+                        }
+                        if (result < 0) {
+                            mHandler.postDelayed(new Runnable() {
+                                public void run() {
+                                    if (generation == mGeneration) {
+                                        loadCount(generation);
+                                    }
+                                }
+                            }, getRetryDelay(++mCountFailureCount));
+                            return;
+                        }
+                        mCount = result;
+                        mCountLoaded = true;
+                        invalidateSections();
+                        loadAround(mCurrentPage);
+                        notifyDataSetChanged();
+                    }
+                });
+            }
+        });
+    }
+
+    @Override
+    public View getView(int position, View convertView, ViewGroup parent) {
+        final int page = position / mPageSize;
+        if (page != mCurrentPage || mPages.get(page) == null) {
+            loadAround(page);
+        }
+        return super.getView(position, convertView, parent);
+    }
+
+    @Override
+    public void sortAsync(Comparator<? super Item> comparator) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public void sortAsync(Collator collator, SortKeyExtractor extractor) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public void updateItems(List<Item> items, ItemComparator comparator) {
+        throw new UnsupportedOperationException();
+    }
+
+    private void loadAround(int page) {
+        mCurrentPage = page;
+
+        if (!mCountLoaded) {
+            // Pages are loaded once the size of the data set is known
+            return;
+        }
+
+        final int pageCount = (mCount + mPageSize - 1) / mPageSize;
+        final int first = Math.max(0, page - 1);
+        final int last = Math.min(pageCount - 1, page + 1);
+        for (int p = first; p <= last; p++) {
+            if (mPages.get(p) == null && mLoadingPages.get(p) == null && mRetryingPages.get(p) == null) {
+                loadPage(p);
+            }
+        }
+
+        evictPages();
+    }
+
+    private void loadPage(final int page) {
+        final int generation = mGeneration;
+        final int start = page * mPageSize;
+        final int count = Math.min(mPageSize, mCount - start);
+        mLoadingPages.put(page, Boolean.TRUE);
+
+        GDUtils.getExecutor(getContext()).execute(new Runnable() {
+            public void run() {
+                List<Item> items = null;
+                try {
+                    items = mDataSource.loadPage(start, count);
+                } catch (RuntimeException e) {
+                    if (Config.GD_ERROR_LOGS_ENABLED) {
+                        Log.e(LOG_TAG, "Error while loading page " + page, e);
+                    }
+                }
+
+                final List<Item> result = items;
+                mHandler.post(new Runnable() {
+                    public void run() {
+                        if (generation != mGeneration) {
+                            return;
+                        }
+                        mLoadingPages.remove(page);
+                        // The page must exactly fill its slot in the data set
+                        if (result != null && result.size() == count && count == Math.min(mPageSize, mCount - start)) {
+                            mFailureCounts.delete(page);
+                            mPages.put(page, result);
+                            evictPages();
+                            invalidateSections();
+                            notifyDataSetChanged();
+                        } else {
+                            if (result != null && Config.GD_ERROR_LOGS_ENABLED) {
+                                Log.e(LOG_TAG, "Page " + page + " contains " + result.size() + " items instead of " + count);
+                            }
+                            onPageLoadFailed(page, start, count, generation);
+                        }
+                    }
+                });
+            }
+        });
+    }
+
+    /**
+     * Prevent the given page from being loaded again until a delay has
+     * elapsed. The delay doubles with each consecutive failure.
+     */
+    private void onPageLoadFailed(final int page, int start, int count, final int generation) {
+        final Integer failureCount = mFailureCounts.get(page);
+        final int newFailureCount = (failureCount == null) ? 1 : failureCount + 1;
+        mFailureCounts.put(page, newFailureCount);
+        mRetryingPages.put(page, Boolean.TRUE);
+
+        mHandler.postDelayed(new Runnable() {
+            public void run() {
+                if (generation == mGeneration) {
+                    mRetryingPages.remove(page);
+                    // The page is loaded only if it is still needed
+                    loadAround(mCurrentPage);
+                }
+            }
+        }, getRetryDelay(newFailureCount));
+
+        if (mOnPageLoadFailedListener != null) {
+            mOnPageLoadFailedListener.onPageLoadFailed(this, start, count);
+        }
+    }
+
+    private static long getRetryDelay(int failureCount) {
+        return Math.min(MAX_RETRY_DELAY, INITIAL_RETRY_DELAY << Math.min(failureCount - 1, 16));
+    }
+
+    /**
+     * Remove the pages that are the furthest from the current page until no
+     * more than mMaxPageCount pages are kept in memory.
+     */
+    private void evictPages() {
+        while (mPages.size() > mMaxPageCount) {
+            int furthestIndex = 0;
+            int furthestDistance = -1;
+            for (int i = 0; i < mPages.size(); i++) {
+                final int distance = Math.abs(mPages.keyAt(i) - mCurrentPage);
+                if (distance > furthestDistance) {
+                    furthestDistance = distance;
+                    furthestIndex = i;
+                }
+            }
+            mPages.delete(mPages.keyAt(furthestIndex));
+        }
+    }
+
+    private Item getItemAt(int position) {
+        final List<Item> page = mPages.get(position / mPageSize);
+        final int index = position % mPageSize;
+        return (page == null || index >= page.size()) ? mPlaceholder : page.get(index);
+    }
+
+    /**
+     * A read-only window on the loaded pages. Unloaded items are replaced by
+     * the placeholder.
+     */
+    private static class PagedList extends AbstractList<Item> {
+
+        PagedItemAdapter mAdapter;
+
+        @Override
+        public Item get(int location) {
+            return mAdapter.getItemAt(location);
+        }
+
+        @Override
+        public int size() {
+            return (mAdapter == null) ? 0 : mAdapter.mCount;
+        }
+    }
+}
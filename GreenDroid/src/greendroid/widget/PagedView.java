@@ -202,7 +202,7 @@ public class PagedView extends ViewGroup {
         }
 
         final int startPage = getPageForOffset(mOffsetX);
-        final int endPage = getPageForOffset(mOffsetX - getWidth() + 1);
+        final int endPage = PagedViewMath.getLastPageForOffset(mOffsetX, getWidth());
 
         recycleViews(startPage, endPage);
 
@@ -310,18 +310,10 @@ public class PagedView extends ViewGroup {
 
                 setOffsetX(mStartOffsetX - (mStartMotionX - x));
 
-                int direction = 0;
-
-                final int slop = mStartMotionX - x;
-                if (Math.abs(slop) > mPageSlop) {
-                    direction = (slop > 0) ? 1 : -1;
-                } else {
-                    mVelocityTracker.computeCurrentVelocity(VELOCITY_UNITS, mMaximumVelocity);
-                    final int initialVelocity = (int) mVelocityTracker.getXVelocity();
-                    if (Math.abs(initialVelocity) > mMinimumVelocity) {
-                        direction = (initialVelocity > 0) ? -1 : 1;
-                    }
-                }
+                mVelocityTracker.computeCurrentVelocity(VELOCITY_UNITS, mMaximumVelocity);
+                final int initialVelocity = (int) mVelocityTracker.getXVelocity();
+                final int direction = PagedViewMath.getSettleDirection(mStartMotionX - x, mPageSlop, initialVelocity,
+                        mMinimumVelocity);
 
                 if (mOnPageChangeListener != null) {
                     mOnPageChangeListener.onStopTracking(this);
@@ -446,7 +438,7 @@ public class PagedView extends ViewGroup {
     private void scrollToPage(int page, boolean animated) {
 
         // Make sure page is bound to correct values
-        page = Math.max(0, Math.min(page, mPageCount - 1));
+        page = PagedViewMath.clampPage(page, mPageCount);
 
         final int targetOffset = getOffsetForPage(page);
 
@@ -473,7 +465,7 @@ public class PagedView extends ViewGroup {
         }
 
         final int startPage = getPageForOffset(offsetX);
-        final int endPage = getPageForOffset(offsetX - getWidth() + 1);
+        final int endPage = PagedViewMath.getLastPageForOffset(offsetX, getWidth());
 
         recycleViews(startPage, endPage);
 
@@ -494,11 +486,11 @@ public class PagedView extends ViewGroup {
     }
 
     private int getOffsetForPage(int page) {
-        return -(page * getWidth());
+        return PagedViewMath.getOffsetForPage(page, getWidth());
     }
 
     private int getPageForOffset(int offset) {
-        return -offset / getWidth();
+        return PagedViewMath.getPageForOffset(offset, getWidth());
     }
 
     private void recycleViews(int start, int end) {
@@ -0,0 +1,103 @@
+/*
+ * Copyright (C) 2011 Cyril Mottier (http://www.cyrilmottier.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package greendroid.widget;
+
+/**
+ * <p>
+ * The page geometry of a {@link PagedView}. Pages are laid out horizontally
+ * and are as wide as the PagedView. The offset is the horizontal translation
+ * of the first page: it is 0 when the first page is displayed and decreases
+ * while scrolling to the next pages.
+ * </p>
+ * <p>
+ * <em><strong>Note:</strong> This class only depends on the Java platform. It
+ * can be tested and benchmarked on a regular JVM.</em>
+ * </p>
+ * 
+ * @author Cyril Mottier
+ */
+final class PagedViewMath {
+
+    private PagedViewMath() {
+    }
+
+    /**
+     * Return the offset at which the given page is entirely displayed.
+     * 
+     * @param page The page
+     * @param pageWidth The width of a page
+     * @return The offset of the page
+     */
+    static int getOffsetForPage(int page, int pageWidth) {
+        return -(page * pageWidth);
+    }
+
+    /**
+     * Return the leftmost page visible at the given offset.
+     * 
+     * @param offset The offset
+     * @param pageWidth The width of a page
+     * @return The first visible page
+     */
+    static int getPageForOffset(int offset, int pageWidth) {
+        return -offset / pageWidth;
+    }
+
+    /**
+     * Return the rightmost page visible at the given offset.
+     * 
+     * @param offset The offset
+     * @param pageWidth The width of a page
+     * @return The last visible page
+     */
+    static int getLastPageForOffset(int offset, int pageWidth) {
+        return getPageForOffset(offset - pageWidth + 1, pageWidth);
+    }
+
+    /**
+     * Bound the given page to the existing pages.
+     * 
+     * @param page The page
+     * @param pageCount The number of pages
+     * @return A page between 0 and pageCount - 1
+     */
+    static int clampPage(int page, int pageCount) {
+        return Math.max(0, Math.min(page, pageCount - 1));
+    }
+
+    /**
+     * Return the direction in which to settle once the user stops dragging.
+     * Long drags change the page whatever the velocity is. Shorter drags only
+     * change the page when flung fast enough.
+     * 
+     * @param distance The dragged distance (positive when dragging to the
+     *            next page)
+     * @param pageSlop The distance after which the page changes
+     * @param velocity The horizontal velocity at the end of the drag
+     * @param minimumVelocity The velocity after which the page changes
+     * @return 1 to go to the next page, -1 to go to the previous page or 0 to
+     *         stay on the current page
+     */
+    static int getSettleDirection(int distance, int pageSlop, int velocity, int minimumVelocity) {
+        if (Math.abs(distance) > pageSlop) {
+            return (distance > 0) ? 1 : -1;
+        }
+        if (Math.abs(velocity) > minimumVelocity) {
+            return (velocity > 0) ? -1 : 1;
+        }
+        return 0;
+    }
+}
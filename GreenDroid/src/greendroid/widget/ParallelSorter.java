@@ -0,0 +1,156 @@
+/*
+ * Copyright (C) 2011 Cyril Mottier (http://www.cyrilmottier.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package greendroid.widget;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.FutureTask;
+
+/**
+ * <p>
+ * Sorts arrays using a parallel merge sort. The array is split into chunks
+ * sorted concurrently on the given Executor and then merged. Like
+ * Arrays.sort(), the sort is stable.
+ * </p>
+ * <p>
+ * Chunks are wrapped in FutureTasks: once done with its own chunk, the
+ * calling thread runs the chunks that haven't been started yet. As a result,
+ * sorting never dead-locks even when called from a thread of a saturated
+ * Executor.
+ * </p>
+ * 
+ * @author Cyril Mottier
+ */
+final class ParallelSorter {
+
+    static final int MIN_CHUNK_SIZE = 2048;
+    private static final int THREAD_COUNT = Runtime.getRuntime().availableProcessors();
+
+    private ParallelSorter() {
+    }
+
+    /**
+     * Sort the given array.
+     * 
+     * @param array The array to sort
+     * @param comparator The comparator defining the order of the elements
+     * @param executor The Executor used to sort chunks concurrently
+     */
+    static <T> void sort(T[] array, Comparator<? super T> comparator, Executor executor) {
+        sort(array, comparator, executor, THREAD_COUNT);
+    }
+
+    /**
+     * Sort the given array using at most the given number of chunks.
+     * 
+     * @param array The array to sort
+     * @param comparator The comparator defining the order of the elements
+     * @param executor The Executor used to sort chunks concurrently
+     * @param maxChunkCount The maximum number of chunks
+     */
+    static <T> void sort(final T[] array, final Comparator<? super T> comparator, Executor executor, int maxChunkCount) {
+        final int length = array.length;
+        final int chunkCount = Math.min(maxChunkCount, length / MIN_CHUNK_SIZE);
+        if (chunkCount <= 1) {
+            Arrays.sort(array, comparator);
+            return;
+        }
+
+        final int[] bounds = new int[chunkCount + 1];
+        for (int i = 0; i <= chunkCount; i++) {
+            bounds[i] = (int) ((long) length * i / chunkCount);
+        }
+
+        final ArrayList<FutureTask<Void>> tasks = new ArrayList<FutureTask<Void>>(chunkCount);
+        for (int i = 0; i < chunkCount; i++) {
+            final int from = bounds[i];
+            final int to = bounds[i + 1];
+            tasks.add(new FutureTask<Void>(new Runnable() {
+                public void run() {
+                    Arrays.sort(array, from, to, comparator);
+                }
+            }, null));
+        }
+
+        for (int i = 1; i < chunkCount; i++) {
+            executor.execute(tasks.get(i));
+        }
+        for (int i = 0; i < chunkCount; i++) {
+            final FutureTask<Void> task = tasks.get(i);
+            // Does nothing if the task has already been started
+            task.run();
+            try {
+                task.get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("Interrupted while sorting", e);
+            } catch (ExecutionException e) {
+                throw new RuntimeException("Error while sorting", e.getCause());
+            }
+        }
+
+        // Merge adjacent runs until a single run remains
+        T[] src = array;
+        T[] dst = array.clone();
+        int runCount = chunkCount;
+        int[] runs = bounds;
+        while (runCount > 1) {
+            final int newRunCount = (runCount + 1) / 2;
+            final int[] newRuns = new int[newRunCount + 1];
+            for (int i = 0; i < newRunCount; i++) {
+                final int start = runs[2 * i];
+                final int middle = runs[Math.min(2 * i + 1, runCount)];
+                final int end = runs[Math.min(2 * i + 2, runCount)];
+                merge(src, dst, start, middle, end, comparator);
+                newRuns[i] = start;
+            }
+            newRuns[newRunCount] = length;
+
+            final T[] tmp = src;
+            src = dst;
+            dst = tmp;
+            runs = newRuns;
+            runCount = newRunCount;
+        }
+
+        if (src != array) {
+            System.arraycopy(src, 0, array, 0, length);
+        }
+    }
+
+    private static <T> void merge(T[] src, T[] dst, int start, int middle, int end, Comparator<? super T> comparator) {
+        int i = start;
+        int j = middle;
+        int k = start;
+        while (i < middle && j < end) {
+            // Taking the left element on ties keeps the sort stable
+            if (comparator.compare(src[j], src[i]) < 0) {
+                dst[k++] = src[j++];
+            } else {
+                dst[k++] = src[i++];
+            }
+        }
+        while (i < middle) {
+            dst[k++] = src[i++];
+        }
+        while (j < end) {
+            dst[k++] = src[j++];
+        }
+    }
+}
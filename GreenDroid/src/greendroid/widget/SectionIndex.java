@@ -0,0 +1,183 @@
+/*
+ * Copyright (C) 2011 Cyril Mottier (http://www.cyrilmottier.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package greendroid.widget;
+
+/**
+ * <p>
+ * The sorted positions of the sections of an {@link ItemAdapter}: each
+ * SeparatorItem starts a new section. The index is updated incrementally when
+ * items are inserted or removed and lazily rebuilt once it has been
+ * invalidated.
+ * </p>
+ * <p>
+ * <em><strong>Note:</strong> This class only depends on the Java platform. It
+ * can be tested and benchmarked on a regular JVM.</em>
+ * </p>
+ * 
+ * @author Cyril Mottier
+ */
+final class SectionIndex {
+
+    /**
+     * Tells which items start a section.
+     */
+    interface Callback {
+        boolean isSectionStart(int position);
+    }
+
+    private final Callback mCallback;
+    private int[] mPositions = new int[0];
+    private int mCount;
+    private boolean mValid;
+
+    SectionIndex(Callback callback) {
+        mCallback = callback;
+    }
+
+    /**
+     * Force the index to be rebuilt on the next call to
+     * {@link #ensure(int)}.
+     */
+    void invalidate() {
+        mValid = false;
+    }
+
+    /**
+     * Mark the index as valid and empty (all items have been removed).
+     */
+    void reset() {
+        mCount = 0;
+        mValid = true;
+    }
+
+    /**
+     * Rebuild the index if it has been invalidated.
+     * 
+     * @param itemCount The number of items
+     * @return true if the index has been rebuilt
+     */
+    boolean ensure(int itemCount) {
+        if (mValid) {
+            return false;
+        }
+        mCount = 0;
+        for (int i = 0; i < itemCount; i++) {
+            if (mCallback.isSectionStart(i)) {
+                add(mCount, i);
+            }
+        }
+        mValid = true;
+        return true;
+    }
+
+    int getCount() {
+        return mCount;
+    }
+
+    int getPosition(int section) {
+        return mPositions[section];
+    }
+
+    int getPositionForSection(int section) {
+        if (mCount == 0 || section < 0) {
+            return 0;
+        }
+        return mPositions[Math.min(section, mCount - 1)];
+    }
+
+    int getSectionForPosition(int position) {
+        // The section containing a position is the last one starting at or
+        // before it
+        return Math.max(0, find(position + 1) - 1);
+    }
+
+    /**
+     * Update the index once <em>count</em> items have been inserted at the
+     * given index.
+     * 
+     * @return true if sections have been added
+     */
+    boolean onItemsInserted(int index, int count) {
+        if (!mValid) {
+            return false;
+        }
+
+        int section = find(index);
+        for (int i = section; i < mCount; i++) {
+            mPositions[i] += count;
+        }
+        boolean changed = false;
+        for (int position = index; position < index + count; position++) {
+            if (mCallback.isSectionStart(position)) {
+                add(section++, position);
+                changed = true;
+            }
+        }
+        return changed;
+    }
+
+    /**
+     * Update the index once <em>count</em> items have been removed from the
+     * given index.
+     * 
+     * @return true if sections have been removed
+     */
+    boolean onItemsRemoved(int index, int count) {
+        if (!mValid) {
+            return false;
+        }
+
+        final int first = find(index);
+        final int last = find(index + count);
+        if (last > first) {
+            System.arraycopy(mPositions, last, mPositions, first, mCount - last);
+            mCount -= last - first;
+        }
+        for (int i = first; i < mCount; i++) {
+            mPositions[i] -= count;
+        }
+        return last > first;
+    }
+
+    /**
+     * Return the index of the first section starting at or after the given
+     * position (binary search).
+     */
+    private int find(int position) {
+        int low = 0;
+        int high = mCount;
+        while (low < high) {
+            final int mid = (low + high) >>> 1;
+            if (mPositions[mid] < position) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    private void add(int section, int position) {
+        if (mCount == mPositions.length) {
+            final int[] positions = new int[Math.max(8, mCount * 2)];
+            System.arraycopy(mPositions, 0, positions, 0, mCount);
+            mPositions = positions;
+        }
+        System.arraycopy(mPositions, section, mPositions, section + 1, mCount - section);
+        mPositions[section] = position;
+        mCount++;
+    }
+}
@@ -0,0 +1,84 @@
+/*
+ * Copyright (C) 2011 Cyril Mottier (http://www.cyrilmottier.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package greendroid.widget;
+
+import java.util.HashMap;
+
+/**
+ * <p>
+ * Assigns view types to classes of Items on behalf of an {@link ItemAdapter}.
+ * View types are permanent: once a class has been given a view type, it keeps
+ * it for the lifetime of the registry. This ensures two classes can never
+ * share a view type.
+ * </p>
+ * <p>
+ * <em><strong>Note:</strong> This class only depends on the Java platform. It
+ * can be tested and benchmarked on a regular JVM.</em>
+ * </p>
+ * 
+ * @author Cyril Mottier
+ */
+final class ViewTypeRegistry {
+
+    private static class TypeInfo {
+        int type;
+    }
+
+    private final HashMap<Class<?>, TypeInfo> mTypes = new HashMap<Class<?>, TypeInfo>();
+    private int mMaxViewTypeCount = Integer.MAX_VALUE;
+
+    /**
+     * Return the view type of the given class, assigning a new view type to
+     * it if needed.
+     * 
+     * @param klass The class of the Item
+     * @return The view type of the class
+     * @throws RuntimeException if the maximum number of view types has been
+     *             reached
+     */
+    int getViewType(Class<?> klass) {
+        TypeInfo info = mTypes.get(klass);
+        if (info == null) {
+            final int type = mTypes.size();
+            if (type >= mMaxViewTypeCount) {
+                throw new RuntimeException("This ItemAdapter may handle only " + mMaxViewTypeCount + " different view types.");
+            }
+            info = new TypeInfo();
+            info.type = type;
+            mTypes.put(klass, info);
+        }
+        return info.type;
+    }
+
+    /**
+     * Return the number of view types assigned so far.
+     */
+    int size() {
+        return mTypes.size();
+    }
+
+    int getMaxViewTypeCount() {
+        return mMaxViewTypeCount;
+    }
+
+    /**
+     * Set the maximum number of view types. It can't be less than the number
+     * of view types already assigned, nor less than 1.
+     */
+    void setMaxViewTypeCount(int maxViewTypeCount) {
+        mMaxViewTypeCount = Math.max(1, Math.max(mTypes.size(), maxViewTypeCount));
+    }
+}
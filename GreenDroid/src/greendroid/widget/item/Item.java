@@ -41,9 +41,18 @@ import com.cyrilmottier.android.greendroid.R;
  */
 public abstract class Item {
 
+    /**
+     * Value returned by {@link #getViewType(Object)} when no view type has
+     * been assigned to this item.
+     */
+    public static final int NO_VIEW_TYPE = -1;
+
     private SparseArray<Object> mTags;
     private Object mTag;
 
+    private Object mViewTypeOwner;
+    private int mViewType = NO_VIEW_TYPE;
+
     /**
      * Set to true when this item is enabled
      */
@@ -101,6 +110,33 @@ public abstract class Item {
         mTags.put(key, tag);
     }
 
+    /**
+     * Return the view type assigned to this item by the given owner. This
+     * method is used internally by adapters and should not be called by
+     * regular code.
+     * 
+     * @param owner The object that assigned the view type
+     * @return The view type or {@link #NO_VIEW_TYPE} if the given owner hasn't
+     *         assigned any view type to this item
+     */
+    public int getViewType(Object owner) {
+        return (owner == mViewTypeOwner) ? mViewType : NO_VIEW_TYPE;
+    }
+
+    /**
+     * Cache the view type assigned to this item by the given owner. An item
+     * caches a single view type: an item shared by several adapters has its
+     * view type resolved again when the owner changes. This method is used
+     * internally by adapters and should not be called by regular code.
+     * 
+     * @param owner The object assigning the view type
+     * @param viewType The view type
+     */
+    public void setViewType(Object owner, int viewType) {
+        mViewTypeOwner = owner;
+        mViewType = viewType;
+    }
+
     /**
      * Return a view that is associated to the current item. The returned view
      * is normally capable of being a good recipient for all item's information.
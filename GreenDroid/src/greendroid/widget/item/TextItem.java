@@ -25,6 +25,10 @@ import org.xmlpull.v1.XmlPullParserException;
 import android.content.Context;
 import android.content.res.Resources;
 import android.content.res.TypedArray;
+import android.graphics.Typeface;
+import android.text.Layout;
+import android.text.StaticLayout;
+import android.text.TextPaint;
 import android.util.AttributeSet;
 import android.view.ViewGroup;
 
@@ -43,6 +47,11 @@ public class TextItem extends Item {
      */
     public String text;
 
+    private StaticLayout mTextLayout;
+    private String mTextLayoutText;
+    private float mTextLayoutTextSize;
+    private Typeface mTextLayoutTypeface;
+
     /**
      * @hide
      */
@@ -63,6 +72,41 @@ public class TextItem extends Item {
         return createCellFromXml(context, R.layout.gd_text_item_view, parent);
     }
 
+    /**
+     * <p>
+     * Return a Layout of the text of this item. The Layout is cached: it is
+     * only computed again when the text, the width or the size/typeface of the
+     * given TextPaint change. This prevents line breaking from being computed
+     * each time an ItemView displays this item.
+     * </p>
+     * <p>
+     * This method may be called from a background thread in order to compute
+     * the Layout in advance. The returned Layout uses its own copy of the
+     * given TextPaint: the color of the text must be set on
+     * <em>Layout.getPaint()</em> prior drawing.
+     * </p>
+     * 
+     * @param paint The TextPaint used to draw the text
+     * @param width The width available for the text
+     * @return A Layout of the text or null if the text is null
+     */
+    public synchronized Layout getTextLayout(TextPaint paint, int width) {
+        final String text = this.text;
+        if (text == null || width <= 0) {
+            return null;
+        }
+
+        if (mTextLayout == null || mTextLayoutText != text || mTextLayout.getWidth() != width
+                || mTextLayoutTextSize != paint.getTextSize() || mTextLayoutTypeface != paint.getTypeface()) {
+            mTextLayout = new StaticLayout(text, new TextPaint(paint), width, Layout.Alignment.ALIGN_NORMAL, 1.0f, 0.0f, false);
+            mTextLayoutText = text;
+            mTextLayoutTextSize = paint.getTextSize();
+            mTextLayoutTypeface = paint.getTypeface();
+        }
+
+        return mTextLayout;
+    }
+
     @Override
     public void inflate(Resources r, XmlPullParser parser, AttributeSet attrs) throws XmlPullParserException, IOException {
         super.inflate(r, parser, attrs);
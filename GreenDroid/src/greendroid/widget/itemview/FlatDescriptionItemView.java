@@ -0,0 +1,109 @@
+/*
+ * Copyright (C) 2011 Cyril Mottier (http://www.cyrilmottier.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package greendroid.widget.itemview;
+
+import greendroid.widget.item.DescriptionItem;
+import greendroid.widget.item.Item;
+import greendroid.widget.item.LongTextItem;
+import greendroid.widget.item.TextItem;
+import android.content.Context;
+import android.graphics.Canvas;
+import android.text.Layout;
+
+import com.cyrilmottier.android.greendroid.R;
+
+/**
+ * Flat representation of the {@link DescriptionItem} and the
+ * {@link LongTextItem}: a multi-line text vertically centered in the View. The
+ * Layout of the text is cached by the Item itself (see
+ * {@link TextItem#getTextLayout(android.text.TextPaint, int)}) so that
+ * rebinding an Item at the same width doesn't break its text into lines
+ * again.
+ * 
+ * @author Cyril Mottier
+ * @see DescriptionItemView
+ */
+public class FlatDescriptionItemView extends FlatItemView {
+
+    private final FlatText mText;
+    private TextItem mItem;
+
+    public FlatDescriptionItemView(Context context) {
+        this(context, R.attr.gdDescriptionItemViewStyle);
+    }
+
+    /**
+     * Create a new FlatDescriptionItemView using the given style.
+     * 
+     * @param context The Context in which the View is used
+     * @param styleAttr The theme attribute pointing to the style of the text
+     *            (R.attr.gdLongTextItemViewStyle for instance)
+     */
+    public FlatDescriptionItemView(Context context, int styleAttr) {
+        super(context);
+        mText = createText(styleAttr, true);
+        setPadding(resolveDimension(R.attr.gdItemViewPreferredPaddingLeft), 0, 0, 0);
+    }
+
+    /**
+     * Return the width available for the text of an Item once this View is
+     * laid out in a list of the given width.
+     * 
+     * @param listWidth The width of the list
+     * @return The width available for the text
+     */
+    public int getTextWidth(int listWidth) {
+        return listWidth - getPaddingLeft() - getPaddingRight();
+    }
+
+    /**
+     * Compute and cache the Layout of the given Item so that it is ready when
+     * this type of View displays it. This may be called on a background
+     * thread.
+     * 
+     * @param item The Item to prepare
+     * @param textWidth The width available for the text (see
+     *            {@link #getTextWidth(int)})
+     */
+    void prepareLayout(TextItem item, int textWidth) {
+        item.getTextLayout(mText.getPaint(), textWidth);
+    }
+
+    public void setObject(Item object) {
+        mItem = (TextItem) object;
+        // The number of lines may have changed
+        requestLayout();
+        invalidate();
+    }
+
+    @Override
+    protected int getContentHeight(int width) {
+        final Layout layout = (mItem == null) ? null : mItem.getTextLayout(mText.getPaint(), width);
+        return (layout == null) ? 0 : layout.getHeight();
+    }
+
+    @Override
+    protected void onDraw(Canvas canvas) {
+        final int left = getPaddingLeft();
+        final int width = getWidth() - left - getPaddingRight();
+        final Layout layout = (mItem == null) ? null : mItem.getTextLayout(mText.getPaint(), width);
+        if (layout != null) {
+            final int top = getPaddingTop();
+            final int height = getHeight() - top - getPaddingBottom();
+            mText.drawLayout(canvas, layout, left, top + (height - layout.getHeight()) / 2);
+        }
+    }
+}
@@ -0,0 +1,107 @@
+/*
+ * Copyright (C) 2011 Cyril Mottier (http://www.cyrilmottier.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package greendroid.widget.itemview;
+
+import greendroid.widget.item.DrawableItem;
+import greendroid.widget.item.Item;
+import android.content.Context;
+import android.graphics.Canvas;
+import android.graphics.drawable.Drawable;
+
+import com.cyrilmottier.android.greendroid.R;
+
+/**
+ * Flat representation of the {@link DrawableItem}: the drawable is drawn
+ * centered in a box on the left and the text is vertically centered.
+ * 
+ * @author Cyril Mottier
+ * @see DrawableItemView
+ */
+public class FlatDrawableItemView extends FlatItemView {
+
+    private final FlatText mText;
+    private final int mDrawableWidth;
+    private final int mDrawableHeight;
+    private final int mDrawableMargin;
+
+    private int mDrawableId;
+    private Drawable mDrawable;
+
+    public FlatDrawableItemView(Context context) {
+        super(context);
+        mText = createText(R.attr.gdDrawableItemViewStyleText, false);
+        mDrawableWidth = resolveDimension(R.attr.gdDrawableWidth);
+        mDrawableHeight = resolveDimension(R.attr.gdDrawableHeight);
+        mDrawableMargin = resolveDimension(R.attr.gdDrawableMargin);
+
+        final int padding = resolveDimension(R.attr.gdItemViewPreferredPaddingLeft);
+        setPadding(padding, padding, padding, padding);
+    }
+
+    public void setObject(Item object) {
+        final DrawableItem item = (DrawableItem) object;
+        mText.setText(item.text);
+
+        if (item.drawableId != mDrawableId) {
+            mDrawableId = item.drawableId;
+            mDrawable = (mDrawableId == 0) ? null : getResources().getDrawable(mDrawableId);
+            if (mDrawable != null) {
+                mDrawable.setState(getDrawableState());
+            }
+        }
+        invalidate();
+    }
+
+    @Override
+    protected void drawableStateChanged() {
+        super.drawableStateChanged();
+        if (mDrawable != null && mDrawable.isStateful()) {
+            mDrawable.setState(getDrawableState());
+            invalidate();
+        }
+    }
+
+    @Override
+    protected int getContentHeight(int width) {
+        return Math.max(mDrawableHeight, mText.getLineHeight());
+    }
+
+    @Override
+    protected void onDraw(Canvas canvas) {
+        int left = getPaddingLeft();
+        final int top = getPaddingTop();
+        final int height = getHeight() - top - getPaddingBottom();
+
+        if (mDrawable != null) {
+            // Equivalent to ScaleType.CENTER
+            final int width = mDrawable.getIntrinsicWidth() > 0 ? mDrawable.getIntrinsicWidth() : mDrawableWidth;
+            final int drawableHeight = mDrawable.getIntrinsicHeight() > 0 ? mDrawable.getIntrinsicHeight() : mDrawableHeight;
+            final int x = left + (mDrawableWidth - width) / 2;
+            final int y = top + (height - drawableHeight) / 2;
+
+            canvas.save();
+            canvas.clipRect(left, top + (height - mDrawableHeight) / 2, left + mDrawableWidth, top + (height + mDrawableHeight) / 2);
+            mDrawable.setBounds(x, y, x + width, y + drawableHeight);
+            mDrawable.draw(canvas);
+            canvas.restore();
+
+            left += mDrawableWidth + mDrawableMargin;
+        }
+
+        final int baseline = top + (height - mText.getLineHeight()) / 2 - mText.getAscent();
+        mText.draw(canvas, left, baseline, getWidth() - getPaddingRight() - left);
+    }
+}
@@ -0,0 +1,117 @@
+/*
+ * Copyright (C) 2011 Cyril Mottier (http://www.cyrilmottier.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package greendroid.widget.itemview;
+
+import greendroid.widget.ItemAdapter;
+
+import java.util.ArrayList;
+
+import android.content.Context;
+import android.util.TypedValue;
+import android.view.View;
+
+import com.cyrilmottier.android.greendroid.R;
+
+/**
+ * <p>
+ * Base class for ItemViews made of a single View. Regular ItemViews are
+ * hierarchies of TextViews and ImageViews inflated from XML: measuring and
+ * laying them out is a large part of the time spent binding a row. A
+ * FlatItemView draws its content directly in onDraw(Canvas) and caches its
+ * text layouts so that binding an Item is usually limited to an invalidation.
+ * </p>
+ * <p>
+ * FlatItemViews use the same theme attributes as their regular counterparts
+ * and therefore look the same. They may be used in an {@link ItemAdapter}
+ * thanks to a {@link FlatItemViewFactory}.
+ * </p>
+ * 
+ * @author Cyril Mottier
+ * @see ItemAdapter#setItemViewFactory(ItemViewFactory)
+ */
+public abstract class FlatItemView extends View implements ItemView {
+
+    private final ArrayList<FlatText> mTexts = new ArrayList<FlatText>();
+
+    public FlatItemView(Context context) {
+        super(context);
+        setMinimumHeight(resolveDimension(R.attr.gdItemViewPreferredHeight));
+    }
+
+    public void prepareItemView() {
+    }
+
+    /**
+     * Create a text drawn by this FlatItemView. The color of the text
+     * automatically follows the state of the View.
+     * 
+     * @param styleAttr The theme attribute pointing to the style of the text
+     * @param multiLine true if the text may be wrapped on several lines
+     * @return The created FlatText
+     */
+    FlatText createText(int styleAttr, boolean multiLine) {
+        final FlatText text = new FlatText(getContext(), styleAttr, multiLine);
+        mTexts.add(text);
+        return text;
+    }
+
+    /**
+     * Return the size, in pixels, of a dimension theme attribute.
+     * 
+     * @param attr The theme attribute
+     * @return The size in pixels or 0 if the attribute is not a dimension
+     */
+    protected int resolveDimension(int attr) {
+        final TypedValue value = new TypedValue();
+        if (getContext().getTheme().resolveAttribute(attr, value, true) && value.type == TypedValue.TYPE_DIMENSION) {
+            return TypedValue.complexToDimensionPixelSize(value.data, getResources().getDisplayMetrics());
+        }
+        return 0;
+    }
+
+    /**
+     * Return the height required to display the content of this ItemView
+     * (padding excluded).
+     * 
+     * @param width The width available for the content
+     * @return The height of the content
+     */
+    protected abstract int getContentHeight(int width);
+
+    @Override
+    protected void onMeasure(int widthMeasureSpec, int heightMeasureSpec) {
+        final int width = getDefaultSize(getSuggestedMinimumWidth(), widthMeasureSpec);
+        final int contentWidth = width - getPaddingLeft() - getPaddingRight();
+        final int height = Math.max(getSuggestedMinimumHeight(), getContentHeight(contentWidth) + getPaddingTop()
+                + getPaddingBottom());
+        setMeasuredDimension(width, resolveSize(height, heightMeasureSpec));
+    }
+
+    @Override
+    protected void drawableStateChanged() {
+        super.drawableStateChanged();
+
+        final int[] state = getDrawableState();
+        boolean changed = false;
+        final int count = mTexts.size();
+        for (int i = 0; i < count; i++) {
+            changed |= mTexts.get(i).setState(state);
+        }
+        if (changed) {
+            invalidate();
+        }
+    }
+}
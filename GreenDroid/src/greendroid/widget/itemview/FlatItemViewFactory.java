@@ -0,0 +1,124 @@
+/*
+ * Copyright (C) 2011 Cyril Mottier (http://www.cyrilmottier.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package greendroid.widget.itemview;
+
+import greendroid.util.GDUtils;
+import greendroid.widget.ItemAdapter;
+import greendroid.widget.item.DescriptionItem;
+import greendroid.widget.item.DrawableItem;
+import greendroid.widget.item.Item;
+import greendroid.widget.item.LongTextItem;
+import greendroid.widget.item.SubtextItem;
+import greendroid.widget.item.SubtitleItem;
+import greendroid.widget.item.TextItem;
+import greendroid.widget.item.ThumbnailItem;
+
+import java.util.ArrayList;
+
+import android.content.Context;
+import android.view.ViewGroup;
+
+import com.cyrilmottier.android.greendroid.R;
+
+/**
+ * <p>
+ * An {@link ItemViewFactory} creating {@link FlatItemView}s for
+ * {@link SubtitleItem}s, {@link SubtextItem}s, {@link ThumbnailItem}s,
+ * {@link DrawableItem}s, {@link DescriptionItem}s and {@link LongTextItem}s.
+ * Other Items (including subclasses of the previous ones) use their default
+ * ItemView.
+ * </p>
+ * 
+ * <pre>
+ * adapter.setItemViewFactory(new FlatItemViewFactory());
+ * </pre>
+ * <p>
+ * Once the width of the list is known, the text of description and long text
+ * items may be broken into lines in advance on a background thread using
+ * {@link #precomputeTextLayouts(ItemAdapter, int)}.
+ * </p>
+ * 
+ * @author Cyril Mottier
+ * @see ItemAdapter#setItemViewFactory(ItemViewFactory)
+ */
+public class FlatItemViewFactory implements ItemViewFactory {
+
+    public ItemView newItemView(Item item, Context context, ViewGroup parent) {
+        // Exact classes only: subclasses may display additional information
+        final Class<?> klass = item.getClass();
+        if (klass == SubtitleItem.class) {
+            return new FlatSubtitleItemView(context);
+        } else if (klass == SubtextItem.class) {
+            return new FlatSubtextItemView(context);
+        } else if (klass == ThumbnailItem.class) {
+            return new FlatThumbnailItemView(context);
+        } else if (klass == DrawableItem.class) {
+            return new FlatDrawableItemView(context);
+        } else if (klass == DescriptionItem.class) {
+            return new FlatDescriptionItemView(context);
+        } else if (klass == LongTextItem.class) {
+            return new FlatDescriptionItemView(context, R.attr.gdLongTextItemViewStyle);
+        }
+        return null;
+    }
+
+    /**
+     * Compute, on a background thread, the text Layouts of the description
+     * and long text items currently contained in the given adapter. The
+     * Layouts are cached by the Items and used by the ItemViews created by
+     * this factory. This must be called on the UI thread.
+     * 
+     * @param adapter The ItemAdapter containing the Items
+     * @param listWidth The width of the rows of the list displaying the Items
+     *            (usually the width of the list minus its horizontal padding)
+     */
+    public void precomputeTextLayouts(ItemAdapter adapter, int listWidth) {
+        final Context context = adapter.getContext();
+        final ArrayList<TextItem> items = new ArrayList<TextItem>();
+
+        final int count = adapter.getCount();
+        for (int i = 0; i < count; i++) {
+            final Object item = adapter.getItem(i);
+            final Class<?> klass = item.getClass();
+            if (klass == DescriptionItem.class || klass == LongTextItem.class) {
+                items.add((TextItem) item);
+            }
+        }
+
+        if (items.isEmpty()) {
+            return;
+        }
+
+        // Views are only used to resolve the styles and are created on the UI
+        // thread
+        final FlatDescriptionItemView descriptionView = new FlatDescriptionItemView(context);
+        final FlatDescriptionItemView longTextView = new FlatDescriptionItemView(context, R.attr.gdLongTextItemViewStyle);
+        final int descriptionWidth = descriptionView.getTextWidth(listWidth);
+        final int longTextWidth = longTextView.getTextWidth(listWidth);
+
+        GDUtils.getExecutor(context).execute(new Runnable() {
+            public void run() {
+                for (TextItem item : items) {
+                    if (item.getClass() == DescriptionItem.class) {
+                        descriptionView.prepareLayout(item, descriptionWidth);
+                    } else {
+                        longTextView.prepareLayout(item, longTextWidth);
+                    }
+                }
+            }
+        });
+    }
+}
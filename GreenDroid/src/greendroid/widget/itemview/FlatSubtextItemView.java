@@ -0,0 +1,73 @@
+/*
+ * Copyright (C) 2011 Cyril Mottier (http://www.cyrilmottier.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package greendroid.widget.itemview;
+
+import greendroid.widget.item.Item;
+import greendroid.widget.item.SubtextItem;
+import android.content.Context;
+import android.graphics.Canvas;
+
+import com.cyrilmottier.android.greendroid.R;
+
+/**
+ * Flat representation of the {@link SubtextItem}: a single line of text
+ * followed by a subtext that may be wrapped on several lines.
+ * 
+ * @author Cyril Mottier
+ * @see SubtextItemView
+ */
+public class FlatSubtextItemView extends FlatItemView {
+
+    private final FlatText mText;
+    private final FlatText mSubtext;
+
+    public FlatSubtextItemView(Context context) {
+        super(context);
+        mText = createText(R.attr.gdSubtextItemViewStyleText, false);
+        mSubtext = createText(R.attr.gdSubtextItemViewStyleSubtext, true);
+        setPadding(resolveDimension(R.attr.gdItemViewPreferredPaddingLeft), 0, 0, 0);
+    }
+
+    public void setObject(Item object) {
+        final SubtextItem item = (SubtextItem) object;
+        mText.setText(item.text);
+        mSubtext.setText(item.subtext);
+        // The number of lines of the subtext may have changed
+        requestLayout();
+        invalidate();
+    }
+
+    @Override
+    protected int getContentHeight(int width) {
+        return mText.getLineHeight() + mSubtext.getHeight(width);
+    }
+
+    @Override
+    protected void onDraw(Canvas canvas) {
+        final int left = getPaddingLeft();
+        final int width = getWidth() - left - getPaddingRight();
+        final int top = getPaddingTop();
+        final int height = getHeight() - top - getPaddingBottom();
+
+        // The text is drawn at the bottom of the top half unless the subtext
+        // requires more than half of the height
+        final int textHeight = mText.getLineHeight();
+        final int textBottom = top + Math.max(textHeight, Math.min(height / 2, height - mSubtext.getHeight(width)));
+
+        mText.draw(canvas, left, textBottom - mText.getDescent(), width);
+        mSubtext.drawLayout(canvas, left, textBottom, width);
+    }
+}
@@ -0,0 +1,70 @@
+/*
+ * Copyright (C) 2011 Cyril Mottier (http://www.cyrilmottier.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package greendroid.widget.itemview;
+
+import greendroid.widget.item.Item;
+import greendroid.widget.item.SubtitleItem;
+import android.content.Context;
+import android.graphics.Canvas;
+
+import com.cyrilmottier.android.greendroid.R;
+
+/**
+ * Flat representation of the {@link SubtitleItem}: the text and the subtitle
+ * are drawn in the top and bottom halves of the View.
+ * 
+ * @author Cyril Mottier
+ * @see SubtitleItemView
+ */
+public class FlatSubtitleItemView extends FlatItemView {
+
+    private final FlatText mText;
+    private final FlatText mSubtitle;
+
+    public FlatSubtitleItemView(Context context) {
+        this(context, R.attr.gdSubtitleItemViewStyleText, R.attr.gdSubtitleItemViewStyleSubtitle);
+    }
+
+    FlatSubtitleItemView(Context context, int textStyleAttr, int subtitleStyleAttr) {
+        super(context);
+        mText = createText(textStyleAttr, false);
+        mSubtitle = createText(subtitleStyleAttr, false);
+        setPadding(resolveDimension(R.attr.gdItemViewPreferredPaddingLeft), 0, 0, 0);
+    }
+
+    public void setObject(Item object) {
+        final SubtitleItem item = (SubtitleItem) object;
+        mText.setText(item.text);
+        mSubtitle.setText(item.subtitle);
+        // Single lines of text: the height of the View doesn't change
+        invalidate();
+    }
+
+    @Override
+    protected int getContentHeight(int width) {
+        return mText.getLineHeight() + mSubtitle.getLineHeight();
+    }
+
+    @Override
+    protected void onDraw(Canvas canvas) {
+        final int left = getPaddingLeft();
+        final int width = getWidth() - left - getPaddingRight();
+        final int middle = getPaddingTop() + (getHeight() - getPaddingTop() - getPaddingBottom()) / 2;
+
+        mText.draw(canvas, left, middle - mText.getDescent(), width);
+        mSubtitle.draw(canvas, left, middle - mSubtitle.getAscent(), width);
+    }
+}
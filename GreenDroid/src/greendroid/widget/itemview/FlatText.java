@@ -0,0 +1,204 @@
+/*
+ * Copyright (C) 2011 Cyril Mottier (http://www.cyrilmottier.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package greendroid.widget.itemview;
+
+import android.content.Context;
+import android.content.res.ColorStateList;
+import android.content.res.TypedArray;
+import android.graphics.Canvas;
+import android.graphics.Paint;
+import android.text.Layout;
+import android.text.StaticLayout;
+import android.text.TextPaint;
+import android.text.TextUtils;
+import android.util.TypedValue;
+
+/**
+ * A piece of text drawn directly on a Canvas by a {@link FlatItemView}. The
+ * text is styled using the text appearance of a regular ItemView style.
+ * Depending on the <em>multiLine</em> flag, the text is either ellipsized on a
+ * single line or wrapped in a StaticLayout. In both cases, the result is
+ * cached until the text or the available width changes.
+ * 
+ * @author Cyril Mottier
+ */
+class FlatText {
+
+    /*
+     * Attributes must be sorted in ascending order to be given to
+     * obtainStyledAttributes()
+     */
+    private static final int[] TEXT_APPEARANCE_ATTRS = {
+            android.R.attr.textSize, android.R.attr.textColor
+    };
+
+    private static final float DEFAULT_TEXT_SIZE = 18;
+
+    private final TextPaint mPaint;
+    private final ColorStateList mColors;
+    private final boolean mMultiLine;
+
+    private CharSequence mText;
+    private int mWidth = -1;
+    private CharSequence mEllipsizedText;
+    private StaticLayout mLayout;
+
+    /**
+     * Create a new FlatText.
+     * 
+     * @param context The Context used to resolve the style
+     * @param styleAttr The theme attribute pointing to the style of the text
+     *            (for instance <em>R.attr.gdSubtitleItemViewStyleText</em>)
+     * @param multiLine true if the text may be wrapped on several lines
+     */
+    FlatText(Context context, int styleAttr, boolean multiLine) {
+        mMultiLine = multiLine;
+        mPaint = new TextPaint(Paint.ANTI_ALIAS_FLAG);
+
+        final TypedValue value = new TypedValue();
+        int appearance = 0;
+        if (context.getTheme().resolveAttribute(styleAttr, value, true) && value.resourceId != 0) {
+            final TypedArray a = context.obtainStyledAttributes(value.resourceId, new int[] {
+                android.R.attr.textAppearance
+            });
+            appearance = a.getResourceId(0, 0);
+            a.recycle();
+        }
+
+        ColorStateList colors = null;
+        int textSize = (int) TypedValue.applyDimension(TypedValue.COMPLEX_UNIT_SP, DEFAULT_TEXT_SIZE, context.getResources()
+                .getDisplayMetrics());
+        if (appearance != 0) {
+            final TypedArray a = context.obtainStyledAttributes(appearance, TEXT_APPEARANCE_ATTRS);
+            textSize = a.getDimensionPixelSize(0, textSize);
+            colors = a.getColorStateList(1);
+            a.recycle();
+        }
+
+        mColors = (colors != null) ? colors : ColorStateList.valueOf(0xFFFFFFFF);
+        mPaint.setTextSize(textSize);
+        mPaint.setColor(mColors.getDefaultColor());
+    }
+
+    /**
+     * Set the text. Cached layouts are kept when the text doesn't change.
+     */
+    void setText(CharSequence text) {
+        if (!TextUtils.equals(text, mText)) {
+            mText = text;
+            mWidth = -1;
+        }
+    }
+
+    /**
+     * Update the color of the text according to the given drawable state.
+     * Returns true if the color changed.
+     */
+    boolean setState(int[] state) {
+        final int color = mColors.getColorForState(state, mColors.getDefaultColor());
+        if (color != mPaint.getColor()) {
+            mPaint.setColor(color);
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Return the TextPaint used to draw the text.
+     */
+    TextPaint getPaint() {
+        return mPaint;
+    }
+
+    /**
+     * Draw the given Layout (computed with this text's paint) whose top is at
+     * the given ordinate.
+     */
+    void drawLayout(Canvas canvas, Layout layout, int left, int top) {
+        layout.getPaint().setColor(mPaint.getColor());
+        canvas.save();
+        canvas.translate(left, top);
+        layout.draw(canvas);
+        canvas.restore();
+    }
+
+    int getAscent() {
+        return mPaint.getFontMetricsInt().ascent;
+    }
+
+    int getDescent() {
+        return mPaint.getFontMetricsInt().descent;
+    }
+
+    int getLineHeight() {
+        return getDescent() - getAscent();
+    }
+
+    /**
+     * Return the height of the text once laid out in the given width.
+     */
+    int getHeight(int width) {
+        if (mMultiLine) {
+            prepare(width);
+            return (mLayout == null) ? 0 : mLayout.getHeight();
+        }
+        return getLineHeight();
+    }
+
+    /**
+     * Draw a single line of text. Text that doesn't fit in the given width is
+     * ellipsized.
+     */
+    void draw(Canvas canvas, int left, int baseline, int width) {
+        prepare(width);
+        if (mEllipsizedText != null) {
+            canvas.drawText(mEllipsizedText, 0, mEllipsizedText.length(), left, baseline, mPaint);
+        }
+    }
+
+    /**
+     * Draw a multi-line text whose top is at the given ordinate.
+     */
+    void drawLayout(Canvas canvas, int left, int top, int width) {
+        prepare(width);
+        if (mLayout != null) {
+            canvas.save();
+            canvas.translate(left, top);
+            mLayout.draw(canvas);
+            canvas.restore();
+        }
+    }
+
+    private void prepare(int width) {
+        if (width == mWidth) {
+            return;
+        }
+
+        mWidth = width;
+        mEllipsizedText = null;
+        mLayout = null;
+
+        if (TextUtils.isEmpty(mText) || width <= 0) {
+            return;
+        }
+
+        if (mMultiLine) {
+            mLayout = new StaticLayout(mText, mPaint, width, Layout.Alignment.ALIGN_NORMAL, 1.0f, 0.0f, false);
+        } else {
+            mEllipsizedText = TextUtils.ellipsize(mText, mPaint, width, TextUtils.TruncateAt.END);
+        }
+    }
+}
@@ -0,0 +1,188 @@
+/*
+ * Copyright (C) 2011 Cyril Mottier (http://www.cyrilmottier.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package greendroid.widget.itemview;
+
+import greendroid.image.BitmapRef;
+import greendroid.image.ImageCache;
+import greendroid.image.ImageLoader;
+import greendroid.image.ImageRequest;
+import greendroid.image.ImageRequest.ImageRequestCallback;
+import greendroid.util.GDUtils;
+import greendroid.widget.item.Item;
+import greendroid.widget.item.ThumbnailItem;
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Rect;
+import android.graphics.drawable.BitmapDrawable;
+import android.graphics.drawable.Drawable;
+
+import com.cyrilmottier.android.greendroid.R;
+
+/**
+ * Flat representation of the {@link ThumbnailItem}. The thumbnail is drawn
+ * directly by the View: images pointed by the <em>drawableURL</em> of the
+ * item are loaded using an {@link ImageRequest} and shared with the
+ * {@link ImageCache}.
+ * 
+ * @author Cyril Mottier
+ * @see ThumbnailItemView
+ */
+public class FlatThumbnailItemView extends FlatSubtitleItemView implements ImageRequestCallback {
+
+    private final int mThumbnailSize;
+    private final int mThumbnailLeft;
+    private final Rect mThumbnailBounds = new Rect();
+
+    private int mDrawableId;
+    private Drawable mDefaultDrawable;
+    private String mUrl;
+    private ImageRequest mRequest;
+    private BitmapRef mBitmapRef;
+    private Drawable mImageDrawable;
+
+    public FlatThumbnailItemView(Context context) {
+        super(context, R.attr.gdThumbnailItemViewStyleText, R.attr.gdThumbnailItemViewStyleSubtitle);
+        mThumbnailSize = resolveDimension(R.attr.gdItemViewPreferredHeight);
+        mThumbnailLeft = getPaddingLeft();
+        setPadding(mThumbnailLeft + mThumbnailSize + resolveDimension(R.attr.gdDrawableMargin), 0, 0, 0);
+    }
+
+    @Override
+    public void setObject(Item object) {
+        super.setObject(object);
+
+        final ThumbnailItem item = (ThumbnailItem) object;
+        if (item.drawableId != mDrawableId) {
+            mDrawableId = item.drawableId;
+            mDefaultDrawable = (mDrawableId == 0) ? null : getResources().getDrawable(mDrawableId);
+        }
+
+        final String url = item.drawableURL;
+        if (url == null ? mUrl != null : !url.equals(mUrl)) {
+            mUrl = url;
+            loadImage();
+        }
+    }
+
+    private void loadImage() {
+        cancelRequest();
+        releaseImage();
+
+        if (mUrl == null) {
+            return;
+        }
+
+        final BitmapRef ref = getImageCache().acquire(ImageLoader.getCacheKey(mUrl, null));
+        if (ref != null) {
+            setImage(ref);
+        } else {
+            mRequest = new ImageRequest(mUrl, this);
+            mRequest.load(getContext());
+        }
+    }
+
+    private void setImage(BitmapRef ref) {
+        mBitmapRef = ref;
+        mImageDrawable = new BitmapDrawable(getResources(), ref.getBitmap());
+        invalidate();
+    }
+
+    private void releaseImage() {
+        mImageDrawable = null;
+        if (mBitmapRef != null) {
+            mBitmapRef.release();
+            mBitmapRef = null;
+        }
+    }
+
+    private void cancelRequest() {
+        if (mRequest != null) {
+            mRequest.cancel();
+            mRequest = null;
+        }
+    }
+
+    private ImageCache getImageCache() {
+        return GDUtils.getImageCache(getContext());
+    }
+
+    @Override
+    protected void onAttachedToWindow() {
+        super.onAttachedToWindow();
+        if (mUrl != null && mBitmapRef == null && mRequest == null) {
+            loadImage();
+        }
+    }
+
+    @Override
+    protected void onDetachedFromWindow() {
+        super.onDetachedFromWindow();
+        // Allows the cache to reuse the bitmap while this View is not visible
+        cancelRequest();
+        releaseImage();
+    }
+
+    @Override
+    protected int getContentHeight(int width) {
+        return Math.max(mThumbnailSize, super.getContentHeight(width));
+    }
+
+    @Override
+    protected void onDraw(Canvas canvas) {
+        final Drawable drawable = (mImageDrawable != null) ? mImageDrawable : mDefaultDrawable;
+        if (drawable != null) {
+            // Equivalent to ScaleType.CENTER_INSIDE
+            final int top = (getHeight() - mThumbnailSize) / 2;
+            int width = drawable.getIntrinsicWidth();
+            int height = drawable.getIntrinsicHeight();
+            if (width <= 0 || height <= 0) {
+                width = height = mThumbnailSize;
+            } else if (width > mThumbnailSize || height > mThumbnailSize) {
+                final float scale = Math.min((float) mThumbnailSize / width, (float) mThumbnailSize / height);
+                width = (int) (width * scale + 0.5f);
+                height = (int) (height * scale + 0.5f);
+            }
+            final int left = mThumbnailLeft + (mThumbnailSize - width) / 2;
+            final int y = top + (mThumbnailSize - height) / 2;
+            mThumbnailBounds.set(left, y, left + width, y + height);
+            drawable.setBounds(mThumbnailBounds);
+            drawable.draw(canvas);
+        }
+
+        super.onDraw(canvas);
+    }
+
+    public void onImageRequestStarted(ImageRequest request) {
+    }
+
+    public void onImageRequestFailed(ImageRequest request, Throwable throwable) {
+        mRequest = null;
+    }
+
+    public void onImageRequestEnded(ImageRequest request, Bitmap image) {
+        mRequest = null;
+        // Never draw a Bitmap the cache may recycle
+        final BitmapRef ref = request.acquireBitmap();
+        if (ref != null) {
+            setImage(ref);
+        }
+    }
+
+    public void onImageRequestCancelled(ImageRequest request) {
+        mRequest = null;
+    }
+}
@@ -0,0 +1,43 @@
+/*
+ * Copyright (C) 2011 Cyril Mottier (http://www.cyrilmottier.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package greendroid.widget.itemview;
+
+import greendroid.widget.ItemAdapter;
+import greendroid.widget.item.Item;
+import android.content.Context;
+import android.view.ViewGroup;
+
+/**
+ * An ItemViewFactory lets an {@link ItemAdapter} create ItemViews other than
+ * the ones returned by {@link Item#newView(Context, ViewGroup)}.
+ * 
+ * @author Cyril Mottier
+ * @see ItemAdapter#setItemViewFactory(ItemViewFactory)
+ */
+public interface ItemViewFactory {
+
+    /**
+     * Create a new ItemView for the given Item. All of the Items of the same
+     * class must be given the same type of ItemView.
+     * 
+     * @param item The Item that will be displayed
+     * @param context The Context in which the ItemView will be used
+     * @param parent The parent View of the new ItemView
+     * @return A new ItemView or null to use the default ItemView of the Item
+     */
+    ItemView newItemView(Item item, Context context, ViewGroup parent);
+
+}